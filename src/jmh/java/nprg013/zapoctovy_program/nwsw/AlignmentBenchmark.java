@@ -0,0 +1,94 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the whole calculation, that is the fill of the table
+ * followed by the traceback, of two random protein sequences.
+ * <p>
+ * Besides the number of calculations per second, the cells counter
+ * reports the number of table nodes computed per second, which divided
+ * by a billion gives the GCUPS. The blocked parameter compares the fill
+ * node by node with the blocked fill, see {@link PSA#setBlockedFill(boolean)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx12g", "--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class AlignmentBenchmark {
+    @Param({"100", "1000", "5000", "20000"})
+    public int length;
+    @Param({"linear", "affine"})
+    public String gap;
+    @Param({"false", "true"})
+    public boolean blocked;
+    private SubstMatrix substMatrix;
+    private GapPenalty gapPenalty;
+    private String seq1;
+    private String seq2;
+
+    /**
+     * Number of table nodes computed, reported as a rate per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Cells {
+        public long cells;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cells = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException, SubstMatrix.MatrixDimensionException {
+        substMatrix = new SubstMatrix(BenchmarkData.matrixFile().getPath());
+        gapPenalty = new GapPenalty(gap.equals("linear") ? List.of("8") : List.of("1", "10"));
+        seq1 = BenchmarkData.sequence(BenchmarkData.AMINO_ACIDS, length, 1);
+        seq2 = BenchmarkData.sequence(BenchmarkData.AMINO_ACIDS, length, 2);
+    }
+
+    @Benchmark
+    public double needlemanWunsch(Cells counter) {
+        NW nw = new NW(seq1, seq2, substMatrix, gapPenalty);
+        nw.setBlockedFill(blocked);
+        nw.calculate();
+        counter.cells += (long) length * length;
+        return nw.getScore();
+    }
+
+    @Benchmark
+    public double smithWaterman(Cells counter) {
+        SW sw = new SW(seq1, seq2, substMatrix, gapPenalty);
+        sw.setBlockedFill(blocked);
+        sw.calculate();
+        counter.cells += (long) length * length;
+        return sw.getScore();
+    }
+
+    @Benchmark
+    public double stripedSmithWaterman(Cells counter) {
+        StripedSW sw = new StripedSW(seq1, substMatrix, gapPenalty);
+        counter.cells += (long) length * length;
+        return sw.score(seq2);
+    }
+}
@@ -0,0 +1,137 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Generates the inputs of the benchmarks, always the same for the same arguments,
+ * so that the results of different runs can be compared.
+ */
+final class BenchmarkData {
+    /**
+     * The symbols of the generated protein sequences and of the matrix.
+     */
+    static final String AMINO_ACIDS = "ARNDCQEGHILKMFPSTWYV";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Generates a random sequence.
+     *
+     * @param alphabet  The symbols of the sequence.
+     * @param length  Length of the sequence.
+     * @param seed  Seed of the random generator.
+     * @return  The sequence.
+     */
+    static String sequence(String alphabet, int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sequence.toString();
+    }
+
+    /**
+     * Writes a symmetric matrix of whole numbers over the {@link #AMINO_ACIDS}
+     * to a temporary file, positive on the diagonal and mostly negative elsewhere.
+     *
+     * @return  The file with the matrix, deleted on exit.
+     * @throws IOException  If the file cannot be written.
+     */
+    static File matrixFile() throws IOException {
+        File file = File.createTempFile("nwsw-matrix", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            StringBuilder header = new StringBuilder(" ");
+            for (char symbol : AMINO_ACIDS.toCharArray()) {
+                header.append('\t').append(symbol);
+            }
+            writer.println(header);
+            for (int i = 0; i < AMINO_ACIDS.length(); i++) {
+                StringBuilder row = new StringBuilder().append(AMINO_ACIDS.charAt(i));
+                for (int j = 0; j < AMINO_ACIDS.length(); j++) {
+                    int value = i == j ? 4 + i % 4 : 1 - (i * j + i + j) % 5;
+                    row.append('\t').append(value);
+                }
+                writer.println(row);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes random protein records in the FASTA format to a temporary file.
+     *
+     * @param records  Number of records.
+     * @param length  Length of each record.
+     * @return  The file with the records, deleted on exit.
+     * @throws IOException  If the file cannot be written.
+     */
+    static File fastaFile(int records, int length) throws IOException {
+        File file = File.createTempFile("nwsw-database", ".fasta");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int record = 0; record < records; record++) {
+                writer.println(">record" + record + " generated for the benchmarks");
+                String sequence = sequence(AMINO_ACIDS, length, record);
+                for (int i = 0; i < length; i += 60) {
+                    writer.println(sequence.substring(i, Math.min(i + 60, length)));
+                }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes random protein records in the FASTA format to a temporary file, every
+     * spacing-th of them holding a mutated part of the query in its middle: each symbol
+     * of the part is replaced with a random one with the given probability, and deleted
+     * or followed by an inserted one with a probability of two percent each.
+     *
+     * @param query  The query the homologous records are made of.
+     * @param records  Number of records.
+     * @param length  Length of each random record.
+     * @param spacing  Number of records per one homologous record.
+     * @param mutation  Probability of the replacement of a symbol.
+     * @return  The file with the records, deleted on exit.
+     * @throws IOException  If the file cannot be written.
+     */
+    static File homologousFastaFile(String query, int records, int length, int spacing, double mutation) throws IOException {
+        File file = File.createTempFile("nwsw-homologs", ".fasta");
+        file.deleteOnExit();
+        Random random = new Random(records);
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int record = 0; record < records; record++) {
+                String sequence = sequence(AMINO_ACIDS, length, record);
+                if (record % spacing == 0) {
+                    StringBuilder homolog = new StringBuilder(sequence.substring(0, length / 2));
+                    int start = random.nextInt(query.length() / 3);
+                    int end = query.length() - random.nextInt(query.length() / 3);
+                    for (int i = start; i < end; i++) {
+                        double event = random.nextDouble();
+                        if (event < mutation) {
+                            homolog.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                        }
+                        else if (event < mutation + 0.02) {
+                            continue;
+                        }
+                        else {
+                            homolog.append(query.charAt(i));
+                            if (event < mutation + 0.04) {
+                                homolog.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                            }
+                        }
+                    }
+                    sequence = homolog.append(sequence.substring(length / 2)).toString();
+                }
+                writer.println(">record" + record + (record % spacing == 0 ? " homologous to the query" : " generated for the benchmarks"));
+                writer.println(sequence);
+            }
+        }
+        return file;
+    }
+}
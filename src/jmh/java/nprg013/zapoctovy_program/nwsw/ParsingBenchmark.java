@@ -0,0 +1,84 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of loading the substitution matrix and of parsing
+ * a large FASTA file with many records.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParsingBenchmark {
+    @Param({"10000"})
+    public int records;
+    @Param({"300"})
+    public int recordLength;
+    private String matrixPath;
+    private String fastaPath;
+    private SubstMatrix substMatrix;
+
+    @Setup
+    public void setup() throws IOException, SubstMatrix.MatrixDimensionException {
+        matrixPath = BenchmarkData.matrixFile().getPath();
+        fastaPath = BenchmarkData.fastaFile(records, recordLength).getPath();
+        substMatrix = new SubstMatrix(matrixPath);
+    }
+
+    @Benchmark
+    public SubstMatrix loadMatrix() throws IOException, SubstMatrix.MatrixDimensionException {
+        return new SubstMatrix(matrixPath);
+    }
+
+    /**
+     * Parses the first record of the file by {@link LoadSeq}.
+     */
+    @Benchmark
+    public LoadSeq loadSequences() throws IOException {
+        return new LoadSeq(fastaPath, fastaPath);
+    }
+
+    /**
+     * Parses the file record by record by {@link FastaReader}.
+     */
+    @Benchmark
+    public void readRecords(Blackhole blackhole) throws IOException {
+        try (FastaReader reader = new FastaReader(fastaPath)) {
+            LoadSeq.SequenceData record;
+            while ((record = reader.next()) != null) {
+                blackhole.consume(record);
+            }
+        }
+    }
+
+    /**
+     * Reads the file record by record by {@link FastaReader} and encodes
+     * the residues straight from the mapped file, without any strings.
+     */
+    @Benchmark
+    public void readEncodedRecords(Blackhole blackhole) throws IOException {
+        try (FastaReader reader = new FastaReader(fastaPath)) {
+            FastaRecord record;
+            while ((record = reader.nextRecord()) != null) {
+                blackhole.consume(record.encode(substMatrix));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the exhaustive {@link DatabaseSearch} and of the heuristic {@link SeedSearch}
+ * of a protein database with mutated copies of parts of the query among random records.
+ * <p>
+ * The setup prints the sensitivity of the heuristic search, that is the share of the
+ * homologous records it scores the same as the exhaustive one, along with the number
+ * of the other records it scores above zero.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class SearchBenchmark {
+    /**
+     * Number of records per one homologous record.
+     */
+    private static final int SPACING = 100;
+    @Param({"20000"})
+    public int records;
+    @Param({"0.3", "0.5"})
+    public double mutation;
+    private String fastaPath;
+    private DatabaseSearch exhaustive;
+    private SeedSearch seeded;
+
+    @Setup
+    public void setup() throws IOException, SubstMatrix.MatrixDimensionException {
+        String query = BenchmarkData.sequence(BenchmarkData.AMINO_ACIDS, 300, -1);
+        fastaPath = BenchmarkData.homologousFastaFile(query, records, 300, SPACING, mutation).getPath();
+        SubstMatrix substMatrix = MatrixRegistry.builtIn("BLOSUM62");
+        GapPenalty gapPenalty = new GapPenalty(List.of("1", "10"));
+        exhaustive = new DatabaseSearch(query, substMatrix, gapPenalty);
+        seeded = new SeedSearch(query, substMatrix, gapPenalty);
+        Map<Long, Double> scores = new HashMap<>();
+        for (DatabaseSearch.Hit hit : seeded.search(fastaPath, records)) {
+            scores.put(hit.getIndex(), hit.getScore());
+        }
+        int found = 0;
+        int others = 0;
+        for (DatabaseSearch.Hit hit : exhaustive.search(fastaPath, records)) {
+            double score = scores.get(hit.getIndex());
+            if (hit.getIndex() % SPACING == 0) {
+                found += score == hit.getScore() ? 1 : 0;
+            }
+            else {
+                others += score > 0.0 ? 1 : 0;
+            }
+        }
+        System.out.printf("%nSensitivity %d of %d homologous records, %d other records scored%n",
+                found, (records + SPACING - 1) / SPACING, others);
+    }
+
+    @Benchmark
+    public List<DatabaseSearch.Hit> exhaustiveSearch() throws IOException {
+        return exhaustive.search(fastaPath, 10);
+    }
+
+    @Benchmark
+    public List<DatabaseSearch.Hit> seedSearch() throws IOException {
+        return seeded.search(fastaPath, 10);
+    }
+}
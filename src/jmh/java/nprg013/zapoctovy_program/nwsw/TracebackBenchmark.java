@@ -0,0 +1,50 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the enumeration of all the optimal alignments of
+ * low complexity sequences, whose number grows quickly with their length.
+ * The table is filled once, only the traceback is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TracebackBenchmark {
+    /**
+     * The repeated motif of the first sequence, the second one
+     * being the same motif repeated fewer times.
+     */
+    @Param({"A", "AC", "ACG"})
+    public String motif;
+    @Param({"8", "12"})
+    public int repeats;
+    private NW nw;
+
+    @Setup
+    public void setup() throws SubstMatrix.MatrixDimensionException {
+        nw = new NW(motif.repeat(repeats), motif.repeat(repeats / 2), "1", "-1", "1");
+        nw.calculate();
+    }
+
+    @Benchmark
+    public int backtrack() {
+        nw.backtrack();
+        return nw.results.size();
+    }
+}
@@ -0,0 +1,280 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.util.Arrays;
+
+/**
+ * One alignment of two sequences, kept as its score, the parts of the sequences
+ * it spans and the runs of its operations, each run one int holding the number
+ * of its columns shifted left by two bits and the operation in the lowest two bits:
+ * {@link #MATCH}, {@link #MISMATCH}, {@link #INSERT} for a symbol of the first
+ * sequence against a gap and {@link #DELETE} for a symbol of the second sequence
+ * against a gap.
+ * <p>
+ * The sequences themselves are shared, so an alignment takes a few bytes per run
+ * however long it is, and the aligned sequences padded by '_' are only written
+ * out by {@link #getAlignment()}.
+ */
+public class Alignment {
+    static final int MATCH = 0;
+    static final int MISMATCH = 1;
+    static final int INSERT = 2;
+    static final int DELETE = 3;
+    private static final String LETTERS = "MXID";
+    private final String seq1;
+    private final String seq2;
+    private final double score;
+    private final int start1;
+    private final int end1;
+    private final int start2;
+    private final int end2;
+    private final int[] runs;
+
+    /**
+     * Keeps the alignment, computing its ends from the runs.
+     *
+     * @param seq1  The first sequence.
+     * @param seq2  The second sequence.
+     * @param score  The score of the alignment.
+     * @param start1  The number of the symbols of the first sequence before the alignment.
+     * @param start2  The number of the symbols of the second sequence before the alignment.
+     * @param runs  The runs of the operations from the start of the alignment.
+     */
+    Alignment(String seq1, String seq2, double score, int start1, int start2, int[] runs) {
+        this.seq1 = seq1;
+        this.seq2 = seq2;
+        this.score = score;
+        this.start1 = start1;
+        this.start2 = start2;
+        this.runs = runs;
+        int end1 = start1;
+        int end2 = start2;
+        for (int run : runs) {
+            int operation = run & 3;
+            end1 += operation != DELETE ? run >>> 2 : 0;
+            end2 += operation != INSERT ? run >>> 2 : 0;
+        }
+        this.end1 = end1;
+        this.end2 = end2;
+    }
+
+    /**
+     * Copies an alignment, for the subclasses.
+     *
+     * @param alignment  The alignment.
+     */
+    Alignment(Alignment alignment) {
+        this(alignment.seq1, alignment.seq2, alignment.score, alignment.start1, alignment.start2, alignment.runs);
+    }
+
+    /**
+     * Returns the score of the alignment.
+     *
+     * @return  The score.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of symbols of the first sequence before the alignment.
+     *
+     * @return  The start of the alignment in the first sequence.
+     */
+    public int getStart1() {
+        return start1;
+    }
+
+    /**
+     * Returns the number of symbols of the first sequence up to the end of the alignment.
+     *
+     * @return  The end of the alignment in the first sequence.
+     */
+    public int getEnd1() {
+        return end1;
+    }
+
+    /**
+     * Returns the number of symbols of the second sequence before the alignment.
+     *
+     * @return  The start of the alignment in the second sequence.
+     */
+    public int getStart2() {
+        return start2;
+    }
+
+    /**
+     * Returns the number of symbols of the second sequence up to the end of the alignment.
+     *
+     * @return  The end of the alignment in the second sequence.
+     */
+    public int getEnd2() {
+        return end2;
+    }
+
+    /**
+     * Returns the number of the columns of the alignment.
+     *
+     * @return  The length of both aligned sequences.
+     */
+    public int length() {
+        return (int) (columns(MATCH) + columns(MISMATCH) + columns(INSERT) + columns(DELETE));
+    }
+
+    /**
+     * Counts the columns of one operation.
+     *
+     * @param operation  One of {@link #MATCH}, {@link #MISMATCH}, {@link #INSERT} and {@link #DELETE}.
+     * @return  The number of the columns.
+     */
+    long columns(int operation) {
+        long columns = 0;
+        for (int run : runs) {
+            if ((run & 3) == operation) {
+                columns += run >>> 2;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the runs of the operations from the start of the alignment.
+     *
+     * @return  A copy of the runs, the number of the columns shifted left
+     *          by two bits and the operation in the lowest two bits.
+     */
+    public int[] getRuns() {
+        return runs.clone();
+    }
+
+    /**
+     * Writes the alignment in the CIGAR notation, M for a match, X for a mismatch,
+     * I for a symbol of the first sequence, the query, against a gap, and D for
+     * a symbol of the second sequence, the reference, against a gap.
+     *
+     * @return  The CIGAR string, empty for the empty alignment.
+     */
+    public String getCigar() {
+        StringBuilder cigar = new StringBuilder();
+        int operation = -1;
+        int count = 0;
+        for (int run : runs) {
+            if ((run & 3) != operation && count > 0) {
+                cigar.append(count).append(LETTERS.charAt(operation));
+                count = 0;
+            }
+            operation = run & 3;
+            count += run >>> 2;
+        }
+        if (count > 0) {
+            cigar.append(count).append(LETTERS.charAt(operation));
+        }
+        return cigar.toString();
+    }
+
+    /**
+     * Writes out both aligned parts of the sequences, with the gaps marked by '_'.
+     *
+     * @return  The aligned part of the first and of the second sequence.
+     */
+    public String[] getAlignment() {
+        int length = length();
+        StringBuilder alignment1 = new StringBuilder(length);
+        StringBuilder alignment2 = new StringBuilder(length);
+        int i = start1;
+        int j = start2;
+        for (int run : runs) {
+            int operation = run & 3;
+            for (int k = run >>> 2; k > 0; k--) {
+                alignment1.append(operation == DELETE ? '_' : seq1.charAt(i++));
+                alignment2.append(operation == INSERT ? '_' : seq2.charAt(j++));
+            }
+        }
+        return new String[]{alignment1.toString(), alignment2.toString()};
+    }
+
+    /**
+     * Collects the operations of an alignment as it is traced back,
+     * that is from its end to its start.
+     */
+    static final class Builder {
+        private final String seq1;
+        private final String seq2;
+        private int[] runs = new int[8];
+        private int size;
+
+        /**
+         * Prepares the empty alignment.
+         *
+         * @param seq1  The first sequence.
+         * @param seq2  The second sequence.
+         */
+        Builder(String seq1, String seq2) {
+            this.seq1 = seq1;
+            this.seq2 = seq2;
+        }
+
+        /**
+         * Adds the column of a pair of symbols in front of the alignment, as a match or a mismatch.
+         *
+         * @param i  The index of the symbol of the first sequence.
+         * @param j  The index of the symbol of the second sequence.
+         */
+        void pair(int i, int j) {
+            add(seq1.charAt(i) == seq2.charAt(j) ? MATCH : MISMATCH);
+        }
+
+        /**
+         * Adds a column in front of the alignment.
+         *
+         * @param operation  The operation of the column.
+         */
+        void add(int operation) {
+            append(4 | operation);
+        }
+
+        /**
+         * Adds a run of columns in front of the alignment, merging it with the run
+         * collected last if they have the same operation and fit in one.
+         *
+         * @param run  The number of the columns shifted left by two bits and the operation.
+         */
+        private void append(int run) {
+            if (size > 0 && (runs[size - 1] & 3) == (run & 3) && (long) (runs[size - 1] >>> 2) + (run >>> 2) <= Integer.MAX_VALUE >>> 2) {
+                runs[size - 1] += run & ~3;
+                return;
+            }
+            if (size == runs.length) {
+                runs = Arrays.copyOf(runs, 2 * size);
+            }
+            runs[size++] = run;
+        }
+
+        /**
+         * Adds the columns collected by another builder, the part of the alignment
+         * in front of the columns collected so far.
+         *
+         * @param part  The builder of the part.
+         */
+        void add(Builder part) {
+            for (int k = 0; k < part.size; k++) {
+                append(part.runs[k]);
+            }
+        }
+
+        /**
+         * Creates the alignment of the operations collected so far.
+         *
+         * @param score  The score of the alignment.
+         * @param start1  The number of the symbols of the first sequence before the alignment.
+         * @param start2  The number of the symbols of the second sequence before the alignment.
+         * @return  The alignment.
+         */
+        Alignment build(double score, int start1, int start2) {
+            int[] ordered = new int[size];
+            for (int k = 0; k < size; k++) {
+                ordered[k] = runs[size - 1 - k];
+            }
+            return new Alignment(seq1, seq2, score, start1, start2, ordered);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nprg013.zapoctovy_program.nwsw;
+
+/**
+ * The score of an optimal alignment together with the position where it ends,
+ * as computed without the traceback.
+ */
+public class AlignmentScore {
+    private final double score;
+    private final int end1;
+    private final int end2;
+
+    AlignmentScore(double score, int end1, int end2) {
+        this.score = score;
+        this.end1 = end1;
+        this.end2 = end2;
+    }
+
+    /**
+     * Returns the score of the optimal alignment.
+     *
+     * @return  The score.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the number of symbols of the first sequence up to the end of the alignment,
+     * that is the length of the sequence for the global alignment.
+     *
+     * @return  The end of the alignment in the first sequence.
+     */
+    public int getEnd1() {
+        return end1;
+    }
+
+    /**
+     * Returns the number of symbols of the second sequence up to the end of the alignment,
+     * that is the length of the sequence for the global alignment.
+     *
+     * @return  The end of the alignment in the second sequence.
+     */
+    public int getEnd2() {
+        return end2;
+    }
+}
@@ -0,0 +1,232 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * The class that computes the Needleman-Wunsch scores of all the pairs
+ * of a set of sequences, for building guide trees or clustering.
+ * <p>
+ * The sequences are encoded once and every pair is scored by
+ * {@link NW#globalScore(byte[], int, byte[], int, double[], GapPenalty)}
+ * in linear memory, only the upper triangle of the matrix and its diagonal
+ * being computed, with the sequence of the lower index as the first one.
+ * <p>
+ * The sequences are ordered by their length, from the longest one. Each row of the
+ * pairs in that order is split into tasks of roughly the same number of nodes,
+ * and the tasks are handed to a work-stealing pool from the largest one,
+ * so that the long pairs do not remain to be computed at the end by a few threads.
+ */
+public class AllPairs {
+    /**
+     * Number of tasks per thread the pairs are split into, at least.
+     */
+    private static final int TASKS_PER_THREAD = 64;
+    private final List<byte[]> encoded;
+    private final SubstMatrix substMatrix;
+    private final GapPenalty gapPenalty;
+    /**
+     * Number of threads scoring the pairs.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Prepares the calculation for all the records of a FASTA file or of a {@link SequenceDatabase}.
+     *
+     * @param sequencesPath  Path to the file with the sequences.
+     * @param matrixPath  Path to file with the scoring matrix.
+     * @param gapValue  One or two values of the gap penalty.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public AllPairs(String sequencesPath, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        this.substMatrix = MatrixRegistry.get(matrixPath);
+        this.gapPenalty = new GapPenalty(gapValue);
+        this.encoded = new ArrayList<>();
+        try (RecordReader reader = RecordReader.open(sequencesPath)) {
+            FastaRecord record;
+            while ((record = reader.nextRecord()) != null) {
+                encoded.add(record.encode(substMatrix));
+            }
+        }
+    }
+
+    /**
+     * Prepares the calculation for the sequences.
+     *
+     * @param sequences  The sequences.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     */
+    public AllPairs(List<String> sequences, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        this.substMatrix = substMatrix;
+        this.gapPenalty = gapPenalty;
+        this.encoded = new ArrayList<>();
+        for (String sequence : sequences) {
+            encoded.add(substMatrix.encode(sequence));
+        }
+    }
+
+    /**
+     * Returns the number of the sequences.
+     *
+     * @return  The number of the sequences.
+     */
+    public int size() {
+        return encoded.size();
+    }
+
+    /**
+     * Returns the number of threads scoring the pairs.
+     *
+     * @return  The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads scoring the pairs,
+     * by default the number of available processors.
+     *
+     * @param threads  The number of threads, at least one.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Scores all the pairs, keeping the scores on the heap.
+     *
+     * @return  The scores.
+     */
+    public PairScores scores() {
+        PairScores scores = PairScores.onHeap(size());
+        fill(scores);
+        return scores;
+    }
+
+    /**
+     * Scores all the pairs, writing the scores to a file mapped into memory,
+     * for the sets whose scores would not fit into the heap. The file can be
+     * opened again by {@link PairScores#open(String)}.
+     *
+     * @param path  The path to the file, overwritten if it exists.
+     * @return  The scores, to be closed after use.
+     * @throws IOException  If the path is not valid.
+     */
+    public PairScores scores(String path) throws IOException {
+        PairScores scores = PairScores.create(path, size());
+        try {
+            fill(scores);
+            scores.force();
+        }
+        catch (RuntimeException e) {
+            scores.close();
+            throw e;
+        }
+        return scores;
+    }
+
+    /**
+     * Scores all the pairs on the pool of the {@link #threads}.
+     *
+     * @param scores  The scores to be filled.
+     */
+    private void fill(PairScores scores) {
+        int[] order = order();
+        List<long[]> tasks = tasks(order);
+        double[] matrixScores = substMatrix.scores();
+        int stride = substMatrix.size();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (long[] task : tasks) {
+                futures.add(pool.submit(() -> {
+                    int first = order[(int) task[1]];
+                    for (int k = (int) task[2]; k < task[3]; k++) {
+                        int second = order[k];
+                        int lower = Math.min(first, second);
+                        int upper = Math.max(first, second);
+                        byte[] encoded1 = encoded.get(lower);
+                        byte[] encoded2 = encoded.get(upper);
+                        double score = encoded2.length <= encoded1.length
+                                ? NW.globalScore(encoded1, stride, encoded2, 1, matrixScores, gapPenalty)
+                                : NW.globalScore(encoded2, 1, encoded1, stride, matrixScores, gapPenalty);
+                        scores.set(lower, upper, (float) score);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scoring the pairs", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Orders the sequences by their length, from the longest one.
+     *
+     * @return  The indices of the sequences in that order.
+     */
+    private int[] order() {
+        return IntStream.range(0, size()).boxed()
+                .sorted(Comparator.comparingInt((Integer index) -> encoded.get(index).length).reversed())
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Splits the pairs into the tasks. In the order of the sequences, the row of each
+     * sequence holds its pairs with itself and with all the shorter sequences, and it is
+     * split into parts of at most the total number of nodes per
+     * {@link #TASKS_PER_THREAD} tasks of each thread.
+     *
+     * @param order  The indices of the sequences from the longest one.
+     * @return  The tasks from the largest one, each holding the number of its nodes,
+     *          its row and the first and the last but one of its columns.
+     */
+    private List<long[]> tasks(int[] order) {
+        long[] lengths = new long[order.length];
+        long total = 0;
+        long suffix = 0;
+        for (int k = order.length - 1; k >= 0; k--) {
+            lengths[k] = encoded.get(order[k]).length + 1L;
+            suffix += lengths[k];
+            total += lengths[k] * suffix;
+        }
+        long limit = Math.max(1, total / ((long) threads * TASKS_PER_THREAD));
+        List<long[]> tasks = new ArrayList<>();
+        for (int row = 0; row < order.length; row++) {
+            int start = row;
+            long nodes = 0;
+            for (int column = row; column < order.length; column++) {
+                nodes += lengths[row] * lengths[column];
+                if (nodes >= limit || column == order.length - 1) {
+                    tasks.add(new long[]{nodes, row, start, column + 1});
+                    start = column + 1;
+                    nodes = 0;
+                }
+            }
+        }
+        tasks.sort(Comparator.comparingLong((long[] task) -> task[0]).reversed());
+        return tasks;
+    }
+}
@@ -0,0 +1,400 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * One pass of the banded calculation, computing only the nodes whose diagonal,
+ * that is the column minus the row, lies within the band.
+ * <p>
+ * The band spans the diagonals between the first and the last node of the table,
+ * widened by the given number of diagonals on both sides. Its nodes are stored
+ * row by row, each row holding the same number of nodes, so the node of row i
+ * and diagonal d is found at i times the width of the band plus d minus the
+ * lowest diagonal. Only the traceback flags are kept for all the nodes, the values
+ * and the gap states are kept for two rows. The nodes outside the band are treated
+ * as unreachable.
+ * <p>
+ * The values and the flags of the nodes are computed by the same rules as in
+ * {@link NW} and {@link SW}, and one alignment is traced back the same way
+ * their first result is.
+ */
+final class Band {
+    private static final int BEST = 0;
+    private static final int INSERT = 1;
+    private static final int DELETE = 2;
+    private final PSA psa;
+    private final boolean local;
+    private final boolean affine;
+    private final int length1;
+    private final int length2;
+    /**
+     * The lowest and the highest diagonal of the band.
+     */
+    private final int lowest;
+    private final int highest;
+    /**
+     * Number of nodes in one row of the band.
+     */
+    private final int width;
+    private final byte[] flags;
+    private double score;
+    private int endRow;
+    private int endColumn;
+    private boolean touchesEdge;
+    /**
+     * The alignment traced back.
+     */
+    private Alignment alignment;
+
+    /**
+     * Sets the band up.
+     *
+     * @param psa  The calculation whose sequences, matrix and gap penalty are used.
+     * @param extra  Number of diagonals on both sides of the ones between the first and the last node.
+     * @param local  True for the Smith-Waterman rules, false for the Needleman-Wunsch ones.
+     */
+    Band(PSA psa, int extra, boolean local) {
+        this.psa = psa;
+        this.local = local;
+        length1 = psa.seq1.length();
+        length2 = psa.seq2.length();
+        switch (psa.gapPenalty.getType()) {
+            case AFFINE:
+                affine = true;
+                break;
+            case LINEAR:
+                affine = false;
+                break;
+            default:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not initialized properly");
+        }
+        lowest = (int) Math.max(-length1, (long) Math.min(0, length2 - length1) - extra);
+        highest = (int) Math.min(length2, (long) Math.max(0, length2 - length1) + extra);
+        width = highest - lowest + 1;
+        flags = new byte[Math.multiplyExact(length1 + 1, width)];
+    }
+
+    /**
+     * Computes the alignment in a band of the given extra width, doubling
+     * the width until the alignment is known to be optimal, that is until
+     * the band covers the whole table, or until the path of the alignment
+     * does not touch the edge of the band and no path leaving the band
+     * can score higher, as bounded by {@link #outsideBound()}.
+     *
+     * @param psa  The calculation whose sequences, matrix and gap penalty are used.
+     * @param extra  Number of diagonals added on both sides in the first pass.
+     * @param local  True for the Smith-Waterman rules, false for the Needleman-Wunsch ones.
+     * @return  The band of the last pass, with the alignment traced back.
+     */
+    static Band align(PSA psa, int extra, boolean local) {
+        int width = Math.max(1, extra);
+        while (true) {
+            long start = System.nanoTime();
+            Band band = new Band(psa, width, local);
+            band.fill();
+            psa.reportFill(start, band.flags.length, band.flags.length + 4L * (band.width + 1) * Double.BYTES);
+            start = System.nanoTime();
+            band.alignment = band.backtrack();
+            psa.reportTraceback(start, Collections.singletonList(band.alignment));
+            if (band.isFull() || !band.touchesEdge && band.score >= band.outsideBound()) {
+                return band;
+            }
+            width = (int) Math.min(Integer.MAX_VALUE, 2L * width);
+        }
+    }
+
+    /**
+     * Determines whether the band covers the whole table.
+     *
+     * @return  True if no node lies outside the band.
+     */
+    boolean isFull() {
+        return lowest == -length1 && highest == length2;
+    }
+
+    /**
+     * Returns the alignment traced back by {@link #align(PSA, int, boolean)}.
+     *
+     * @return  The alignment.
+     */
+    Alignment alignment() {
+        return alignment;
+    }
+
+    /**
+     * Bounds from above the score of any path through a node outside the band.
+     * <p>
+     * Such a path reaches the diagonal next to the band, and each match
+     * scores at most the highest score of the matrix. A global path then needs
+     * enough gaps to get there from the first node and back to the last one,
+     * in both directions, so at least two gaps under the affine penalty.
+     * For a local path, only those lying wholly outside the band are bounded,
+     * by the length of the longest diagonal there.
+     *
+     * @return  The bound, or negative infinity if there is no node outside the band.
+     */
+    private double outsideBound() {
+        double highestScore = 0.0;
+        for (double value: psa.scores) {
+            highestScore = Math.max(highestScore, value);
+        }
+        double bound = Double.NEGATIVE_INFINITY;
+        if (highest < length2) {
+            int outside = highest + 1;
+            bound = Math.max(bound, sideBound(highestScore, Math.min(length1, length2 - outside), 2L * outside - (length2 - length1)));
+        }
+        if (lowest > -length1) {
+            int outside = lowest - 1;
+            bound = Math.max(bound, sideBound(highestScore, Math.min(length2, length1 + outside), (long) (length2 - length1) - 2L * outside));
+        }
+        return bound;
+    }
+
+    /**
+     * Bounds the score of a path through the given diagonal outside the band.
+     *
+     * @param highestScore  The highest score of the matrix, or zero if it is negative.
+     * @param matches  The largest number of diagonal moves of the path.
+     * @param gaps  The smallest number of gap symbols of a global path.
+     * @return  The bound.
+     */
+    private double sideBound(double highestScore, int matches, long gaps) {
+        if (local) {
+            return highestScore * matches;
+        }
+        double gapCost = affine ? 2 * psa.gapPenalty.countAffine(1) + (gaps - 2) * psa.gapPenalty.linearPart()
+                : gaps * psa.gapPenalty.linearPart();
+        return highestScore * matches - gapCost;
+    }
+
+    /**
+     * Returns the score of the alignment found in the band.
+     *
+     * @return  The score.
+     */
+    double score() {
+        return score;
+    }
+
+    /**
+     * Determines whether the alignment traced back passes through
+     * a node on the edge of the band which is not the edge of the table.
+     *
+     * @return  True if the path touches the edge.
+     */
+    boolean touchesEdge() {
+        return touchesEdge;
+    }
+
+    /**
+     * Fills in the band row by row.
+     */
+    void fill() {
+        double open = affine ? psa.gapPenalty.countAffine(1) : psa.gapPenalty.linearPart();
+        double extend = psa.gapPenalty.linearPart();
+        double[] previous = new double[width + 1];
+        double[] current = new double[width + 1];
+        double[] previousDelete = new double[width + 1];
+        double[] currentDelete = new double[width + 1];
+        Arrays.fill(previous, Double.NEGATIVE_INFINITY);
+        Arrays.fill(previousDelete, Double.NEGATIVE_INFINITY);
+        current[width] = Double.NEGATIVE_INFINITY;
+        currentDelete[width] = Double.NEGATIVE_INFINITY;
+        score = local ? 0.0 : Double.NEGATIVE_INFINITY;
+        for (int i = 0; i <= length1; i++) {
+            double insert = Double.NEGATIVE_INFINITY;
+            double left = Double.NEGATIVE_INFINITY;
+            for (int offset = 0; offset < width; offset++) {
+                int j = i + lowest + offset;
+                int index = i * width + offset;
+                double value;
+                double delete = Double.NEGATIVE_INFINITY;
+                if (j < 0 || j > length2) {
+                    value = Double.NEGATIVE_INFINITY;
+                }
+                else if (i == 0 || j == 0) {
+                    value = border(i, j);
+                    flags[index] = local ? 0 : (i == 0 ? (j == 0 ? 0 : PSA.LEFT) : PSA.UP);
+                }
+                else {
+                    double up = previous[offset + 1];
+                    double similarity = psa.scores[psa.encoded1[i - 1] * psa.stride + psa.encoded2[j - 1]];
+                    double diagonal = previous[offset] + similarity;
+                    byte gapFlags = 0;
+                    if (affine) {
+                        double insertOpen = left - open;
+                        double insertExtend = local ? (j == 1 ? Double.NEGATIVE_INFINITY : insert - extend)
+                                : (j > 2 ? insert - extend : Double.NEGATIVE_INFINITY);
+                        double deleteOpen = up - open;
+                        double deleteExtend = local ? previousDelete[offset + 1] - extend
+                                : (i > 2 ? previousDelete[offset + 1] - extend : Double.NEGATIVE_INFINITY);
+                        if (local && j == 1) {
+                            insert = Double.NEGATIVE_INFINITY;
+                        }
+                        else {
+                            insert = Math.max(insertOpen, insertExtend);
+                            gapFlags |= insertOpen == insert ? PSA.INSERT_OPEN : 0;
+                            gapFlags |= insertExtend == insert && !(local && insertOpen == insert) ? PSA.INSERT_EXTEND : 0;
+                        }
+                        if (local && i == 1) {
+                            delete = Double.NEGATIVE_INFINITY;
+                        }
+                        else {
+                            delete = Math.max(deleteOpen, deleteExtend);
+                            gapFlags |= deleteOpen == delete ? PSA.DELETE_OPEN : 0;
+                            gapFlags |= deleteExtend == delete && !(local && deleteOpen == delete) ? PSA.DELETE_EXTEND : 0;
+                        }
+                    }
+                    else {
+                        insert = left - open;
+                        delete = up - open;
+                    }
+                    value = local ? localValue(index, diagonal, insert, delete, gapFlags)
+                            : globalValue(index, diagonal, insert, delete, gapFlags);
+                    if (local && value > score) {
+                        score = value;
+                        endRow = i;
+                        endColumn = j;
+                    }
+                }
+                current[offset] = value;
+                currentDelete[offset] = delete;
+                left = value;
+            }
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+            swap = previousDelete;
+            previousDelete = currentDelete;
+            currentDelete = swap;
+        }
+        if (!local) {
+            score = previous[length2 - length1 - lowest];
+            endRow = length1;
+            endColumn = length2;
+        }
+    }
+
+    /**
+     * The value of a node in the first row or column.
+     *
+     * @param i  Row of the node.
+     * @param j  Column of the node.
+     * @return  The value of the node.
+     */
+    private double border(int i, int j) {
+        if (local || i + j == 0) {
+            return 0.0;
+        }
+        int k = i + j;
+        return affine ? (double) (-1) * psa.gapPenalty.countAffine(k) : (double) k * (-1) * psa.gapPenalty.linearPart();
+    }
+
+    /**
+     * Determines the value and the flags of a node by the rules of {@link NW},
+     * flagging all the moves of equal value.
+     */
+    private double globalValue(int index, double diagonal, double insert, double delete, byte gapFlags) {
+        byte nodeFlags = gapFlags;
+        double value = diagonal;
+        if (diagonal >= insert && diagonal >= delete) {
+            nodeFlags |= PSA.DIAGONAL;
+        }
+        if (insert >= diagonal && insert >= delete) {
+            nodeFlags |= PSA.LEFT;
+            value = insert;
+        }
+        if (delete >= diagonal && delete >= insert) {
+            nodeFlags |= PSA.UP;
+            value = delete;
+        }
+        flags[index] = nodeFlags;
+        return value;
+    }
+
+    /**
+     * Determines the value and the flags of a node by the rules of {@link SW},
+     * flagging only the first move reaching the highest positive value.
+     */
+    private double localValue(int index, double diagonal, double insert, double delete, byte gapFlags) {
+        byte nodeFlags = 0;
+        double value = Math.max(diagonal, 0.0);
+        if (value > 0.0) {
+            nodeFlags = PSA.DIAGONAL;
+        }
+        if (insert > value) {
+            nodeFlags = PSA.LEFT;
+            value = insert;
+        }
+        if (delete > value) {
+            nodeFlags = PSA.UP;
+            value = delete;
+        }
+        flags[index] = (byte) (nodeFlags | gapFlags);
+        return value;
+    }
+
+    /**
+     * Traces back one alignment from its end, preferring the diagonal move,
+     * then the gap in the first sequence and then the one in the second sequence,
+     * and the closest opening of a gap, while watching for the edge of the band.
+     *
+     * @return  The alignment, spanning the sequences from the node where the traceback stops.
+     */
+    Alignment backtrack() {
+        Alignment.Builder alignment = new Alignment.Builder(psa.seq1, psa.seq2);
+        int i = endRow;
+        int j = endColumn;
+        int state = BEST;
+        touchesEdge = false;
+        while (local ? state != BEST || (flagsAt(i, j) & (PSA.DIAGONAL | PSA.LEFT | PSA.UP)) != 0 : i > 0 || j > 0) {
+            int diagonal = j - i;
+            touchesEdge |= diagonal == lowest && lowest > -length1 || diagonal == highest && highest < length2;
+            byte nodeFlags = flagsAt(i, j);
+            if (state == BEST) {
+                boolean inner = affine && i > 0 && j > 0;
+                if ((nodeFlags & PSA.DIAGONAL) != 0) {
+                    alignment.pair(i - 1, j - 1);
+                    i--;
+                    j--;
+                    continue;
+                }
+                state = (nodeFlags & PSA.LEFT) != 0 ? INSERT : DELETE;
+                if (!inner) {
+                    if (state == INSERT) {
+                        alignment.add(Alignment.DELETE);
+                        j--;
+                    }
+                    else {
+                        alignment.add(Alignment.INSERT);
+                        i--;
+                    }
+                    state = BEST;
+                }
+            }
+            else if (state == INSERT) {
+                alignment.add(Alignment.DELETE);
+                j--;
+                state = (nodeFlags & PSA.INSERT_OPEN) != 0 ? BEST : INSERT;
+            }
+            else {
+                alignment.add(Alignment.INSERT);
+                i--;
+                state = (nodeFlags & PSA.DELETE_OPEN) != 0 ? BEST : DELETE;
+            }
+        }
+        return alignment.build(score, i, j);
+    }
+
+    /**
+     * Returns the traceback flags of a node within the band.
+     *
+     * @param i  Row of the node.
+     * @param j  Column of the node.
+     * @return  The flags.
+     */
+    private byte flagsAt(int i, int j) {
+        return flags[i * width + j - i - lowest];
+    }
+}
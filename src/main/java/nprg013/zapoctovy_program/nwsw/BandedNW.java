@@ -0,0 +1,68 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The class that implements the Needleman-Wunsch algorithm within a band
+ * of diagonals, in time and memory proportional to the length of the sequences
+ * times the width of the band, which suits similar sequences of similar lengths.
+ * <p>
+ * The band is doubled automatically until the alignment found is optimal,
+ * see {@link Band#align(PSA, int, boolean)}. Only one of the optimal alignments
+ * is found, the first one of {@link NW.TieBreak#DIAGONAL_FIRST}.
+ */
+public class BandedNW extends NW {
+    /**
+     * Number of diagonals on both sides of the band in the first pass, if not set otherwise.
+     */
+    public static final int DEFAULT_BAND_WIDTH = 16;
+    private int bandWidth = DEFAULT_BAND_WIDTH;
+
+    public BandedNW(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        super(seq1path, seq2path, matrixPath, gapValue);
+    }
+    public BandedNW(String seq1, String seq2, String match, String mismatch, String gapValue) throws SubstMatrix.MatrixDimensionException {
+        super(seq1, seq2, match, mismatch, gapValue);
+    }
+    public BandedNW(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
+
+    /**
+     * Sets the number of diagonals added to the band on both sides of those
+     * between the first and the last node in the first pass.
+     *
+     * @param bandWidth  The initial extra width of the band, at least one.
+     */
+    public void setBandWidth(int bandWidth) {
+        this.bandWidth = Math.max(1, bandWidth);
+    }
+
+    /**
+     * Entry point for the calculation.
+     * Computes the band, widening it as needed, and keeps its alignment.
+     */
+    @Override
+    void calculate() {
+        Band band = Band.align(this, bandWidth, false);
+        score = band.score();
+        results = new ArrayList<>();
+        results.add(band.alignment());
+    }
+
+    /**
+     * Computes the alignment in the band.
+     *
+     * @param maxCount  The largest number of alignments to return.
+     * @param tieBreak  Ignored, as only one alignment is found.
+     * @return  Stream of at most one alignment.
+     */
+    @Override
+    public Stream<Alignment> optimalAlignments(int maxCount, TieBreak tieBreak) {
+        calculate();
+        return results.stream().limit(Math.max(0, maxCount));
+    }
+}
@@ -0,0 +1,50 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The class that implements the Smith-Waterman algorithm within a band
+ * of diagonals, in time and memory proportional to the length of the sequences
+ * times the width of the band, which suits similar sequences of similar lengths.
+ * <p>
+ * The band is doubled automatically while the alignment found touches its edge
+ * or could be beaten outside of it, see {@link Band#align(PSA, int, boolean)}.
+ * Only one of the best alignments is found, the first one of {@link SW#backtrack()}.
+ */
+public class BandedSW extends SW {
+    private int bandWidth = BandedNW.DEFAULT_BAND_WIDTH;
+
+    public BandedSW(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        super(seq1path, seq2path, matrixPath, gapValue);
+    }
+    public BandedSW(String seq1, String seq2, String matchValue, String mismatchValue, String gapValue) throws SubstMatrix.MatrixDimensionException {
+        super(seq1, seq2, matchValue, mismatchValue, gapValue);
+    }
+    public BandedSW(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
+
+    /**
+     * Sets the number of diagonals added to the band on both sides of those
+     * between the first and the last node in the first pass.
+     *
+     * @param bandWidth  The initial extra width of the band, at least one.
+     */
+    public void setBandWidth(int bandWidth) {
+        this.bandWidth = Math.max(1, bandWidth);
+    }
+
+    /**
+     * Entry point for the calculation.
+     * Computes the band, widening it as needed, and keeps its alignment.
+     */
+    @Override
+    void calculate() {
+        Band band = Band.align(this, bandWidth, true);
+        score = band.score();
+        results = new ArrayList<>();
+        results.add(band.alignment());
+    }
+}
@@ -0,0 +1,419 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class that aligns the pairs of sequences listed in a manifest, without any
+ * questions, on a fixed number of threads, and writes one record per pair as soon
+ * as the pair is aligned, so the records come in the order of completion and carry
+ * the index of the pair in the manifest.
+ * <p>
+ * Each line of the manifest is one pair, either tab separated, the path to the query,
+ * the path to the target, the matrix and one or two values of the gap penalty, or
+ * a JSON object with the keys query, target, matrix and gap, the last one a number
+ * or an array of one or two numbers. The empty lines and those starting with #
+ * are skipped. The paths are those of FASTA files or of {@link SequenceDatabase}s,
+ * whose first records are aligned, and the matrix is a path or a bundled name
+ * as in {@link MatrixRegistry#get(String)}.
+ * <p>
+ * The calculations are prepared by the {@link NWSW} settings, and only the first
+ * optimal alignment is traced back. The record holds the score, the parts of both
+ * sequences spanned by the alignment and its {@link Alignment#getCigar()}, or the error
+ * if the pair could not be aligned, tab separated or as a JSON object.
+ */
+public class BatchAligner {
+    /**
+     * Number of sequences kept after they are read, for the pairs sharing a file.
+     */
+    private static final int CACHED_SEQUENCES = 256;
+    /**
+     * The columns of the tab separated records, written as the first line.
+     */
+    static final String TSV_HEADER = "#index\tquery\ttarget\tscore\tqueryStart\tqueryEnd\ttargetStart\ttargetEnd\tcigar\terror";
+    private final NWSW settings;
+    private final boolean local;
+    private final Format format;
+    private final Map<String, String> sequences = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHED_SEQUENCES;
+        }
+    };
+    /**
+     * Number of threads aligning the pairs.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The format of the records.
+     */
+    public enum Format {
+        /**
+         * Tab separated values, with a header line starting with #.
+         */
+        TSV,
+        /**
+         * One JSON object per line.
+         */
+        JSONL
+    }
+
+    /**
+     * Prepares the batch.
+     *
+     * @param settings  The settings preparing the calculations, including their metrics.
+     * @param local  True for the Smith-Waterman algorithm, false for Needleman-Wunsch.
+     * @param format  The format of the records.
+     */
+    public BatchAligner(NWSW settings, boolean local, Format format) {
+        this.settings = settings;
+        this.local = local;
+        this.format = format;
+    }
+
+    /**
+     * Returns the number of threads aligning the pairs.
+     *
+     * @return  The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads aligning the pairs,
+     * by default the number of available processors.
+     *
+     * @param threads  The number of threads, at least one.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Aligns all the pairs of the manifest, reading it line by line
+     * and writing the records as the pairs are aligned.
+     *
+     * @param manifest  The manifest.
+     * @param output  The writer of the records, flushed at the end but not closed.
+     * @return  The number of the pairs.
+     * @throws IOException  If the manifest cannot be read or the records cannot be written.
+     */
+    public long run(BufferedReader manifest, Writer output) throws IOException {
+        if (format == Format.TSV) {
+            output.write(TSV_HEADER);
+            output.write('\n');
+        }
+        BoundedExecutor executor = new BoundedExecutor(threads);
+        long index = 0;
+        try {
+            String line;
+            while (!executor.failed() && (line = manifest.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String pairLine = line;
+                long pairIndex = index++;
+                executor.execute(() -> {
+                    String record = align(pairIndex, pairLine);
+                    synchronized (output) {
+                        output.write(record);
+                        output.write('\n');
+                    }
+                });
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        executor.rethrow();
+        synchronized (output) {
+            output.flush();
+        }
+        return index;
+    }
+
+    /**
+     * Aligns one pair of the manifest.
+     *
+     * @param index  The index of the pair.
+     * @param line  The line of the manifest.
+     * @return  The record of the pair, without the end of the line.
+     */
+    String align(long index, String line) {
+        Pair pair = null;
+        try {
+            long start = System.nanoTime();
+            pair = Pair.parse(line);
+            String query = sequence(pair.query);
+            String target = sequence(pair.target);
+            SubstMatrix substMatrix = MatrixRegistry.get(pair.matrix);
+            GapPenalty gapPenalty = new GapPenalty(pair.gapValue);
+            settings.getMetrics().phase(Metrics.Phase.PARSE, System.nanoTime() - start);
+            Alignment alignment;
+            if (local) {
+                SW sw = settings.localAligner(query, target, substMatrix, gapPenalty);
+                sw.calculate();
+                alignment = sw.getAlignments().get(0);
+            }
+            else {
+                NW nw = settings.globalAligner(query, target, substMatrix, gapPenalty, true);
+                alignment = nw.optimalAlignments(1, NW.TieBreak.DIAGONAL_FIRST).findFirst().orElseThrow();
+            }
+            return record(index, pair, alignment);
+        }
+        catch (Exception | OutOfMemoryError e) {
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            String message = cause.getMessage() != null ? cause.getClass().getSimpleName() + ": " + cause.getMessage() : cause.getClass().getSimpleName();
+            return error(index, pair, message);
+        }
+    }
+
+    /**
+     * Reads the first record of a file, or takes it from the recently read ones.
+     *
+     * @param path  The path to the file.
+     * @return  The sequence.
+     */
+    private String sequence(String path) {
+        synchronized (sequences) {
+            String sequence = sequences.get(path);
+            if (sequence != null) {
+                return sequence;
+            }
+        }
+        try {
+            String sequence = DatabaseSearch.readQuery(path);
+            synchronized (sequences) {
+                sequences.put(path, sequence);
+            }
+            return sequence;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String record(long index, Pair pair, Alignment alignment) {
+        if (format == Format.TSV) {
+            return index + "\t" + pair.query + "\t" + pair.target + "\t" + alignment.getScore() + "\t" + alignment.getStart1()
+                    + "\t" + alignment.getEnd1() + "\t" + alignment.getStart2() + "\t" + alignment.getEnd2()
+                    + "\t" + alignment.getCigar() + "\t";
+        }
+        return "{\"index\":" + index + ",\"query\":" + quote(pair.query) + ",\"target\":" + quote(pair.target)
+                + ",\"score\":" + alignment.getScore() + ",\"queryStart\":" + alignment.getStart1() + ",\"queryEnd\":" + alignment.getEnd1()
+                + ",\"targetStart\":" + alignment.getStart2() + ",\"targetEnd\":" + alignment.getEnd2()
+                + ",\"cigar\":" + quote(alignment.getCigar()) + "}";
+    }
+
+    private String error(long index, Pair pair, String message) {
+        String query = pair != null ? pair.query : "";
+        String target = pair != null ? pair.target : "";
+        if (format == Format.TSV) {
+            return index + "\t" + query + "\t" + target + "\t\t\t\t\t\t\t" + message.replace('\t', ' ').replace('\n', ' ');
+        }
+        return "{\"index\":" + index + ",\"query\":" + quote(query) + ",\"target\":" + quote(target)
+                + ",\"error\":" + quote(message) + "}";
+    }
+
+    /**
+     * Writes a string as a JSON string.
+     *
+     * @param value  The string.
+     * @return  The string in quotes, with the quotes, the backslashes and the control characters escaped.
+     */
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * One pair of the manifest.
+     */
+    static class Pair {
+        final String query;
+        final String target;
+        final String matrix;
+        final List<String> gapValue;
+
+        Pair(String query, String target, String matrix, List<String> gapValue) {
+            this.query = query;
+            this.target = target;
+            this.matrix = matrix;
+            this.gapValue = gapValue;
+        }
+
+        /**
+         * Reads the pair from a line of the manifest, tab separated or a JSON object.
+         *
+         * @param line  The line.
+         * @return  The pair.
+         * @throws IllegalArgumentException  If the line is not a pair.
+         */
+        static Pair parse(String line) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("{")) {
+                return new JsonObject(trimmed).pair();
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 4 || fields.length > 5) {
+                throw new IllegalArgumentException("Expected query, target, matrix and one or two gap values: " + line);
+            }
+            return new Pair(fields[0], fields[1], fields[2], new ArrayList<>(List.of(fields).subList(3, fields.length)));
+        }
+    }
+
+    /**
+     * Reads a flat JSON object whose values are strings, numbers
+     * or arrays of them, as much as is needed for the manifest.
+     */
+    private static class JsonObject {
+        private final String text;
+        private final Map<String, List<String>> values = new LinkedHashMap<>();
+        private int position;
+
+        JsonObject(String text) {
+            this.text = text;
+            expect('{');
+            if (!skip('}')) {
+                do {
+                    String key = string();
+                    expect(':');
+                    List<String> value = new ArrayList<>();
+                    if (skip('[')) {
+                        if (!skip(']')) {
+                            do {
+                                value.add(scalar());
+                            } while (skip(','));
+                            expect(']');
+                        }
+                    }
+                    else {
+                        value.add(scalar());
+                    }
+                    values.put(key, value);
+                } while (skip(','));
+                expect('}');
+            }
+            if (whitespace() < text.length()) {
+                throw invalid();
+            }
+        }
+
+        Pair pair() {
+            List<String> gapValue = values.get("gap");
+            if (gapValue == null || gapValue.isEmpty() || gapValue.size() > 2) {
+                throw new IllegalArgumentException("Expected one or two gap values: " + text);
+            }
+            return new Pair(single("query"), single("target"), single("matrix"), gapValue);
+        }
+
+        private String single(String key) {
+            List<String> value = values.get(key);
+            if (value == null || value.size() != 1) {
+                throw new IllegalArgumentException("Expected one " + key + ": " + text);
+            }
+            return value.get(0);
+        }
+
+        private String scalar() {
+            if (whitespace() < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && ",]}".indexOf(text.charAt(position)) < 0 && !Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            if (start == position) {
+                throw invalid();
+            }
+            return text.substring(start, position);
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length() && text.charAt(position) != '"') {
+                char c = text.charAt(position++);
+                if (c == '\\' && position < text.length()) {
+                    char escaped = text.charAt(position++);
+                    switch (escaped) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'u':
+                            if (position + 4 > text.length()) {
+                                throw invalid();
+                            }
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            position += 4;
+                            break;
+                        default:
+                            value.append(escaped);
+                    }
+                }
+                else {
+                    value.append(c);
+                }
+            }
+            expect('"');
+            return value.toString();
+        }
+
+        private int whitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position;
+        }
+
+        private boolean skip(char expected) {
+            if (whitespace() < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char expected) {
+            if (!skip(expected)) {
+                throw invalid();
+            }
+        }
+
+        private IllegalArgumentException invalid() {
+            return new IllegalArgumentException("Invalid JSON at " + position + ": " + text);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A fixed number of threads running the tasks of a stream of work read on the caller,
+ * such as the records of a database or the pairs of a manifest, with at most a few
+ * tasks per thread waiting, so that the memory used does not depend on the length
+ * of the stream. When all the threads are busy and the queue is full, the caller
+ * runs the task itself, which also keeps it from reading further.
+ * <p>
+ * The first exception thrown by any of the tasks is kept rather than thrown, the same
+ * on a thread of the pool as on the caller, and is thrown by {@link #rethrow()}
+ * once all the tasks have finished.
+ */
+final class BoundedExecutor {
+    /**
+     * Number of tasks waiting for a free thread, per thread.
+     */
+    private static final int QUEUED_PER_THREAD = 4;
+    private final ThreadPoolExecutor executor;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * A task which may fail by reading or writing.
+     */
+    interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * Starts the threads.
+     *
+     * @param threads  The number of threads, at least one.
+     */
+    BoundedExecutor(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_PER_THREAD), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Runs the task on a free thread, queues it, or runs it on the caller if the queue is full.
+     *
+     * @param task  The task.
+     */
+    void execute(Task task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            }
+            catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    /**
+     * Determines whether some task has already failed, so that no further ones need to be run.
+     *
+     * @return  True if some task has thrown an exception.
+     */
+    boolean failed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Waits until all the tasks have finished and stops the threads.
+     * If the caller is interrupted, the running tasks are interrupted too.
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Throws the first exception thrown by any of the tasks, if there is one.
+     *
+     * @throws IOException  If it was thrown by reading or writing.
+     */
+    void rethrow() throws IOException {
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+    }
+}
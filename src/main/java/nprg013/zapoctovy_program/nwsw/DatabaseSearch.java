@@ -0,0 +1,266 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The class that searches a database of sequences for those most similar
+ * to one query sequence by the score of the Smith-Waterman algorithm.
+ * <p>
+ * The substitution matrix, the gap penalty and the query are prepared once.
+ * The database, a FASTA file or a {@link SequenceDatabase}, is mapped
+ * and read record by record, the residues being
+ * encoded straight from the mapped file, and the records are scored on
+ * the fixed number of threads of a {@link BoundedExecutor}, with at most a few records per thread waiting,
+ * so that the memory used does not depend on the size of the database.
+ * Only the best hits found so far are kept.
+ * <p>
+ * The records may also be scored in windows, each sorted by the length of the records
+ * and aligned in batches, one record in each lane of a vector, see {@link #setInterSequence(boolean)}.
+ */
+public class DatabaseSearch {
+    /**
+     * Number of batches of the vectorized calculation in one window of records
+     * scored together, among which the records of similar lengths are batched.
+     */
+    private static final int WINDOW_BATCHES = 8;
+    /**
+     * Orders the hits from the worst to the best, a higher score
+     * being better and an earlier record winning ties.
+     */
+    private static final Comparator<Hit> WORST_FIRST = Comparator.comparingDouble(Hit::getScore)
+            .thenComparing(Comparator.comparingLong(Hit::getIndex).reversed());
+    final StripedSW query;
+    private final SubstMatrix substMatrix;
+    /**
+     * Number of threads scoring the records.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * True if the records are scored in windows across the sequences.
+     */
+    private boolean interSequence;
+
+    /**
+     * Prepares the search for the first record of the query file.
+     *
+     * @param queryPath  Path to file with the query sequence.
+     * @param matrixPath  Path to file with the scoring matrix.
+     * @param gapValue  One or two values of the gap penalty.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public DatabaseSearch(String queryPath, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        this(readQuery(queryPath), MatrixRegistry.get(matrixPath), new GapPenalty(gapValue));
+    }
+
+    /**
+     * Prepares the search for the query sequence.
+     *
+     * @param query  The query sequence.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     */
+    public DatabaseSearch(String query, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        this.query = new StripedSW(query, substMatrix, gapPenalty);
+        this.substMatrix = substMatrix;
+    }
+
+    /**
+     * Reads the first record of a FASTA file or of a {@link SequenceDatabase}.
+     *
+     * @param path  Path to the file.
+     * @return  The sequence of the record, empty if there is none.
+     * @throws IOException  If the path is not valid.
+     */
+    static String readQuery(String path) throws IOException {
+        try (RecordReader reader = RecordReader.open(path)) {
+            FastaRecord record = reader.nextRecord();
+            return record == null ? "" : record.getSequence();
+        }
+    }
+
+    /**
+     * Returns the number of threads scoring the records.
+     *
+     * @return  The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads scoring the records,
+     * by default the number of available processors.
+     *
+     * @param threads  The number of threads, at least one.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets whether the records are scored in windows of several vector batches,
+     * each batch aligning as many records at once as there are lanes in a vector,
+     * instead of one record at a time striped along the query. This pays off
+     * for many short records, and the scores are the same either way.
+     * It has no effect unless {@link StripedSW#isVectorized()}.
+     *
+     * @param interSequence  True to score the records across the sequences, false, the default, one by one.
+     */
+    public void setInterSequence(boolean interSequence) {
+        this.interSequence = interSequence;
+    }
+
+    /**
+     * Scores every record of the database against the query.
+     *
+     * @param databasePath  Path to the FASTA file or to the {@link SequenceDatabase} with any number of records.
+     * @param count  The number of best hits to return.
+     * @return  At most count hits ordered from the highest score,
+     *          the earlier record first in case of equal scores.
+     * @throws IOException  If the path is not valid or the file cannot be read.
+     * @throws RuntimeException  The first exception thrown by the scoring of any record,
+     *                           whichever thread it has been scored on.
+     */
+    public List<Hit> search(String databasePath, int count) throws IOException {
+        PriorityQueue<Hit> best = new PriorityQueue<>(WORST_FIRST);
+        BoundedExecutor executor = new BoundedExecutor(threads);
+        int window = interSequence ? query.lanes() * WINDOW_BATCHES : 1;
+        try (RecordReader reader = RecordReader.open(databasePath)) {
+            FastaRecord record;
+            long index = 0;
+            List<FastaRecord> records = new ArrayList<>(window);
+            while (!executor.failed() && (record = reader.nextRecord()) != null) {
+                records.add(record);
+                index++;
+                if (records.size() == window) {
+                    submit(executor, records, index - window, best, count);
+                    records = new ArrayList<>(window);
+                }
+            }
+            if (!executor.failed() && !records.isEmpty()) {
+                submit(executor, records, index - records.size(), best, count);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        executor.rethrow();
+        List<Hit> hits;
+        synchronized (best) {
+            hits = new ArrayList<>(best);
+        }
+        hits.sort(WORST_FIRST.reversed());
+        return hits;
+    }
+
+    /**
+     * Scores a window of consecutive records on the executor and keeps the best hits among them.
+     *
+     * @param executor  The executor scoring the records.
+     * @param records  The records.
+     * @param first  The index of the first of the records.
+     * @param best  The best hits found so far, from the worst one.
+     * @param count  The number of best hits to keep.
+     */
+    private void submit(BoundedExecutor executor, List<FastaRecord> records, long first, PriorityQueue<Hit> best, int count) {
+        executor.execute(() -> {
+            double[] scores = score(records);
+            synchronized (best) {
+                for (int i = 0; i < scores.length; i++) {
+                    Hit hit = new Hit(first + i, records.get(i), scores[i]);
+                    if (best.size() < count) {
+                        best.add(hit);
+                    }
+                    else if (count > 0 && WORST_FIRST.compare(hit, best.peek()) > 0) {
+                        best.poll();
+                        best.add(hit);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Scores a window of records against the query, on any of the threads,
+     * in batches across the sequences if there are more of them.
+     *
+     * @param targets  The records.
+     * @return  The score of the best local alignment of the query and each record.
+     */
+    double[] score(List<FastaRecord> targets) {
+        if (targets.size() == 1) {
+            return new double[]{score(targets.get(0))};
+        }
+        byte[][] encoded = new byte[targets.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = targets.get(i).encode(substMatrix);
+        }
+        return query.score(encoded);
+    }
+
+    /**
+     * Scores one record against the query, on any of the threads.
+     *
+     * @param target  The record.
+     * @return  The score of the best local alignment of the query and the record.
+     */
+    double score(FastaRecord target) {
+        return query.score(target.encode(substMatrix));
+    }
+
+    /**
+     * One record of the database along with its score.
+     */
+    public static class Hit {
+        private final long index;
+        private final FastaRecord record;
+        private final double score;
+
+        Hit(long index, FastaRecord record, double score) {
+            this.index = index;
+            this.record = record;
+            this.score = score;
+        }
+
+        /**
+         * Returns the position of the record in the database.
+         *
+         * @return  Zero based index of the record.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the sequence of the record.
+         *
+         * @return  The sequence.
+         */
+        public String getSequence() {
+            return record.getSequence();
+        }
+
+        /**
+         * Returns the comment lines of the record.
+         *
+         * @return  Possibly empty list of the header lines.
+         */
+        public List<String> getInfo() {
+            return record.getInfo();
+        }
+
+        /**
+         * Returns the score of the best local alignment of the query and the record.
+         *
+         * @return  The score.
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the records of a FASTA file one by one from the memory mapped file,
+ * so that only the record being read is held in memory however large the file is.
+ * <p>
+ * The file is mapped in windows of at most {@link #WINDOW} bytes. When a record
+ * reaches over the end of the window, the next window is mapped from the start
+ * of that record, so every record lies within one window and its residues can be
+ * handed out as a part of the mapped buffer. A single record therefore may not be
+ * longer than the window.
+ */
+class FastaReader implements RecordReader {
+    /**
+     * The largest number of bytes mapped at once.
+     */
+    static final long WINDOW = Integer.MAX_VALUE;
+    private final FileChannel channel;
+    private final long size;
+    private final long window;
+    /**
+     * The mapped window, null before the first record is read.
+     */
+    private MappedByteBuffer buffer;
+    /**
+     * Position in the file of the start of the {@link #buffer}.
+     */
+    private long bufferStart;
+    /**
+     * Position in the file of the first byte not read yet.
+     */
+    private long position;
+
+    /**
+     * Opens the file for reading.
+     *
+     * @param path  The path to the FASTA file.
+     * @throws IOException  If the path is not valid.
+     */
+    FastaReader(String path) throws IOException {
+        this(path, WINDOW);
+    }
+
+    /**
+     * Opens the file for reading in windows of the given size.
+     *
+     * @param path  The path to the FASTA file.
+     * @param window  The largest number of bytes mapped at once.
+     * @throws IOException  If the path is not valid.
+     */
+    FastaReader(String path, long window) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        size = channel.size();
+        this.window = Math.min(window, WINDOW);
+    }
+
+    /**
+     * Reads the next record. Every line starting with '>' starts a new
+     * record, blank lines are skipped and the lines of the sequence are
+     * joined without whitespace.
+     *
+     * @return  The record, or null if the end of the file has been reached.
+     * @throws IOException  In case of file related error.
+     */
+    LoadSeq.SequenceData next() throws IOException {
+        FastaRecord record = nextRecord();
+        return record == null ? null : record.toSequenceData();
+    }
+
+    /**
+     * Reads the next record the same way as {@link #next()}, leaving its
+     * residues in the mapped file if they are written on one line.
+     *
+     * @return  The record, or null if the end of the file has been reached.
+     * @throws IOException  In case of file related error, or if the record does not fit into the window.
+     */
+    @Override
+    public FastaRecord nextRecord() throws IOException {
+        long current = position;
+        while (current < size && isWhitespace(byteAt(current, current))) {
+            current++;
+        }
+        if (current >= size) {
+            position = size;
+            return null;
+        }
+        long start = current;
+        String header = null;
+        if (byteAt(current, start) == '>') {
+            while (current < size && byteAt(current, start) != '\n') {
+                current++;
+            }
+            byte[] line = new byte[(int) (current - start)];
+            buffer.get((int) (start - bufferStart), line);
+            header = new String(line, StandardCharsets.UTF_8).trim();
+        }
+        long first = -1;
+        long last = -1;
+        int count = 0;
+        boolean contiguous = true;
+        boolean lineStart = true;
+        while (current < size) {
+            byte symbol = byteAt(current, start);
+            if (symbol == '\n') {
+                lineStart = true;
+            }
+            else if (!isWhitespace(symbol)) {
+                if (lineStart && symbol == '>') {
+                    break;
+                }
+                lineStart = false;
+                if (first < 0) {
+                    first = current;
+                }
+                contiguous &= last < 0 || current == last + 1;
+                last = current;
+                count++;
+            }
+            current++;
+        }
+        position = current;
+        return new FastaRecord(header, residues(first, last, count, contiguous));
+    }
+
+    /**
+     * Returns the residues between two positions of the current window,
+     * as a part of the window if there is nothing else between them,
+     * or copied without the whitespace otherwise.
+     *
+     * @param first  Position in the file of the first residue, negative if there is none.
+     * @param last  Position in the file of the last residue.
+     * @param count  Number of the residues.
+     * @param contiguous  True if the residues follow each other without any whitespace.
+     * @return  Read only buffer of the residues.
+     */
+    private ByteBuffer residues(long first, long last, int count, boolean contiguous) {
+        if (count == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        int from = (int) (first - bufferStart);
+        if (contiguous) {
+            return buffer.slice(from, count).asReadOnlyBuffer();
+        }
+        byte[] symbols = new byte[count];
+        int filled = 0;
+        for (int i = from; i <= (int) (last - bufferStart); i++) {
+            byte symbol = buffer.get(i);
+            if (!isWhitespace(symbol)) {
+                symbols[filled++] = symbol;
+            }
+        }
+        return ByteBuffer.wrap(symbols).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns one byte of the file, mapping a new window from the start
+     * of the record being read if the byte is outside of the current one.
+     *
+     * @param at  Position of the byte in the file.
+     * @param recordStart  Position of the start of the record being read.
+     * @return  The byte.
+     * @throws IOException  If the record does not fit into the window.
+     */
+    private byte byteAt(long at, long recordStart) throws IOException {
+        if (buffer == null || at < bufferStart || at - bufferStart >= buffer.limit()) {
+            bufferStart = recordStart;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, recordStart, Math.min(window, size - recordStart));
+            if (at - bufferStart >= buffer.limit()) {
+                throw new IOException("The record at byte " + recordStart + " is longer than " + window + " bytes");
+            }
+        }
+        return buffer.get((int) (at - bufferStart));
+    }
+
+    /**
+     * Determines whether a byte is whitespace, the way {@link String#trim()} does.
+     *
+     * @param symbol  The byte.
+     * @return  True for the control characters and the space.
+     */
+    private static boolean isWhitespace(byte symbol) {
+        return (symbol & 0xFF) <= ' ';
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,99 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One record of a FASTA file as read by the {@link FastaReader}.
+ * <p>
+ * The residues stay in the mapped file if they are written on one line,
+ * otherwise they are copied once without the line breaks. They are only
+ * turned into codes or into a string when asked for.
+ */
+final class FastaRecord {
+    /**
+     * The header line, or null if the record has none.
+     */
+    private final String header;
+    /**
+     * The residues as read from the file, one byte per symbol.
+     */
+    private final ByteBuffer residues;
+
+    FastaRecord(String header, ByteBuffer residues) {
+        this.header = header;
+        this.residues = residues;
+    }
+
+    /**
+     * Returns the header line of the record.
+     *
+     * @return  The header line including the '>', or null if there is none.
+     */
+    String getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns the comment lines of the record in the form of {@link LoadSeq.SequenceData}.
+     *
+     * @return  Possibly empty list of the header lines.
+     */
+    List<String> getInfo() {
+        List<String> info = new ArrayList<>();
+        if (header != null) {
+            info.add(header);
+        }
+        return info;
+    }
+
+    /**
+     * Returns the residues of the record without copying them.
+     *
+     * @return  Read only buffer of the symbols, one byte each.
+     */
+    ByteBuffer getResidues() {
+        return residues.duplicate();
+    }
+
+    /**
+     * Returns the number of residues of the record.
+     *
+     * @return  The length of the sequence.
+     */
+    int length() {
+        return residues.remaining();
+    }
+
+    /**
+     * Translates the residues to the codes of the matrix straight from the buffer.
+     *
+     * @param substMatrix  The matrix whose codes are used.
+     * @return  The codes of the residues.
+     */
+    byte[] encode(SubstMatrix substMatrix) {
+        return substMatrix.encode(residues.duplicate());
+    }
+
+    /**
+     * Turns the residues into a string.
+     *
+     * @return  The sequence of the record.
+     */
+    String getSequence() {
+        byte[] symbols = new byte[residues.remaining()];
+        residues.duplicate().get(symbols);
+        return new String(symbols, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Turns the record into the form used by {@link LoadSeq}.
+     *
+     * @return  The sequence and the header lines.
+     */
+    LoadSeq.SequenceData toSequenceData() {
+        return new LoadSeq.SequenceData(getSequence(), getInfo());
+    }
+}
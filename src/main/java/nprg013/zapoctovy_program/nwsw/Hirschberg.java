@@ -0,0 +1,341 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The class that implements the Needleman-Wunsch algorithm in memory
+ * proportional to the length of the sequences, using the divide and conquer
+ * approach of Hirschberg.
+ * <p>
+ * Instead of keeping the whole table, its rows are only swept through, while
+ * each node remembers where its best path crossed the middle row. The table
+ * is then split at this crossing and both parts are solved recursively, until
+ * they are small enough to be solved directly. Only one of the optimal
+ * alignments is found this way.
+ */
+public class Hirschberg extends NW {
+    /**
+     * Parts of the table with at most this many nodes are solved directly.
+     */
+    private static final int DIRECT_LIMIT = 1 << 14;
+    /**
+     * The path crosses the middle row in any state.
+     */
+    private static final int ANY = 0;
+    /**
+     * The path crosses the middle row inside a gap in the second sequence.
+     */
+    private static final int DELETE = 1;
+    /**
+     * Number of the nodes computed so far, counting each pass over a part of the table.
+     */
+    private long cells;
+    /**
+     * Penalty for the first symbol of a gap.
+     */
+    private double openPenalty;
+    /**
+     * Penalty for every other symbol of a gap.
+     */
+    private double extendPenalty;
+    /**
+     * The parts of the alignment, each traced back from its end, in the order from the front.
+     */
+    private List<Alignment.Builder> parts;
+
+    public Hirschberg(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        super(seq1path, seq2path, matrixPath, gapValue);
+    }
+    public Hirschberg(String seq1, String seq2, String match, String mismatch, String gapValue) throws SubstMatrix.MatrixDimensionException {
+        super(seq1, seq2, match, mismatch, gapValue);
+    }
+    public Hirschberg(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
+
+    /**
+     * Entry point for the calculation.
+     * The linear gap penalty is treated as an affine one
+     * whose gaps cost the same to open and to extend.
+     * The alignment is built along with the passes over the table,
+     * so all their time is reported as the fill.
+     */
+    @Override
+    void calculate() {
+        switch (gapPenalty.getType()) {
+            case AFFINE:
+                openPenalty = gapPenalty.countAffine(1);
+                break;
+            case LINEAR:
+                openPenalty = gapPenalty.linearPart();
+                break;
+            case ERROR:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not initialized properly");
+        }
+        extendPenalty = gapPenalty.linearPart();
+        parts = new ArrayList<>();
+        score = 0.0;
+        cells = 0;
+        long start = System.nanoTime();
+        align(0, seq1.length(), 0, seq2.length(), ANY, ANY);
+        reportFill(start, cells, (long) (seq2.length() + 1) * 3 * (Double.BYTES + Integer.BYTES) + 3L * DIRECT_LIMIT * Double.BYTES);
+        results = new ArrayList<>();
+        Alignment.Builder alignment = new Alignment.Builder(seq1, seq2);
+        for (int k = parts.size() - 1; k >= 0; k--) {
+            alignment.add(parts.get(k));
+        }
+        parts = null;
+        results.add(alignment.build(score, 0, 0));
+        reportTraceback(System.nanoTime(), results);
+    }
+
+    /**
+     * Finds the one optimal alignment, regardless of the order of the moves.
+     *
+     * @param maxCount  The largest number of alignments to return.
+     * @param tieBreak  Ignored, as only one alignment is found.
+     * @return  Stream of at most one alignment.
+     */
+    @Override
+    public Stream<Alignment> optimalAlignments(int maxCount, TieBreak tieBreak) {
+        calculate();
+        return results.stream().limit(Math.max(0, maxCount));
+    }
+
+    /**
+     * Aligns the part of the table between two nodes and appends
+     * the result to the alignment built so far.
+     *
+     * @param top  Row of the starting node.
+     * @param bottom  Row of the ending node.
+     * @param leftmost  Column of the starting node.
+     * @param rightmost  Column of the ending node.
+     * @param start  State in which the path enters the starting node.
+     * @param end  State in which the path has to leave the ending node.
+     */
+    private void align(int top, int bottom, int leftmost, int rightmost, int start, int end) {
+        if (bottom - top < 2 || (long) (bottom - top + 1) * (rightmost - leftmost + 1) <= DIRECT_LIMIT) {
+            alignDirectly(top, bottom, leftmost, rightmost, start, end);
+            return;
+        }
+        int middle = (top + bottom) >>> 1;
+        int crossing = findCrossing(top, middle, bottom, leftmost, rightmost, start, end);
+        int column = crossing >> 1;
+        int state = crossing & 1;
+        align(top, middle, leftmost, column, start, state);
+        align(middle, bottom, column, rightmost, state, end);
+    }
+
+    /**
+     * Sweeps through the part of the table row by row, keeping only one row
+     * of each Gotoh state, and finds the node where the best path leaves
+     * the middle row.
+     *
+     * @param top  Row of the starting node.
+     * @param middle  The middle row.
+     * @param bottom  Row of the ending node.
+     * @param leftmost  Column of the starting node.
+     * @param rightmost  Column of the ending node.
+     * @param start  State in which the path enters the starting node.
+     * @param end  State in which the path has to leave the ending node.
+     * @return  The column of the crossing shifted left by one, with the state of the crossing in the lowest bit.
+     */
+    private int findCrossing(int top, int middle, int bottom, int leftmost, int rightmost, int start, int end) {
+        int width = rightmost - leftmost + 1;
+        cells += (long) (bottom - top + 1) * width;
+        double[] best = new double[width];
+        double[] insert = new double[width];
+        double[] delete = new double[width];
+        int[] bestCrossing = new int[width];
+        int[] insertCrossing = new int[width];
+        int[] deleteCrossing = new int[width];
+        best[0] = 0.0;
+        insert[0] = Double.NEGATIVE_INFINITY;
+        delete[0] = start == DELETE ? 0.0 : Double.NEGATIVE_INFINITY;
+        for (int j = 1; j < width; j++) {
+            insert[j] = Math.max(best[j - 1] - openPenalty, insertExtension(insert[j - 1], top, leftmost + j - 1));
+            delete[j] = Double.NEGATIVE_INFINITY;
+            best[j] = insert[j];
+        }
+        for (int row = top + 1; row <= bottom; row++) {
+            boolean crossingRow = row == middle + 1;
+            double diagonal = best[0];
+            int diagonalCrossing = bestCrossing[0];
+            double deleteOpen = best[0] - openPenalty;
+            double deleteExtend = deleteExtension(delete[0], row - 1, leftmost);
+            if (deleteOpen >= deleteExtend) {
+                delete[0] = deleteOpen;
+                deleteCrossing[0] = crossingRow ? leftmost << 1 | ANY : bestCrossing[0];
+            }
+            else {
+                delete[0] = deleteExtend;
+                deleteCrossing[0] = crossingRow ? leftmost << 1 | DELETE : deleteCrossing[0];
+            }
+            insert[0] = Double.NEGATIVE_INFINITY;
+            best[0] = delete[0];
+            bestCrossing[0] = deleteCrossing[0];
+            for (int j = 1; j < width; j++) {
+                int column = leftmost + j;
+                double up = best[j];
+                int upCrossing = bestCrossing[j];
+                double match = diagonal + score(row - 1, column - 1);
+                int matchCrossing = crossingRow ? (column - 1) << 1 | ANY : diagonalCrossing;
+                diagonal = up;
+                diagonalCrossing = upCrossing;
+                double insertOpen = best[j - 1] - openPenalty;
+                double insertExtend = insertExtension(insert[j - 1], row, column - 1);
+                if (insertOpen >= insertExtend) {
+                    insert[j] = insertOpen;
+                    insertCrossing[j] = bestCrossing[j - 1];
+                }
+                else {
+                    insert[j] = insertExtend;
+                    insertCrossing[j] = insertCrossing[j - 1];
+                }
+                deleteOpen = up - openPenalty;
+                deleteExtend = deleteExtension(delete[j], row - 1, column);
+                if (deleteOpen >= deleteExtend) {
+                    delete[j] = deleteOpen;
+                    deleteCrossing[j] = crossingRow ? column << 1 | ANY : upCrossing;
+                }
+                else {
+                    delete[j] = deleteExtend;
+                    deleteCrossing[j] = crossingRow ? column << 1 | DELETE : deleteCrossing[j];
+                }
+                best[j] = match;
+                bestCrossing[j] = matchCrossing;
+                if (insert[j] > best[j]) {
+                    best[j] = insert[j];
+                    bestCrossing[j] = insertCrossing[j];
+                }
+                if (delete[j] > best[j]) {
+                    best[j] = delete[j];
+                    bestCrossing[j] = deleteCrossing[j];
+                }
+            }
+        }
+        return end == DELETE ? deleteCrossing[width - 1] : bestCrossing[width - 1];
+    }
+
+    /**
+     * Solves a small part of the table by filling it whole and tracing
+     * the path back from the ending node. The value of the ending node
+     * is added to the score, so that the parts sum up to the score
+     * of the whole alignment.
+     *
+     * @param top  Row of the starting node.
+     * @param bottom  Row of the ending node.
+     * @param leftmost  Column of the starting node.
+     * @param rightmost  Column of the ending node.
+     * @param start  State in which the path enters the starting node.
+     * @param end  State in which the path has to leave the ending node.
+     */
+    private void alignDirectly(int top, int bottom, int leftmost, int rightmost, int start, int end) {
+        int height = bottom - top + 1;
+        int width = rightmost - leftmost + 1;
+        cells += (long) height * width;
+        double[][] best = new double[height][width];
+        double[][] insert = new double[height][width];
+        double[][] delete = new double[height][width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int row = top + i;
+                int column = leftmost + j;
+                if (i == 0 && j == 0) {
+                    best[i][j] = 0.0;
+                    insert[i][j] = Double.NEGATIVE_INFINITY;
+                    delete[i][j] = start == DELETE ? 0.0 : Double.NEGATIVE_INFINITY;
+                    continue;
+                }
+                double match = Double.NEGATIVE_INFINITY;
+                insert[i][j] = Double.NEGATIVE_INFINITY;
+                delete[i][j] = Double.NEGATIVE_INFINITY;
+                if (i > 0 && j > 0) {
+                    match = best[i - 1][j - 1] + score(row - 1, column - 1);
+                }
+                if (j > 0) {
+                    insert[i][j] = Math.max(best[i][j - 1] - openPenalty, insertExtension(insert[i][j - 1], row, column - 1));
+                }
+                if (i > 0) {
+                    delete[i][j] = Math.max(best[i - 1][j] - openPenalty, deleteExtension(delete[i - 1][j], row - 1, column));
+                }
+                best[i][j] = Math.max(match, Math.max(insert[i][j], delete[i][j]));
+            }
+        }
+        Alignment.Builder part = new Alignment.Builder(seq1, seq2);
+        int i = height - 1;
+        int j = width - 1;
+        int state = end == DELETE ? 2 : 0;
+        score += end == DELETE ? delete[i][j] : best[i][j];
+        while (i > 0 || j > 0) {
+            int row = top + i;
+            int column = leftmost + j;
+            if (state == 0) {
+                if (i > 0 && j > 0 && best[i][j] == best[i - 1][j - 1] + score(row - 1, column - 1)) {
+                    part.pair(row - 1, column - 1);
+                    i--;
+                    j--;
+                }
+                else if (j > 0 && best[i][j] == insert[i][j]) {
+                    state = 1;
+                }
+                else {
+                    state = 2;
+                }
+            }
+            else if (state == 1) {
+                part.add(Alignment.DELETE);
+                double value = insert[i][j];
+                j--;
+                state = value == best[i][j] - openPenalty ? 0 : 1;
+            }
+            else {
+                part.add(Alignment.INSERT);
+                double value = delete[i][j];
+                i--;
+                state = value == best[i][j] - openPenalty ? 0 : 2;
+            }
+        }
+        parts.add(part);
+    }
+
+    /**
+     * Extends the gap in the first sequence ending at the given node.
+     * Gaps leaving the first column are never extended, as in {@link NW}.
+     *
+     * @param value  The gap state of the node.
+     * @param row  Row of the node.
+     * @param column  Column of the node.
+     * @return  The value of the extended gap.
+     */
+    private double insertExtension(double value, int row, int column) {
+        return row == 0 || column > 1 ? value - extendPenalty : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Extends the gap in the second sequence ending at the given node.
+     * Gaps leaving the first row are never extended, as in {@link NW}.
+     *
+     * @param value  The gap state of the node.
+     * @param row  Row of the node.
+     * @param column  Column of the node.
+     * @return  The value of the extended gap.
+     */
+    private double deleteExtension(double value, int row, int column) {
+        return column == 0 || row > 1 ? value - extendPenalty : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Similarity score of two symbols of the sequences.
+     *
+     * @param i  Position in the first sequence.
+     * @param j  Position in the second sequence.
+     * @return  The score from the substitution matrix.
+     */
+    private double score(int i, int j) {
+        return scores[encoded1[i] * stride + encoded2[j]];
+    }
+}
@@ -0,0 +1,116 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The metrics committing every report as a custom event of the Java Flight Recorder,
+ * and passing it on to other metrics. The events cost next to nothing unless
+ * a recording is running, started for example by -XX:StartFlightRecording.
+ */
+public class JfrMetrics implements Metrics {
+    private final Metrics next;
+
+    /**
+     * Prepares the metrics committing the events only.
+     */
+    public JfrMetrics() {
+        this(Metrics.NONE);
+    }
+
+    /**
+     * Prepares the metrics committing the events and passing the reports on.
+     *
+     * @param next  The metrics the reports are passed on to.
+     */
+    public JfrMetrics(Metrics next) {
+        this.next = next;
+    }
+
+    @Override
+    public void phase(Phase phase, long nanos) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.nanos = nanos;
+            event.commit();
+        }
+        next.phase(phase, nanos);
+    }
+
+    @Override
+    public void cells(long cells) {
+        CellsEvent event = new CellsEvent();
+        if (event.isEnabled()) {
+            event.cells = cells;
+            event.commit();
+        }
+        next.cells(cells);
+    }
+
+    @Override
+    public void traceback(long diagonal, long left, long up) {
+        TracebackEvent event = new TracebackEvent();
+        if (event.isEnabled()) {
+            event.diagonal = diagonal;
+            event.left = left;
+            event.up = up;
+            event.commit();
+        }
+        next.traceback(diagonal, left, up);
+    }
+
+    @Override
+    public void tableBytes(long bytes) {
+        TableEvent event = new TableEvent();
+        if (event.isEnabled()) {
+            event.bytes = bytes;
+            event.commit();
+        }
+        next.tableBytes(bytes);
+    }
+
+    @Name("nprg013.nwsw.Phase")
+    @Label("Alignment Phase")
+    @Category("NWSW")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("nprg013.nwsw.Cells")
+    @Label("Computed Cells")
+    @Category("NWSW")
+    static class CellsEvent extends Event {
+        @Label("Cells")
+        long cells;
+    }
+
+    @Name("nprg013.nwsw.Traceback")
+    @Label("Traceback Moves")
+    @Category("NWSW")
+    static class TracebackEvent extends Event {
+        @Label("Diagonal")
+        long diagonal;
+        @Label("Left")
+        long left;
+        @Label("Up")
+        long up;
+    }
+
+    @Name("nprg013.nwsw.Table")
+    @Label("Table Size")
+    @Category("NWSW")
+    static class TableEvent extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+}
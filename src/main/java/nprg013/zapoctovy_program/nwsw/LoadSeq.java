@@ -22,19 +22,13 @@ public class LoadSeq {
     /**
      * Loads the two sequences and potential comments.
      *
-     * @param path1  The path to the file with the first sequence.
-     * @param path2  The path to the file with the second sequence.
+     * @param path1  The path to the file with the first sequence, FASTA or a {@link SequenceDatabase}.
+     * @param path2  The path to the file with the second sequence, FASTA or a {@link SequenceDatabase}.
      * @throws IOException  Thrown in case at least one of the paths is not valid.
      */
     public LoadSeq(String path1, String path2) throws IOException {
-        File f = new File(path1);
-        try (BufferedReader reader = new BufferedReader(new FileReader(f))) {
-            seq1 = readSequence(reader);
-        }
-        f = new File(path2);
-        try (BufferedReader reader = new BufferedReader(new FileReader(f))) {
-            seq2 = readSequence(reader);
-        }
+        seq1 = readFile(path1);
+        seq2 = readFile(path2);
     }
 
     public LoadSeq(InputStream in1, InputStream in2) throws IOException {
@@ -80,7 +74,30 @@ public class LoadSeq {
     }
 
     /**
-     * Method reads sequence and its info from a file.
+     * Reads the first sequence of a FASTA file, or the first record
+     * of a {@link SequenceDatabase}.
+     *
+     * @param path  The path to the file.
+     * @return  {@link SequenceData} type object.
+     * @throws IOException  In case of file related error.
+     */
+    private SequenceData readFile(String path) throws IOException {
+        if (SequenceDatabase.isDatabase(path)) {
+            try (SequenceDatabase database = new SequenceDatabase(path)) {
+                FastaRecord record = database.nextRecord();
+                return record == null ? new SequenceData("", new ArrayList<>()) : record.toSequenceData();
+            }
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            return readSequence(reader);
+        }
+    }
+
+    /**
+     * Method reads the first sequence and its info from a file.
+     * Blank lines are skipped, and a comment line following the sequence
+     * starts another record, which is left unread. Files with many records
+     * are read by the {@link FastaReader}.
      *
      * @param bReader  Initialized reader object.
      * @return  {@link SequenceData} type object.
@@ -91,11 +108,18 @@ public class LoadSeq {
         List<String> info = new ArrayList<>();
         String line;
         while ((line = bReader.readLine()) != null) {
-            if (line.trim().charAt(0) == '>') {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.charAt(0) == '>') {
+                if (seqBuilder.length() > 0) {
+                    break;
+                }
                 info.add(line);
             }
             else {
-                seqBuilder.append(line.trim());
+                seqBuilder.append(trimmed);
             }
         }
         return new SequenceData(seqBuilder.toString(), info);
@@ -0,0 +1,11 @@
+package nprg013.zapoctovy_program.nwsw;
+
+/**
+ * One local alignment together with its score and the parts
+ * of the sequences it spans, as found by {@link SW#topAlignments(int, double)}.
+ */
+public class LocalAlignment extends Alignment {
+    LocalAlignment(Alignment alignment) {
+        super(alignment);
+    }
+}
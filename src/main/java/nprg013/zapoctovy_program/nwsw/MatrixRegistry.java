@@ -0,0 +1,147 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shared cache of the parsed substitution matrices, so that every matrix file
+ * is read once however many alignments use it. The matrices never change once
+ * loaded, so one instance serves all the threads.
+ * <p>
+ * A file is cached by its absolute path along with its modification time, and
+ * read again once it has been modified. The names of the bundled matrices,
+ * {@link #BUILT_IN}, can be used in place of a path which does not exist.
+ */
+public final class MatrixRegistry {
+    /**
+     * Names of the matrices bundled as resources.
+     */
+    public static final List<String> BUILT_IN = List.of("BLOSUM62", "PAM250", "DNAfull");
+    private static final ConcurrentMap<String, Entry> MATRICES = new ConcurrentHashMap<>();
+
+    private MatrixRegistry() {
+    }
+
+    /**
+     * Returns the matrix of a file, or of a bundled matrix.
+     *
+     * @param path  The path to file with the scoring matrix, or the name of a bundled one.
+     * @return  The shared matrix.
+     * @throws IOException  If the path is not valid nor the name of a bundled matrix.
+     * @throws SubstMatrix.MatrixDimensionException  If the matrix is not valid.
+     */
+    public static SubstMatrix get(String path) throws IOException, SubstMatrix.MatrixDimensionException {
+        Path file = Paths.get(path).toAbsolutePath().normalize();
+        if (!Files.exists(file) && BUILT_IN.contains(path)) {
+            return builtIn(path);
+        }
+        FileTime modified = Files.getLastModifiedTime(file);
+        return load(file.toString(), modified, () -> new SubstMatrix(file.toString()));
+    }
+
+    /**
+     * Returns one of the bundled matrices.
+     *
+     * @param name  One of the {@link #BUILT_IN} names.
+     * @return  The shared matrix.
+     * @throws IOException  If there is no such bundled matrix.
+     * @throws SubstMatrix.MatrixDimensionException  If the matrix is not valid.
+     */
+    public static SubstMatrix builtIn(String name) throws IOException, SubstMatrix.MatrixDimensionException {
+        if (!BUILT_IN.contains(name)) {
+            throw new IOException("No bundled matrix " + name);
+        }
+        return load(name, null, () -> {
+            InputStream resource = MatrixRegistry.class.getResourceAsStream(name + ".txt");
+            if (resource == null) {
+                throw new IOException("Missing resource of the matrix " + name);
+            }
+            return new SubstMatrix(new InputStreamReader(resource, StandardCharsets.UTF_8));
+        });
+    }
+
+    /**
+     * Forgets all the cached matrices.
+     */
+    public static void clear() {
+        MATRICES.clear();
+    }
+
+    /**
+     * Returns the cached matrix of the key, loading it if there is none
+     * or if the cached one is of another modification time. Concurrent
+     * requests for the same key load it only once.
+     *
+     * @param key  The absolute path, or the name of a bundled matrix.
+     * @param modified  The modification time of the file, null for a bundled matrix.
+     * @param loader  Reads the matrix.
+     * @return  The matrix.
+     * @throws IOException  If the matrix cannot be read.
+     * @throws SubstMatrix.MatrixDimensionException  If the matrix is not valid.
+     */
+    private static SubstMatrix load(String key, FileTime modified, Loader loader) throws IOException, SubstMatrix.MatrixDimensionException {
+        try {
+            return MATRICES.compute(key, (k, entry) -> {
+                if (entry != null && (modified == null || modified.equals(entry.modified))) {
+                    return entry;
+                }
+                try {
+                    return new Entry(modified, loader.load());
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                catch (SubstMatrix.MatrixDimensionException e) {
+                    throw new InvalidMatrix(e);
+                }
+            }).matrix;
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        catch (InvalidMatrix e) {
+            throw (SubstMatrix.MatrixDimensionException) e.getCause();
+        }
+    }
+
+    /**
+     * Reads one matrix.
+     */
+    private interface Loader {
+        SubstMatrix load() throws IOException, SubstMatrix.MatrixDimensionException;
+    }
+
+    /**
+     * Carries the {@link SubstMatrix.MatrixDimensionException} out of the cache.
+     */
+    private static class InvalidMatrix extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        InvalidMatrix(SubstMatrix.MatrixDimensionException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * A cached matrix along with the modification time of its file.
+     */
+    private static class Entry {
+        private final FileTime modified;
+        private final SubstMatrix matrix;
+
+        Entry(FileTime modified, SubstMatrix matrix) {
+            this.modified = modified;
+            this.matrix = matrix;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package nprg013.zapoctovy_program.nwsw;
+
+/**
+ * The interface the calculations report what they have done into, set by
+ * {@link PSA#setMetrics(Metrics)}. Every report is ignored by default,
+ * so the calculations need no checks, and the implementations only override
+ * the reports they are interested in. The reports may come from any thread.
+ */
+public interface Metrics {
+    /**
+     * The metrics ignoring all the reports, used unless others are set.
+     */
+    Metrics NONE = new Metrics() {
+    };
+
+    /**
+     * The phases of a calculation.
+     */
+    enum Phase {
+        /**
+         * Reading the sequences, the matrix and the gap penalty.
+         */
+        PARSE,
+        /**
+         * Translating the sequences to the codes of the matrix.
+         */
+        ENCODE,
+        /**
+         * Filling the table.
+         */
+        FILL,
+        /**
+         * Tracing the alignments back through the table.
+         */
+        TRACEBACK
+    }
+
+    /**
+     * Reports the time spent in a phase.
+     *
+     * @param phase  The phase.
+     * @param nanos  The time in nanoseconds.
+     */
+    default void phase(Phase phase, long nanos) {
+    }
+
+    /**
+     * Reports the nodes of the table computed by the last fill.
+     *
+     * @param cells  The number of the nodes.
+     */
+    default void cells(long cells) {
+    }
+
+    /**
+     * Reports the moves taken when tracing the alignments back.
+     *
+     * @param diagonal  The number of the matches and the mismatches.
+     * @param left  The number of the gaps in the first sequence.
+     * @param up  The number of the gaps in the second sequence.
+     */
+    default void traceback(long diagonal, long left, long up) {
+    }
+
+    /**
+     * Reports the memory taken by the table of the last fill.
+     *
+     * @param bytes  Approximate number of bytes of the table and the traceback flags.
+     */
+    default void tableBytes(long bytes) {
+    }
+}
@@ -0,0 +1,132 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics adding up all the reports of any number of calculations,
+ * from any threads, and summarizing them in JSON by {@link #toJson()}.
+ */
+public class MetricsSummary implements Metrics {
+    private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+    private final LongAdder cells = new LongAdder();
+    private final LongAdder diagonal = new LongAdder();
+    private final LongAdder left = new LongAdder();
+    private final LongAdder up = new LongAdder();
+    private final AtomicLong peakTableBytes = new AtomicLong();
+
+    public MetricsSummary() {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void phase(Phase phase, long nanos) {
+        this.nanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void cells(long cells) {
+        this.cells.add(cells);
+    }
+
+    @Override
+    public void traceback(long diagonal, long left, long up) {
+        this.diagonal.add(diagonal);
+        this.left.add(left);
+        this.up.add(up);
+    }
+
+    @Override
+    public void tableBytes(long bytes) {
+        peakTableBytes.accumulateAndGet(bytes, Math::max);
+    }
+
+    /**
+     * Returns the total time spent in a phase.
+     *
+     * @param phase  The phase.
+     * @return  The time in nanoseconds.
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * Returns the total number of the computed nodes.
+     *
+     * @return  The number of the nodes.
+     */
+    public long getCells() {
+        return cells.sum();
+    }
+
+    /**
+     * Returns the computed nodes per the time of the fills.
+     *
+     * @return  Billions of the nodes per second, zero if no time has been reported.
+     */
+    public double getGcups() {
+        long fill = getNanos(Phase.FILL);
+        return fill == 0 ? 0.0 : (double) getCells() / fill;
+    }
+
+    /**
+     * Returns the number of the matches and the mismatches taken when tracing back.
+     *
+     * @return  The number of the diagonal moves.
+     */
+    public long getDiagonalMoves() {
+        return diagonal.sum();
+    }
+
+    /**
+     * Returns the number of the gaps in the first sequence taken when tracing back.
+     *
+     * @return  The number of the moves to the left.
+     */
+    public long getLeftMoves() {
+        return left.sum();
+    }
+
+    /**
+     * Returns the number of the gaps in the second sequence taken when tracing back.
+     *
+     * @return  The number of the moves up.
+     */
+    public long getUpMoves() {
+        return up.sum();
+    }
+
+    /**
+     * Returns the largest table of all the fills.
+     *
+     * @return  Approximate number of bytes of the table and the traceback flags.
+     */
+    public long getPeakTableBytes() {
+        return peakTableBytes.get();
+    }
+
+    /**
+     * Summarizes the reports as one JSON object.
+     *
+     * @return  The object with the times of the phases in nanoseconds, the number of the nodes,
+     *          the GCUPS, the numbers of the traceback moves and the peak table bytes.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"phaseNanos\":{");
+        for (Phase phase : Phase.values()) {
+            json.append(phase.ordinal() == 0 ? "" : ",").append('"').append(phase.name().toLowerCase(Locale.ROOT))
+                    .append("\":").append(getNanos(phase));
+        }
+        return json.append("},\"cells\":").append(getCells())
+                .append(",\"gcups\":").append(String.format(Locale.ROOT, "%.6f", getGcups()))
+                .append(",\"traceback\":{\"diagonal\":").append(getDiagonalMoves())
+                .append(",\"left\":").append(getLeftMoves())
+                .append(",\"up\":").append(getUpMoves())
+                .append("},\"peakTableBytes\":").append(getPeakTableBytes())
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,242 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The class that implements the Needleman-Wunsch algorithm for the scores reducing
+ * to the edit distance by the bit-vector algorithm of Myers, computing 64 nodes
+ * of a column of the table by a few operations on one long.
+ * <p>
+ * With the match score a, the mismatch score b and the linear gap penalty g,
+ * an alignment of sequences of lengths n1 and n2 with x mismatches and y gaps
+ * scores a(n1 + n2) / 2 - (a - b)x - (g + a / 2)y. If a - b equals g + a / 2 and is
+ * positive, the best alignments are those of the least edit distance d, scoring
+ * a(n1 + n2) / 2 - (a - b)d, see {@link #reducesToEditDistance(PSA)}.
+ * <p>
+ * The first sequence is split into blocks of 64 symbols, each of them keeping
+ * the differences of the neighbouring values of a column as two longs, one with
+ * the bits of the increments and one with the bits of the decrements. The columns
+ * follow the second sequence. The bits of all the columns are kept, two bits per node,
+ * and any value is restored as the index of the column plus the number of the increments
+ * minus the number of the decrements above it. One alignment is traced back from them,
+ * preferring the diagonal move, then the gap in the second sequence.
+ */
+public class MyersNW extends NW {
+    private static final int WORD = Long.SIZE;
+
+    public MyersNW(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        super(seq1path, seq2path, matrixPath, gapValue);
+    }
+    public MyersNW(String seq1, String seq2, String match, String mismatch, String gapValue) throws SubstMatrix.MatrixDimensionException {
+        super(seq1, seq2, match, mismatch, gapValue);
+    }
+    public MyersNW(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
+
+    /**
+     * Determines whether the scores of the calculation reduce to the edit distance, that is
+     * whether the gap penalty is linear, all the symbols of the sequences score the same
+     * with themselves, all pairs of different ones the same, and the mismatch costs as
+     * much more than the match as the gap costs plus half of the match score.
+     *
+     * @param psa  The calculation.
+     * @return  True if the edit distance gives the same alignments.
+     */
+    static boolean reducesToEditDistance(PSA psa) {
+        if (psa.gapPenalty.getType() != GapPenalty.Type.LINEAR) {
+            return false;
+        }
+        boolean[] present = new boolean[psa.stride];
+        for (byte code : psa.encoded1) {
+            present[code] = true;
+        }
+        for (byte code : psa.encoded2) {
+            present[code] = true;
+        }
+        double match = Double.NaN;
+        double mismatch = Double.NaN;
+        for (int i = 0; i < psa.stride; i++) {
+            for (int j = 0; j < psa.stride; j++) {
+                if (!present[i] || !present[j]) {
+                    continue;
+                }
+                double value = psa.scores[i * psa.stride + j];
+                if (i == j ? !Double.isNaN(match) && value != match : !Double.isNaN(mismatch) && value != mismatch) {
+                    return false;
+                }
+                if (i == j) {
+                    match = value;
+                }
+                else {
+                    mismatch = value;
+                }
+            }
+        }
+        double cost = psa.gapPenalty.linearPart() + (Double.isNaN(match) ? 0.0 : match / 2);
+        return cost > 0.0 && (Double.isNaN(mismatch) || Math.abs(match - mismatch - cost) <= 1e-9 * Math.max(1.0, cost));
+    }
+
+    /**
+     * Estimates the memory taken by the calculation of two sequences of the given lengths.
+     *
+     * @param length1  Length of the first sequence.
+     * @param length2  Length of the second sequence.
+     * @return  Approximate number of bytes needed for the bits of all the columns.
+     */
+    static long estimatedBytes(int length1, int length2) {
+        return 2L * Long.BYTES * ((length1 + WORD - 1) / WORD) * (length2 + 1);
+    }
+
+    /**
+     * Determines whether the bits of all the columns of two sequences of the given lengths
+     * fit into arrays indexed by ints.
+     *
+     * @param length1  Length of the first sequence.
+     * @param length2  Length of the second sequence.
+     * @return  True if there are at most {@link PSA#MAX_TABLE_NODES} words of the bits of one kind.
+     */
+    static boolean fitsArrays(int length1, int length2) {
+        return (long) ((length1 + WORD - 1) / WORD) * (length2 + 1) <= MAX_TABLE_NODES;
+    }
+
+    /**
+     * Entry point for the calculation.
+     * Computes the edit distance and traces back one alignment.
+     *
+     * @throws IllegalStateException  If the scores do not reduce to the edit distance,
+     *                                or the bits of the columns do not fit into arrays.
+     */
+    @Override
+    void calculate() {
+        if (!reducesToEditDistance(this)) {
+            throw new IllegalStateException("The scores do not reduce to the edit distance");
+        }
+        long start = System.nanoTime();
+        int m = encoded1.length;
+        int n = encoded2.length;
+        int blocks = (m + WORD - 1) / WORD;
+        long[] equal = new long[stride * blocks];
+        for (int i = 0; i < m; i++) {
+            equal[encoded1[i] * blocks + i / WORD] |= 1L << (i % WORD);
+        }
+        int words = tableNodes(n + 1, blocks);
+        long[] increments = new long[words];
+        long[] decrements = new long[words];
+        for (int b = 0; b < blocks; b++) {
+            increments[b] = -1L;
+        }
+        int lastBit = (m - 1) % WORD;
+        int distance = m;
+        for (int j = 1; j <= n; j++) {
+            int previous = (j - 1) * blocks;
+            int current = j * blocks;
+            int base = encoded2[j - 1] * blocks;
+            int carry = 1;
+            for (int b = 0; b < blocks; b++) {
+                long plus = increments[previous + b];
+                long minus = decrements[previous + b];
+                long eq = equal[base + b];
+                long carryMinus = carry < 0 ? 1L : 0L;
+                long carryPlus = carry > 0 ? 1L : 0L;
+                long vertical = eq | minus;
+                eq |= carryMinus;
+                long horizontal = (((eq & plus) + plus) ^ plus) | eq;
+                long horizontalPlus = minus | ~(horizontal | plus);
+                long horizontalMinus = plus & horizontal;
+                int bit = b == blocks - 1 ? lastBit : WORD - 1;
+                carry = (int) ((horizontalPlus >>> bit) & 1L) - (int) ((horizontalMinus >>> bit) & 1L);
+                horizontalPlus = (horizontalPlus << 1) | carryPlus;
+                horizontalMinus = (horizontalMinus << 1) | carryMinus;
+                increments[current + b] = horizontalMinus | ~(vertical | horizontalPlus);
+                decrements[current + b] = horizontalPlus & vertical;
+            }
+            distance += blocks == 0 ? 1 : carry;
+        }
+        double match = m > 0 ? scores[encoded1[0] * stride + encoded1[0]] : n > 0 ? scores[encoded2[0] * stride + encoded2[0]] : 0.0;
+        score = match * (m + n) / 2 - (gapPenalty.linearPart() + match / 2) * distance;
+        reportFill(start, (long) m * n, estimatedBytes(m, n));
+        start = System.nanoTime();
+        results = new ArrayList<>();
+        results.add(traceback(increments, decrements, blocks, distance));
+        reportTraceback(start, results);
+    }
+
+    /**
+     * Traces back one alignment of the least edit distance.
+     *
+     * @param increments  The bits of the increments of all the columns.
+     * @param decrements  The bits of the decrements of all the columns.
+     * @param blocks  Number of the blocks of a column.
+     * @param distance  The edit distance.
+     * @return  The alignment.
+     */
+    private Alignment traceback(long[] increments, long[] decrements, int blocks, int distance) {
+        Alignment.Builder alignment = new Alignment.Builder(seq1, seq2);
+        int i = encoded1.length;
+        int j = encoded2.length;
+        int value = distance;
+        while (i > 0 || j > 0) {
+            if (i > 0 && j > 0) {
+                int diagonal = value(increments, decrements, blocks, i - 1, j - 1);
+                if (diagonal + (encoded1[i - 1] == encoded2[j - 1] ? 0 : 1) == value) {
+                    alignment.pair(i - 1, j - 1);
+                    i--;
+                    j--;
+                    value = diagonal;
+                    continue;
+                }
+            }
+            int node = j * blocks + (i - 1) / WORD;
+            if (i > 0 && (increments[node] >>> ((i - 1) % WORD) & 1L) != 0) {
+                alignment.add(Alignment.INSERT);
+                i--;
+            }
+            else {
+                alignment.add(Alignment.DELETE);
+                j--;
+            }
+            value--;
+        }
+        return alignment.build(score, 0, 0);
+    }
+
+    /**
+     * Restores the edit distance of a node from the bits of its column.
+     *
+     * @param increments  The bits of the increments of all the columns.
+     * @param decrements  The bits of the decrements of all the columns.
+     * @param blocks  Number of the blocks of a column.
+     * @param row  The row of the node.
+     * @param column  The column of the node.
+     * @return  The edit distance of the first row symbols of the first sequence and the first column ones of the second.
+     */
+    private static int value(long[] increments, long[] decrements, int blocks, int row, int column) {
+        int value = column;
+        int start = column * blocks;
+        for (int b = 0; b < row / WORD; b++) {
+            value += Long.bitCount(increments[start + b]) - Long.bitCount(decrements[start + b]);
+        }
+        if (row % WORD != 0) {
+            long mask = (1L << (row % WORD)) - 1;
+            value += Long.bitCount(increments[start + row / WORD] & mask) - Long.bitCount(decrements[start + row / WORD] & mask);
+        }
+        return value;
+    }
+
+    /**
+     * Computes the alignment by the bit-vector algorithm.
+     *
+     * @param maxCount  The largest number of alignments to return.
+     * @param tieBreak  Ignored, as only one alignment is found.
+     * @return  Stream of at most one alignment.
+     */
+    @Override
+    public Stream<Alignment> optimalAlignments(int maxCount, TieBreak tieBreak) {
+        calculate();
+        return results.stream().limit(Math.max(0, maxCount));
+    }
+}
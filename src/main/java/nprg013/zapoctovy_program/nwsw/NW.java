@@ -2,63 +2,148 @@ package nprg013.zapoctovy_program.nwsw;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The class that implements the Needleman-Wunsch Pairwise Sequence Alignment algorithm.
  */
 public class NW extends PSA {
-    private Map<Integer,List<Integer>> parents;
+    /**
+     * Number of bytes taken by one node of the table and its traceback flags.
+     */
+    private static final long NODE_BYTES = Double.BYTES + Byte.BYTES;
+    /**
+     * Number of bytes taken by one node of the table of the integer scoring and its traceback flags.
+     */
+    private static final long INTEGER_NODE_BYTES = Integer.BYTES + Byte.BYTES;
+    /**
+     * Gotoh gap states of the affine calculation for the gap in the first
+     * sequence, kept for the last visited node of each row.
+     */
+    private double[] insertValues;
+    /**
+     * Gotoh gap states of the affine calculation for the gap in the second
+     * sequence, kept for the last visited node of each column.
+     */
+    private double[] deleteValues;
+    /**
+     * The {@link #insertValues} of the integer scoring.
+     */
+    private int[] integerInsertValues;
+    /**
+     * The {@link #deleteValues} of the integer scoring.
+     */
+    private int[] integerDeleteValues;
     public NW(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
         super(seq1path, seq2path, matrixPath, gapValue);
     }
     public NW(String seq1, String seq2, String match, String mismatch, String gapValue) throws SubstMatrix.MatrixDimensionException {
         super(seq1, seq2, match, mismatch, gapValue);
     }
+    public NW(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
+
+    /**
+     * Estimates the memory taken by the calculation of two sequences
+     * of the given lengths.
+     *
+     * @param length1  Length of the first sequence.
+     * @param length2  Length of the second sequence.
+     * @param integerScoring  True if the table is computed in integers.
+     * @return  Approximate number of bytes needed for the table and the traceback.
+     */
+    static long estimatedTableBytes(int length1, int length2, boolean integerScoring) {
+        return (long) (length1 + 1) * (length2 + 1) * (integerScoring ? INTEGER_NODE_BYTES : NODE_BYTES);
+    }
 
     /**
      * Entry point for the calculation.
-     * Sets the table and determines
-     * next course according to the gap
-     * penalty type. Also sets the parents for
-     * the padding nodes as here everyone except
-     * the first node must have a parent.
+     * Fills in the table and retrieves all the optimal alignments.
      */
     @Override
     void calculate() {
-        parents = new HashMap<>();
-        table = new double[seq1.length() + 1][seq2.length() + 1];
-        int n = table[0].length;
+        fillTable();
+        backtrack();
+    }
+
+    /**
+     * Sets the table and determines
+     * next course according to the gap
+     * penalty type. Also sets the traceback
+     * flags for the padding nodes as here everyone
+     * except the first node must have a parent.
+     */
+    void fillTable() {
+        int m = seq1.length() + 1;
+        int n = seq2.length() + 1;
+        int nodes = tableNodes(m, n);
+        if (integerScoring) {
+            prepareIntegers();
+            table = null;
+            cells = null;
+            integerTable = new int[m][n];
+        }
+        else {
+            allocateTable(m, n);
+        }
+        traceback = new byte[nodes];
+        for (int i = 1; i < m; i++) {
+            traceback[n * i] = UP;
+        }
+        for (int i = 1; i < n; i++) {
+            traceback[i] = LEFT;
+        }
         GapPenalty.Type penaltyType = gapPenalty.getType();
         switch (penaltyType) {
             case AFFINE:
-                table[0][0] = 0.0;
-                for (int i = 1; i < table.length; i++) {
-                    table[i][0] = (double) (-1) * gapPenalty.countAffine(i);
-                    parents.put((n * i), new ArrayList<>(List.of(n * (i - 1))));
+                if (integerTable != null) {
+                    integerInsertValues = new int[m];
+                    integerDeleteValues = new int[n];
+                    for (int i = 1; i < m; i++) {
+                        integerTable[i][0] = -(integerGapBase + i * integerGap);
+                    }
+                    for (int i = 1; i < n; i++) {
+                        integerTable[0][i] = -(integerGapBase + i * integerGap);
+                    }
+                    fill(true);
+                    break;
+                }
+                insertValues = new double[m];
+                deleteValues = new double[n];
+                setTableValue(0, 0, 0.0);
+                for (int i = 1; i < m; i++) {
+                    setTableValue(i, 0, (double) (-1) * gapPenalty.countAffine(i));
                 }
                 for (int i = 1; i < n; i++) {
-                    table[0][i] = (double) (-1) * gapPenalty.countAffine(i);
-                    parents.put(i, new ArrayList<>(List.of(i - 1)));
+                    setTableValue(0, i, (double) (-1) * gapPenalty.countAffine(i));
                 }
-                countAffValue();
+                fill(true);
                 break;
             case LINEAR:
-                for (int i = 0; i < table.length; i++) {
-                    table[i][0] = (double) i * (-1) * gapPenalty.linearPart();
-                    if (i != 0) {
-                        parents.put(n * i, new ArrayList<>(List.of(n * (i - 1))));
+                if (integerTable != null) {
+                    for (int i = 0; i < m; i++) {
+                        integerTable[i][0] = -i * integerGap;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        integerTable[0][i] = -i * integerGap;
                     }
+                    fill(false);
+                    break;
+                }
+                for (int i = 0; i < m; i++) {
+                    setTableValue(i, 0, (double) i * (-1) * gapPenalty.linearPart());
                 }
                 for (int i = 0; i < n; i++) {
-                    table[0][i] = (double) i * (-1) * gapPenalty.linearPart();
-                    if (i != 0) {
-                        parents.put(i, new ArrayList<>(List.of(i - 1)));
-                    }
+                    setTableValue(0, i, (double) i * (-1) * gapPenalty.linearPart());
                 }
-                countLinValue();
+                fill(false);
                 break;
             case ERROR:
                 throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not initialized properly");
@@ -66,65 +151,60 @@ public class NW extends PSA {
     }
 
     /**
-     * This method fills in the table and assigns proper parents.
-     * The value is calculated as a maximum of three values,
-     * first the maximum of some node above the current one minus the gap penalty,
-     * second the maximum of some node left of the current one minus the gap penalty,
-     * third the value of the node to the up left plus the similarity score.
+     * This method fills in the table and assigns proper parents
+     * using the Gotoh recurrence, so that each node is computed
+     * in constant time.
      * <p>
-     * If any of these are equal, all of them are assign as a parent.
+     * Besides the {@link #table} holding the overall best values,
+     * two gap states are kept, {@link #insertValues} for alignments
+     * ending with a gap in the first sequence and {@link #deleteValues}
+     * for those ending with a gap in the second sequence. A gap either
+     * opens from the best value of the neighbouring node, or extends
+     * the gap state of that neighbour by the linear part of the penalty.
+     * A gap leaving the first row or column is never extended, which
+     * keeps the values identical to scanning all the gap lengths.
+     * <p>
+     * The value of the node is the maximum of the diagonal move and both
+     * gap states. If any of these are equal, all of them are flagged,
+     * as are both the opening and the extension of a gap if they are equal.
      *
      * @param northWest  The node to the up and left of the current position.
      * @param current  The current position.
      */
     @Override
     void assignAffValueAndParent(int northWest, int current) {
-        List<Integer> parent = new ArrayList<>();
-        int n = table[0].length;
-        Character seq1Char = seq1.charAt(seq1position(current));
-        Character seq2Char = seq2.charAt(seq2position(current));
-        Double comparisonValue = substMatrix.score(seq1Char, seq2Char);
+        int n = columns();
+        int row = current / n;
+        int column = current % n;
+        double comparisonValue = similarity(current);
         double northWestValue = tableValue(northWest) + comparisonValue;
         double endValue = northWestValue;
-        double leftValueCandidate = tableValue(current - 1) - gapPenalty.countAffine(1);
-        List<Integer> leftParentCandidate = new ArrayList<>();
-        leftParentCandidate.add(current - 1);
-        for (int i = 2; i < current % n; i++) {
-            if (tableValue(current - i) - gapPenalty.countAffine(i) > leftValueCandidate) {
-                leftValueCandidate = tableValue(current - i) - gapPenalty.countAffine(i);
-                leftParentCandidate.clear();
-                leftParentCandidate.add(current - i);
-            }
-            else if (tableValue(current - i) - gapPenalty.countAffine(i) == leftValueCandidate) {
-                leftParentCandidate.add(current - i);
-            }
-        }
-        double upValueCandidate = tableValue(current - n) - gapPenalty.countAffine(1);
-        List<Integer> upParentCandidate = new ArrayList<>();
-        upParentCandidate.add(current - n);
-        for (int i = 2; i < current / n; i++) {
-            if (tableValue(current - (n * i)) - gapPenalty.countAffine(i) > upValueCandidate) {
-                upValueCandidate = tableValue(current - (n * i)) - gapPenalty.countAffine(i);
-                upParentCandidate.clear();
-                upParentCandidate.add(current - (n * i));
-            }
-            else if (tableValue(current - (n * i)) - gapPenalty.countAffine(i) == upValueCandidate) {
-                upParentCandidate.add(current - (n * i));
-            }
-        }
-        if (northWestValue >= upValueCandidate && northWestValue >= leftValueCandidate) {
-            parent.add(northWest);
+        byte flags = 0;
+        double openValue = tableValue(left(current)) - gapPenalty.countAffine(1);
+        double extendValue = column > 2 ? insertValues[row] - gapPenalty.linearPart() : Double.NEGATIVE_INFINITY;
+        double insertValue = Math.max(openValue, extendValue);
+        insertValues[row] = insertValue;
+        flags |= openValue == insertValue ? INSERT_OPEN : 0;
+        flags |= extendValue == insertValue ? INSERT_EXTEND : 0;
+        openValue = tableValue(up(current)) - gapPenalty.countAffine(1);
+        extendValue = row > 2 ? deleteValues[column] - gapPenalty.linearPart() : Double.NEGATIVE_INFINITY;
+        double deleteValue = Math.max(openValue, extendValue);
+        deleteValues[column] = deleteValue;
+        flags |= openValue == deleteValue ? DELETE_OPEN : 0;
+        flags |= extendValue == deleteValue ? DELETE_EXTEND : 0;
+        if (northWestValue >= insertValue && northWestValue >= deleteValue) {
+            flags |= DIAGONAL;
         }
-        if (leftValueCandidate >= northWestValue && leftValueCandidate >= upValueCandidate) {
-            parent.addAll(leftParentCandidate);
-            endValue = leftValueCandidate;
+        if (insertValue >= northWestValue && insertValue >= deleteValue) {
+            flags |= LEFT;
+            endValue = insertValue;
         }
-        if (upValueCandidate >= northWestValue && upValueCandidate >= leftValueCandidate) {
-            parent.addAll(upParentCandidate);
-            endValue = upValueCandidate;
+        if (deleteValue >= northWestValue && deleteValue >= insertValue) {
+            flags |= UP;
+            endValue = deleteValue;
         }
-        table[current / n][current % n] = endValue;
-        parents.put(current, parent);
+        table[row][column] = endValue;
+        traceback[current] = flags;
     }
 
     /**
@@ -133,7 +213,7 @@ public class NW extends PSA {
      * first the left node value minus the gap penalty,
      * second the up node value minus the gap penalty,
      * third the up left node plus the similarity score.
-     * Each of these values equal to the maximum is kept as a parent.
+     * Each of these values equal to the maximum is flagged as a parent.
      *
      * @param northWest  The {@link #northWest(int position)} of current position.
      * @param left  The node to the left of current position.
@@ -142,87 +222,530 @@ public class NW extends PSA {
      */
     @Override
     void assignLinearValueAndParent(int northWest, int left, int up, int current) {
-        List<Integer> parent = new ArrayList<>();
-        Character seq1Char = seq1.charAt(seq1position(current));
-        Character seq2Char = seq2.charAt(seq2position(current));
-        Double comparisonValue = substMatrix.score(seq1Char, seq2Char);
+        byte flags = 0;
+        double comparisonValue = similarity(current);
         double northWestValue = tableValue(northWest) + comparisonValue;
         double leftValue = tableValue(left) - gapPenalty.linearPart();
         double upValue = tableValue(up) - gapPenalty.linearPart();
         double endValue = northWestValue;
         if (northWestValue >= leftValue && northWestValue >= upValue) {
-            parent.add(northWest);
+            flags |= DIAGONAL;
         }
         if (leftValue >= northWestValue && leftValue >= upValue) {
-            parent.add(left);
+            flags |= LEFT;
             endValue = leftValue;
         }
         if (upValue >= northWestValue && upValue >= leftValue) {
-            parent.add(up);
+            flags |= UP;
             endValue = upValue;
         }
         table[current / table[0].length][current % table[0].length] = endValue;
-        parents.put(current, parent);
+        traceback[current] = flags;
+    }
+
+    /**
+     * Computes a part of the {@link #cells} by the rules of {@link #assignLinearValueAndParent(int, int, int, int)}
+     * or of {@link #assignAffValueAndParent(int, int)}.
+     *
+     * @param top  The first row.
+     * @param bottom  The row after the last one.
+     * @param leftmost  The first column.
+     * @param rightmost  The column after the last one.
+     * @param affine  True for the affine gap calculation, false for the linear one.
+     */
+    @Override
+    void fillCells(int top, int bottom, int leftmost, int rightmost, boolean affine) {
+        if (affine) {
+            fillAffineCells(top, bottom, leftmost, rightmost);
+        }
+        else {
+            fillLinearCells(top, bottom, leftmost, rightmost);
+        }
+    }
+
+    private void fillLinearCells(int top, int bottom, int leftmost, int rightmost) {
+        int n = cellColumns;
+        double[] cells = this.cells;
+        byte[] traceback = this.traceback;
+        double gap = gapPenalty.linearPart();
+        for (int row = top; row < bottom; row++) {
+            int base = encoded1[row - 1] * stride;
+            int current = row * n + leftmost;
+            double left = cells[current - 1];
+            double northWest = cells[current - n - 1];
+            for (int column = leftmost; column < rightmost; column++, current++) {
+                double up = cells[current - n];
+                double northWestValue = northWest + scores[base + encoded2[column - 1]];
+                double leftValue = left - gap;
+                double upValue = up - gap;
+                double endValue = northWestValue;
+                byte flags = 0;
+                if (northWestValue >= leftValue && northWestValue >= upValue) {
+                    flags |= DIAGONAL;
+                }
+                if (leftValue >= northWestValue && leftValue >= upValue) {
+                    flags |= LEFT;
+                    endValue = leftValue;
+                }
+                if (upValue >= northWestValue && upValue >= leftValue) {
+                    flags |= UP;
+                    endValue = upValue;
+                }
+                cells[current] = endValue;
+                traceback[current] = flags;
+                left = endValue;
+                northWest = up;
+            }
+        }
+    }
+
+    private void fillAffineCells(int top, int bottom, int leftmost, int rightmost) {
+        int n = cellColumns;
+        double[] cells = this.cells;
+        byte[] traceback = this.traceback;
+        double[] deleteValues = this.deleteValues;
+        double open = gapPenalty.countAffine(1);
+        double extend = gapPenalty.linearPart();
+        for (int row = top; row < bottom; row++) {
+            int base = encoded1[row - 1] * stride;
+            int current = row * n + leftmost;
+            double left = cells[current - 1];
+            double northWest = cells[current - n - 1];
+            double insert = insertValues[row];
+            for (int column = leftmost; column < rightmost; column++, current++) {
+                double up = cells[current - n];
+                double northWestValue = northWest + scores[base + encoded2[column - 1]];
+                double endValue = northWestValue;
+                byte flags = 0;
+                double openValue = left - open;
+                double extendValue = column > 2 ? insert - extend : Double.NEGATIVE_INFINITY;
+                insert = Math.max(openValue, extendValue);
+                flags |= openValue == insert ? INSERT_OPEN : 0;
+                flags |= extendValue == insert ? INSERT_EXTEND : 0;
+                openValue = up - open;
+                extendValue = row > 2 ? deleteValues[column] - extend : Double.NEGATIVE_INFINITY;
+                double delete = Math.max(openValue, extendValue);
+                deleteValues[column] = delete;
+                flags |= openValue == delete ? DELETE_OPEN : 0;
+                flags |= extendValue == delete ? DELETE_EXTEND : 0;
+                if (northWestValue >= insert && northWestValue >= delete) {
+                    flags |= DIAGONAL;
+                }
+                if (insert >= northWestValue && insert >= delete) {
+                    flags |= LEFT;
+                    endValue = insert;
+                }
+                if (delete >= northWestValue && delete >= insert) {
+                    flags |= UP;
+                    endValue = delete;
+                }
+                cells[current] = endValue;
+                traceback[current] = flags;
+                left = endValue;
+                northWest = up;
+            }
+            insertValues[row] = insert;
+        }
+    }
+
+    /**
+     * The integer counterpart of {@link #assignAffValueAndParent(int, int)},
+     * with the same gap states and the same flags.
+     *
+     * @param northWest  The node to the up and left of the current position.
+     * @param current  The current position.
+     */
+    @Override
+    void assignIntegerAffValueAndParent(int northWest, int current) {
+        int n = columns();
+        int row = current / n;
+        int column = current % n;
+        int northWestValue = integerValue(northWest) + integerScores[encoded1[row - 1] * stride + encoded2[column - 1]];
+        int endValue = northWestValue;
+        byte flags = 0;
+        int open = integerGapBase + integerGap;
+        int openValue = integerValue(current - 1) - open;
+        int extendValue = column > 2 ? integerInsertValues[row] - integerGap : MINUS_INFINITY;
+        int insertValue = Math.max(openValue, extendValue);
+        integerInsertValues[row] = insertValue;
+        flags |= openValue == insertValue ? INSERT_OPEN : 0;
+        flags |= extendValue == insertValue ? INSERT_EXTEND : 0;
+        openValue = integerValue(current - n) - open;
+        extendValue = row > 2 ? integerDeleteValues[column] - integerGap : MINUS_INFINITY;
+        int deleteValue = Math.max(openValue, extendValue);
+        integerDeleteValues[column] = deleteValue;
+        flags |= openValue == deleteValue ? DELETE_OPEN : 0;
+        flags |= extendValue == deleteValue ? DELETE_EXTEND : 0;
+        if (northWestValue >= insertValue && northWestValue >= deleteValue) {
+            flags |= DIAGONAL;
+        }
+        if (insertValue >= northWestValue && insertValue >= deleteValue) {
+            flags |= LEFT;
+            endValue = insertValue;
+        }
+        if (deleteValue >= northWestValue && deleteValue >= insertValue) {
+            flags |= UP;
+            endValue = deleteValue;
+        }
+        integerTable[row][column] = endValue;
+        traceback[current] = flags;
+    }
+
+    /**
+     * The integer counterpart of {@link #assignLinearValueAndParent(int, int, int, int)}.
+     *
+     * @param northWest  The {@link #northWest(int position)} of current position.
+     * @param left  The node to the left of current position.
+     * @param up  The node above the current position.
+     * @param current  The current position.
+     */
+    @Override
+    void assignIntegerLinearValueAndParent(int northWest, int left, int up, int current) {
+        int n = columns();
+        int row = current / n;
+        int column = current % n;
+        byte flags = 0;
+        int northWestValue = integerValue(northWest) + integerScores[encoded1[row - 1] * stride + encoded2[column - 1]];
+        int leftValue = integerValue(left) - integerGap;
+        int upValue = integerValue(up) - integerGap;
+        int endValue = northWestValue;
+        if (northWestValue >= leftValue && northWestValue >= upValue) {
+            flags |= DIAGONAL;
+        }
+        if (leftValue >= northWestValue && leftValue >= upValue) {
+            flags |= LEFT;
+            endValue = leftValue;
+        }
+        if (upValue >= northWestValue && upValue >= leftValue) {
+            flags |= UP;
+            endValue = upValue;
+        }
+        integerTable[row][column] = endValue;
+        traceback[current] = flags;
+    }
+
+    /**
+     * Computes the score of the optimal alignment from two rolling rows, plus
+     * one row of the gap state across the rows under the affine gap penalty.
+     * The gap state along the row only needs the last visited node. The table
+     * being symmetric in both sequences, including the gaps leaving the first
+     * row or column that are never extended, the rows can run along either sequence.
+     *
+     * @return  The score, ending at the ends of both sequences.
+     */
+    @Override
+    public AlignmentScore scoreOnly() {
+        int outerStride = outerStride();
+        double score = globalScore(outerSequence(), outerStride, innerSequence(), outerStride == 1 ? stride : 1, scores, gapPenalty);
+        return new AlignmentScore(score, seq1.length(), seq2.length());
+    }
+
+    /**
+     * Computes the score of the optimal global alignment of two encoded sequences
+     * by the rules of {@link #scoreOnly()}, so that it can be run on sequences
+     * encoded once for many calculations.
+     *
+     * @param outer  The encoded sequence along which the rows proceed.
+     * @param outerStride  Step of the score index for the outer sequence.
+     * @param inner  The encoded sequence across the rows.
+     * @param innerStride  Step of the score index for the inner sequence.
+     * @param scores  The scores of the pairs of codes.
+     * @param gapPenalty  The linear or affine gap penalty.
+     * @return  The score, ending at the ends of both sequences.
+     */
+    static double globalScore(byte[] outer, int outerStride, byte[] inner, int innerStride, double[] scores, GapPenalty gapPenalty) {
+        int n = inner.length;
+        double[] best = new double[n + 1];
+        switch (gapPenalty.getType()) {
+            case AFFINE:
+                double open = gapPenalty.countAffine(1);
+                double extend = gapPenalty.linearPart();
+                double[] delete = new double[n + 1];
+                for (int j = 1; j <= n; j++) {
+                    best[j] = (double) (-1) * gapPenalty.countAffine(j);
+                }
+                for (int i = 1; i <= outer.length; i++) {
+                    int base = outer[i - 1] * outerStride;
+                    double diagonal = best[0];
+                    best[0] = (double) (-1) * gapPenalty.countAffine(i);
+                    double insert = Double.NEGATIVE_INFINITY;
+                    for (int j = 1; j <= n; j++) {
+                        double up = best[j];
+                        insert = Math.max(best[j - 1] - open, j > 2 ? insert - extend : Double.NEGATIVE_INFINITY);
+                        delete[j] = Math.max(up - open, i > 2 ? delete[j] - extend : Double.NEGATIVE_INFINITY);
+                        best[j] = Math.max(diagonal + scores[base + inner[j - 1] * innerStride], Math.max(insert, delete[j]));
+                        diagonal = up;
+                    }
+                }
+                break;
+            case LINEAR:
+                double gap = gapPenalty.linearPart();
+                for (int j = 1; j <= n; j++) {
+                    best[j] = (double) j * (-1) * gap;
+                }
+                for (int i = 1; i <= outer.length; i++) {
+                    int base = outer[i - 1] * outerStride;
+                    double diagonal = best[0];
+                    best[0] = (double) i * (-1) * gap;
+                    for (int j = 1; j <= n; j++) {
+                        double up = best[j];
+                        best[j] = Math.max(diagonal + scores[base + inner[j - 1] * innerStride], Math.max(best[j - 1] - gap, up - gap));
+                        diagonal = up;
+                    }
+                }
+                break;
+            case ERROR:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not initialized properly");
+        }
+        return best[n];
     }
 
     /**
      * The method for retrieving the results.
-     * The process starts on the last node with empty sequences
-     * and is immediately passed to the {@link #backtrackTree(StringBuilder, StringBuilder, int)} method.
+     * All the optimal alignments are enumerated by the {@link Traceback}
+     * in the order of {@link TieBreak#DIAGONAL_FIRST}.
      */
     @Override
     void backtrack() {
+        long start = System.nanoTime();
         results = new ArrayList<>();
-        int m = table.length;
-        int n = table[0].length;
-        int start = m * n - 1;
-        backtrackTree(new StringBuilder(), new StringBuilder(), start);
+        score = tableValue(traceback.length - 1);
+        Traceback alignments = new Traceback(Integer.MAX_VALUE, TieBreak.DIAGONAL_FIRST);
+        while (alignments.hasNext()) {
+            results.add(alignments.next());
+        }
+        reportTraceback(start, results);
     }
 
     /**
-     * A method that finds all the possible results
-     * by exploring each parent option of each node.
+     * Enumerates the optimal alignments one by one, only as they are requested,
+     * so that the first one costs time proportional to the length of the sequences,
+     * however many other optimal alignments there are. The table is filled
+     * first, unless it has already been, and the score is set.
      *
-     * @param sequence1  The first sequence part so far built.
-     * @param sequence2  The second sequence part so far built.
-     * @param position  The current position.
+     * @param maxCount  The largest number of alignments to enumerate.
+     * @param tieBreak  The order in which the equally good moves are explored.
+     * @return  Ordered stream of the alignments.
      */
-    void backtrackTree(StringBuilder sequence1, StringBuilder sequence2, int position) {
-        int n = table[0].length;
-        if (position == 0) {
-            results.add(new StringBuilder[]{new StringBuilder(sequence1), new StringBuilder(sequence2)});
+    public Stream<Alignment> optimalAlignments(int maxCount, TieBreak tieBreak) {
+        if (traceback == null) {
+            fillTable();
         }
-        else {
-            List<Integer> listOfParents = parents.get(position);
-            for (Integer parent: listOfParents) {
-                if (parent == northWest(position)) {
-                    StringBuilder newSeq1 = new StringBuilder(sequence1);
-                    StringBuilder newSeq2 = new StringBuilder(sequence2);
-                    newSeq1.append(seq1.charAt(seq1position(position)));
-                    newSeq2.append(seq2.charAt(seq2position(position)));
-                    backtrackTree(newSeq1, newSeq2, parent);
-                }
-                else if (parent / n == position / n) {
-                    StringBuilder newSeq1 = new StringBuilder(sequence1);
-                    StringBuilder newSeq2 = new StringBuilder(sequence2);
-                    while (position != parent) {
-                        newSeq1.append('_');
-                        newSeq2.append(seq2.charAt(seq2position(position)));
-                        position--;
-                    }
-                    backtrackTree(newSeq1, newSeq2, parent);
-                }
-                else if (parent % n == position % n) {
-                    StringBuilder newSeq1 = new StringBuilder(sequence1);
-                    StringBuilder newSeq2 = new StringBuilder(sequence2);
-                    while (position != parent) {
-                        newSeq1.append(seq1.charAt(seq1position(position)));
-                        newSeq2.append('_');
-                        position = position - n;
+        score = tableValue(traceback.length - 1);
+        Traceback alignments = new Traceback(maxCount, tieBreak);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(alignments, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Enumerates the optimal alignments as {@link #optimalAlignments(int, TieBreak)} does,
+     * writing out each of them.
+     *
+     * @param maxCount  The largest number of alignments to enumerate.
+     * @param tieBreak  The order in which the equally good moves are explored.
+     * @return  Ordered stream of pairs of the aligned sequences.
+     */
+    public Stream<String[]> alignments(int maxCount, TieBreak tieBreak) {
+        return optimalAlignments(maxCount, tieBreak).map(Alignment::getAlignment);
+    }
+
+    /**
+     * The order in which the moves of equal value are explored
+     * when enumerating the alignments.
+     */
+    public enum TieBreak {
+        /**
+         * The match first, then the gap in the first sequence and the gap in the second one.
+         * This is the order of the {@link #getResults()}.
+         */
+        DIAGONAL_FIRST(DIAGONAL, LEFT, UP),
+        /**
+         * The gap in the first sequence first, then the gap in the second one and the match.
+         */
+        GAPS_FIRST(LEFT, UP, DIAGONAL);
+
+        private final byte[] moves;
+
+        TieBreak(byte... moves) {
+            this.moves = moves;
+        }
+    }
+
+    /**
+     * Depth first traversal of the traceback flags driven by an explicit stack
+     * instead of recursion, so that the depth of the table does not matter.
+     * <p>
+     * Each level of the stack is a node in one of three states: the overall best
+     * value, or inside a gap in the first or in the second sequence. Under the affine
+     * gap penalty, the left and up flags of an inner node lead to the respective gap
+     * state of the same node, which then either closes at the neighbouring node
+     * where it was opened, or extends further. The closer opening is explored first.
+     * The operations of the current path are kept in an array shared by all the
+     * alignments, so nothing is copied at the branches.
+     */
+    private class Traceback implements Iterator<Alignment> {
+        private static final int BEST = 0;
+        private static final int INSERT = 1;
+        private static final int DELETE = 2;
+        private final byte[] moves;
+        private final boolean affine;
+        private final int[] positions;
+        private final int[] states;
+        /**
+         * The number of the choices already explored at each level.
+         */
+        private final int[] choices;
+        /**
+         * The length of the path when each level has been entered.
+         */
+        private final int[] lengths;
+        private final byte[] path;
+        private int depth;
+        private int remaining;
+        private Alignment next;
+
+        Traceback(int maxCount, TieBreak tieBreak) {
+            int size = 2 * (rows() + columns()) + 2;
+            moves = tieBreak.moves;
+            affine = gapPenalty.getType() == GapPenalty.Type.AFFINE;
+            positions = new int[size];
+            states = new int[size];
+            choices = new int[size];
+            lengths = new int[size];
+            path = new byte[size];
+            remaining = maxCount;
+            if (remaining > 0) {
+                positions[0] = traceback.length - 1;
+                depth = 1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && remaining > 0) {
+                next = advance();
+                if (next != null) {
+                    remaining--;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Alignment next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Alignment alignment = next;
+            next = null;
+            return alignment;
+        }
+
+        /**
+         * Walks the flags until the first node is reached.
+         *
+         * @return  The next alignment, or null if there is none.
+         */
+        private Alignment advance() {
+            while (depth > 0) {
+                int level = depth - 1;
+                int position = positions[level];
+                if (position == 0) {
+                    depth--;
+                    return alignment(lengths[level]);
+                }
+                if (!descend(level, position)) {
+                    depth--;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Moves to the next unexplored choice of the level, if there is any.
+         *
+         * @param level  The level of the stack.
+         * @param position  The node of the level.
+         * @return  True if a new level has been entered.
+         */
+        private boolean descend(int level, int position) {
+            int n = columns();
+            byte flags = traceback[position];
+            int length = lengths[level];
+            if (states[level] != BEST) {
+                boolean insert = states[level] == INSERT;
+                while (choices[level] < 2) {
+                    int choice = choices[level]++;
+                    byte flag = insert ? (choice == 0 ? INSERT_OPEN : INSERT_EXTEND) : (choice == 0 ? DELETE_OPEN : DELETE_EXTEND);
+                    if ((flags & flag) != 0) {
+                        if (insert) {
+                            push(level, left(position), choice == 0 ? BEST : INSERT, Alignment.DELETE);
+                        }
+                        else {
+                            push(level, up(position), choice == 0 ? BEST : DELETE, Alignment.INSERT);
+                        }
+                        return true;
                     }
-                    backtrackTree(newSeq1, newSeq2, parent);
                 }
+                return false;
+            }
+            boolean inner = affine && position / n > 0 && position % n > 0;
+            while (choices[level] < moves.length) {
+                byte move = moves[choices[level]++];
+                if ((flags & move) == 0) {
+                    continue;
+                }
+                if (move == DIAGONAL) {
+                    int operation = seq1.charAt(seq1position(position)) == seq2.charAt(seq2position(position)) ? Alignment.MATCH : Alignment.MISMATCH;
+                    push(level, northWest(position), BEST, operation);
+                }
+                else if (inner) {
+                    lengths[level + 1] = length;
+                    positions[level + 1] = position;
+                    states[level + 1] = move == LEFT ? INSERT : DELETE;
+                    choices[level + 1] = 0;
+                    depth++;
+                }
+                else if (move == LEFT) {
+                    push(level, left(position), BEST, Alignment.DELETE);
+                }
+                else {
+                    push(level, up(position), BEST, Alignment.INSERT);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Enters a new level one column further along the path.
+         *
+         * @param level  The current level.
+         * @param position  The node of the new level.
+         * @param state  The state of the new level.
+         * @param operation  The operation of the column, one of those of the {@link Alignment}.
+         */
+        private void push(int level, int position, int state, int operation) {
+            int length = lengths[level];
+            path[length] = (byte) operation;
+            lengths[level + 1] = length + 1;
+            positions[level + 1] = position;
+            states[level + 1] = state;
+            choices[level + 1] = 0;
+            depth++;
+        }
+
+        /**
+         * Builds the alignment from the current path, which runs from the end to the front.
+         *
+         * @param length  The length of the path.
+         * @return  The alignment of the whole sequences.
+         */
+        private Alignment alignment(int length) {
+            Alignment.Builder alignment = new Alignment.Builder(seq1, seq2);
+            for (int i = 0; i < length; i++) {
+                alignment.add(path[i]);
             }
+            return alignment.build(score, 0, 0);
         }
     }
 }
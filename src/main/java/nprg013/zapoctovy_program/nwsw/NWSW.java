@@ -1,27 +1,99 @@
 package nprg013.zapoctovy_program.nwsw;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.ResourceBundle;
+import java.util.stream.Stream;
 
 /**
  * A class that performs Pairwise Sequence Alignment by the means of two algorithms,
  * namely Needleman-Wunsch and Smith-Waterman.
+ * <p>
+ * The Needleman-Wunsch calculations return all the optimal alignments from the full table
+ * whenever it fits into the {@link #heapBudget}. Only one of them is found by the variants used
+ * otherwise, and by the bit-vector {@link MyersNW}, which is used if the scores reduce to the edit
+ * distance and the caller asks for a single alignment, or the full table would not fit.
  */
 public class NWSW {
+    /**
+     * The largest estimated size of the Needleman-Wunsch table in bytes,
+     * beyond which the linear memory {@link Hirschberg} variant is used instead.
+     * Defaults to the value of the nwsw.heapBudget system property,
+     * or to half of the maximal heap size.
+     */
+    private long heapBudget = Long.getLong("nwsw.heapBudget", Runtime.getRuntime().maxMemory() / 2);
+    /**
+     * Side of the tiles in which the tables of long sequences are filled in parallel,
+     * or zero for the serial fill. Defaults to the value of the nwsw.tileSize
+     * system property, or to {@link PSA#DEFAULT_TILE_SIZE}.
+     */
+    private int tileSize = Integer.getInteger("nwsw.tileSize", PSA.DEFAULT_TILE_SIZE);
+    /**
+     * True if the full tables are computed in integers, see {@link PSA#setIntegerScoring(boolean)}.
+     * Defaults to the value of the nwsw.integerScoring system property.
+     */
+    private boolean integerScoring = Boolean.getBoolean("nwsw.integerScoring");
+    /**
+     * True if the full tables of doubles are filled by the blocked fill, see {@link PSA#setBlockedFill(boolean)}.
+     * Defaults to the value of the nwsw.blockedFill system property, or to true.
+     */
+    private boolean blockedFill = Boolean.parseBoolean(System.getProperty("nwsw.blockedFill", "true"));
+    /**
+     * True if the Needleman-Wunsch tables beyond the {@link #heapBudget} keep their traceback
+     * flags outside of the heap by the {@link OffHeapNW} instead of using the {@link Hirschberg} variant.
+     * Defaults to the value of the nwsw.offHeap system property.
+     */
+    private boolean offHeap = Boolean.getBoolean("nwsw.offHeap");
+    /**
+     * The metrics the calculations prepared here report into, by default {@link Metrics#NONE}.
+     */
+    private Metrics metrics = Metrics.NONE;
+
     /**
      * The entry point of the program. Absence of arguments starts the interactive mode, whereas
      * expected argument count for basic function is four or five, depending on the type of gap penalty.
+     * They may be preceded by --metrics and a path, to which the {@link MetricsSummary} of the run
+     * is written in JSON, or - for the standard error output. The phases of the run are always
+     * committed as the events of the {@link JfrMetrics}.
+     * The --batch argument starts the non-interactive {@link BatchAligner}, see {@link #batch(String[], Metrics)}.
      * All other argument counts will result in help being displayed.
      *
      * @param argv  Array of arguments.
      * @throws IOException  Thrown on failure to read input.
      */
     public static void main(String[] argv) throws IOException {
-        if (argv.length > 3 && argv.length < 6) {
+        String metricsPath = null;
+        if (argv.length > 1 && argv[0].equals("--metrics")) {
+            metricsPath = argv[1];
+            argv = Arrays.copyOfRange(argv, 2, argv.length);
+        }
+        if (argv.length > 0 && argv[0].equals("--batch")) {
+            MetricsSummary summary = new MetricsSummary();
+            try {
+                batch(argv, new JfrMetrics(metricsPath != null ? summary : Metrics.NONE));
+            } catch (IllegalArgumentException error) {
+                System.err.println(error.getMessage());
+                help();
+                return;
+            }
+            if (metricsPath != null) {
+                writeSummary(summary, metricsPath);
+            }
+        }
+        else if (argv.length > 3 && argv.length < 6) {
             try {
                 List<String> gapArgs = new ArrayList<>();
                 gapArgs.add(argv[3]);
@@ -29,16 +101,22 @@ public class NWSW {
                     gapArgs.add(argv[4]);
                 }
                 boolean swRatherThanNW = userChoice();
+                NWSW nwsw = new NWSW();
+                MetricsSummary summary = new MetricsSummary();
+                nwsw.setMetrics(new JfrMetrics(metricsPath != null ? summary : Metrics.NONE));
                 if (swRatherThanNW) {
-                    SW swRun = new SW(argv[0], argv[1], argv[2], gapArgs);
+                    SW swRun = nwsw.localAligner(argv[0], argv[1], argv[2], gapArgs);
                     swRun.calculate();
                     swRun.printResults();
                 }
                 else {
-                    NW nwRun = new NW(argv[0], argv[1], argv[2], gapArgs);
+                    NW nwRun = nwsw.globalAligner(argv[0], argv[1], argv[2], gapArgs, false);
                     nwRun.calculate();
                     nwRun.printResults();
                 }
+                if (metricsPath != null) {
+                    writeSummary(summary, metricsPath);
+                }
             } catch (GapPenalty.GapPenaltyNumericalError error) {
                 error.printStackTrace();
                 help();
@@ -63,6 +141,87 @@ public class NWSW {
         System.out.println(bundle.getString("help1"));
         System.out.println(bundle.getString("help2"));
         System.out.println(bundle.getString("help3"));
+        System.out.println(bundle.getString("help4"));
+        System.out.println(bundle.getString("help5"));
+    }
+
+    /**
+     * Runs the {@link BatchAligner} by the arguments --batch nw or sw, optionally followed by
+     * --format tsv or jsonl, --threads and their number, --output and the path to the file
+     * of the records, the standard output by default, and the path to the manifest,
+     * - or none for the standard input.
+     *
+     * @param argv  Array of arguments, starting with --batch.
+     * @param metrics  The metrics the calculations report into.
+     * @throws IOException  If the manifest cannot be read or the records cannot be written.
+     * @throws IllegalArgumentException  If the arguments are not valid.
+     */
+    static void batch(String[] argv, Metrics metrics) throws IOException {
+        if (argv.length < 2 || !argv[1].equals("nw") && !argv[1].equals("sw")) {
+            throw new IllegalArgumentException("Expected --batch nw or --batch sw");
+        }
+        BatchAligner.Format format = BatchAligner.Format.TSV;
+        Integer threads = null;
+        String outputPath = null;
+        String manifestPath = "-";
+        for (int i = 2; i < argv.length; i++) {
+            boolean last = i == argv.length - 1;
+            switch (argv[i]) {
+                case "--format":
+                    if (last || !argv[i + 1].matches("tsv|jsonl")) {
+                        throw new IllegalArgumentException("Expected --format tsv or --format jsonl");
+                    }
+                    format = BatchAligner.Format.valueOf(argv[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--threads":
+                    if (last || !argv[i + 1].matches("[0-9]+")) {
+                        throw new IllegalArgumentException("Expected --threads and a number");
+                    }
+                    threads = Integer.valueOf(argv[++i]);
+                    break;
+                case "--output":
+                    if (last) {
+                        throw new IllegalArgumentException("Expected --output and a path");
+                    }
+                    outputPath = argv[++i];
+                    break;
+                default:
+                    if (!last) {
+                        throw new IllegalArgumentException("Unknown argument " + argv[i]);
+                    }
+                    manifestPath = argv[i];
+            }
+        }
+        NWSW settings = new NWSW();
+        settings.setMetrics(metrics);
+        BatchAligner batch = new BatchAligner(settings, argv[1].equals("sw"), format);
+        if (threads != null) {
+            batch.setThreads(threads);
+        }
+        try (BufferedReader manifest = manifestPath.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(manifestPath));
+             Writer output = outputPath == null
+                ? new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(outputPath))) {
+            batch.run(manifest, output);
+        }
+    }
+
+    /**
+     * Writes the summary of the metrics of a run in JSON.
+     *
+     * @param summary  The metrics of the run.
+     * @param path  Path to the file to be written, or - for the standard error output.
+     * @throws IOException  If the path is not valid.
+     */
+    static void writeSummary(MetricsSummary summary, String path) throws IOException {
+        if (path.equals("-")) {
+            System.err.println(summary.toJson());
+        }
+        else {
+            Files.writeString(Paths.get(path), summary.toJson() + System.lineSeparator());
+        }
     }
 
     /**
@@ -142,6 +301,222 @@ public class NWSW {
         }
     }
 
+    /**
+     * Returns the memory limit for the Needleman-Wunsch table.
+     *
+     * @return  The limit in bytes.
+     */
+    public long getHeapBudget() {
+        return heapBudget;
+    }
+
+    /**
+     * Sets the memory limit for the Needleman-Wunsch table, beyond which
+     * only one optimal alignment is computed in linear memory.
+     *
+     * @param heapBudget  The limit in bytes.
+     */
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * Returns the side of the tiles of the parallel fill.
+     *
+     * @return  Number of rows and columns of one tile, zero for the serial fill.
+     */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Sets the side of the tiles in which the table is filled in parallel,
+     * if the sequences are long enough to span more than one tile.
+     *
+     * @param tileSize  Number of rows and columns of one tile, zero for the serial fill.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns whether the full tables are computed in integers.
+     *
+     * @return  True for the integer scoring, false for doubles.
+     */
+    public boolean isIntegerScoring() {
+        return integerScoring;
+    }
+
+    /**
+     * Sets whether the full tables are computed in integers, with the scores
+     * and the gap penalties multiplied by a power of ten.
+     *
+     * @param integerScoring  True for the integer scoring, false for doubles.
+     */
+    public void setIntegerScoring(boolean integerScoring) {
+        this.integerScoring = integerScoring;
+    }
+
+    /**
+     * Returns whether the full tables of doubles are filled by the blocked fill.
+     *
+     * @return  True for the blocked fill, false for the fill node by node.
+     */
+    public boolean isBlockedFill() {
+        return blockedFill;
+    }
+
+    /**
+     * Sets whether the full tables of doubles are filled by the blocked fill,
+     * held in one array and computed in strips of columns.
+     *
+     * @param blockedFill  True for the blocked fill, false for the fill node by node.
+     */
+    public void setBlockedFill(boolean blockedFill) {
+        this.blockedFill = blockedFill;
+    }
+
+    /**
+     * Returns whether the Needleman-Wunsch tables beyond the heap budget keep their flags outside of the heap.
+     *
+     * @return  True for the {@link OffHeapNW}, false for the {@link Hirschberg} variant.
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Sets whether the Needleman-Wunsch tables beyond the heap budget keep their flags
+     * outside of the heap, in direct buffers or in a mapped temporary file.
+     *
+     * @param offHeap  True for the {@link OffHeapNW}, false for the {@link Hirschberg} variant.
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Returns the metrics the calculations report into.
+     *
+     * @return  The metrics.
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics the calculations prepared from now on report into.
+     *
+     * @param metrics  The metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Prepares the Needleman-Wunsch calculation, choosing the full table if it fits into
+     * the {@link #heapBudget} and into arrays, unless a single alignment is asked for, else
+     * the bit-vector variant if the scores reduce to the edit distance and its bits fit into
+     * the budget and into arrays, else the linear memory variant, or the {@link OffHeapNW}
+     * if {@link #offHeap} is set.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gapValue  One or two values of the gap penalty.
+     * @param single  True if only one optimal alignment is needed, false for all of them.
+     * @return  The calculation ready to be run.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    NW globalAligner(String seq1path, String seq2path, String mxPath, List<String> gapValue, boolean single) throws IOException, SubstMatrix.MatrixDimensionException {
+        long start = System.nanoTime();
+        LoadSeq seqs = new LoadSeq(seq1path, seq2path);
+        SubstMatrix substMatrix = MatrixRegistry.get(mxPath);
+        GapPenalty gapPenalty = new GapPenalty(gapValue);
+        metrics.phase(Metrics.Phase.PARSE, System.nanoTime() - start);
+        return globalAligner(seqs.getFirst(), seqs.getSecond(), substMatrix, gapPenalty, single);
+    }
+
+    /**
+     * Prepares the Needleman-Wunsch calculation of the sequences themselves,
+     * choosing the variant as {@link #globalAligner(String, String, String, List, boolean)} does.
+     *
+     * @param seq1  The first sequence.
+     * @param seq2  The second sequence.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     * @param single  True if only one optimal alignment is needed, false for all of them.
+     * @return  The calculation ready to be run.
+     */
+    NW globalAligner(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty, boolean single) {
+        boolean fullTable = (long) (seq1.length() + 1) * (seq2.length() + 1) <= PSA.MAX_TABLE_NODES
+                && NW.estimatedTableBytes(seq1.length(), seq2.length(), integerScoring) <= heapBudget;
+        MyersNW myers = new MyersNW(seq1, seq2, substMatrix, gapPenalty);
+        if ((single || !fullTable) && MyersNW.reducesToEditDistance(myers) && MyersNW.fitsArrays(seq1.length(), seq2.length())
+                && MyersNW.estimatedBytes(seq1.length(), seq2.length()) <= heapBudget) {
+            myers.setMetrics(metrics);
+            return myers;
+        }
+        if (!fullTable) {
+            if (offHeap) {
+                OffHeapNW offHeapNW = new OffHeapNW(seq1, seq2, substMatrix, gapPenalty);
+                offHeapNW.setMetrics(metrics);
+                return offHeapNW;
+            }
+            Hirschberg hirschberg = new Hirschberg(seq1, seq2, substMatrix, gapPenalty);
+            hirschberg.setMetrics(metrics);
+            return hirschberg;
+        }
+        NW nw = new NW(seq1, seq2, substMatrix, gapPenalty);
+        nw.setMetrics(metrics);
+        nw.setTileSize(tileSize);
+        nw.setIntegerScoring(integerScoring);
+        nw.setBlockedFill(blockedFill);
+        return nw;
+    }
+
+    /**
+     * Prepares the Smith-Waterman calculation, filled in parallel
+     * according to the {@link #tileSize}.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gapValue  One or two values of the gap penalty.
+     * @return  The calculation ready to be run.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    SW localAligner(String seq1path, String seq2path, String mxPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        SW sw = new SW(seq1path, seq2path, mxPath, gapValue);
+        sw.setMetrics(metrics);
+        sw.setTileSize(tileSize);
+        sw.setIntegerScoring(integerScoring);
+        sw.setBlockedFill(blockedFill);
+        return sw;
+    }
+
+    /**
+     * Prepares the Smith-Waterman calculation of the sequences themselves,
+     * filled in parallel according to the {@link #tileSize}.
+     *
+     * @param seq1  The first sequence.
+     * @param seq2  The second sequence.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     * @return  The calculation ready to be run.
+     */
+    SW localAligner(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        SW sw = new SW(seq1, seq2, substMatrix, gapPenalty);
+        sw.setMetrics(metrics);
+        sw.setTileSize(tileSize);
+        sw.setIntegerScoring(integerScoring);
+        sw.setBlockedFill(blockedFill);
+        return sw;
+    }
+
     /**
      * Compares two sequences by the means of the Needleman-Wunsch algorithm using affine gap penalty.
      *
@@ -155,7 +530,7 @@ public class NWSW {
      * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
      */
     public List<String[]> needlemanWunsch(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff) throws IOException, SubstMatrix.MatrixDimensionException {
-        NW nw = new NW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        NW nw = globalAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))), false);
         nw.calculate();
         return nw.getResults();
     }
@@ -172,7 +547,124 @@ public class NWSW {
      * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
      */
     public List<String[]> needlemanWunsch(String seq1path, String seq2path, String mxPath, double gpLinear) throws IOException, SubstMatrix.MatrixDimensionException {
-        NW nw = new NW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        NW nw = globalAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))), false);
+        nw.calculate();
+        return nw.getResults();
+    }
+
+    /**
+     * Enumerates the optimal global alignments of two sequences lazily, using affine gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @param maxCount  The largest number of alignments to enumerate.
+     * @return  Stream of the optimal alignments in the order of {@link NW.TieBreak#DIAGONAL_FIRST}.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public Stream<String[]> needlemanWunschAlignments(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff, int maxCount) throws IOException, SubstMatrix.MatrixDimensionException {
+        NW nw = globalAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))), maxCount <= 1);
+        return nw.alignments(maxCount, NW.TieBreak.DIAGONAL_FIRST);
+    }
+
+    /**
+     * Enumerates the optimal global alignments of two sequences lazily, using linear gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param maxCount  The largest number of alignments to enumerate.
+     * @return  Stream of the optimal alignments in the order of {@link NW.TieBreak#DIAGONAL_FIRST}.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public Stream<String[]> needlemanWunschAlignments(String seq1path, String seq2path, String mxPath, double gpLinear, int maxCount) throws IOException, SubstMatrix.MatrixDimensionException {
+        NW nw = globalAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))), maxCount <= 1);
+        return nw.alignments(maxCount, NW.TieBreak.DIAGONAL_FIRST);
+    }
+
+    /**
+     * Finds one optimal global alignment of two sequences in memory proportional
+     * to their length, using affine gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @return  A list with one of the optimal alignments.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<String[]> needlemanWunschLinearSpace(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff) throws IOException, SubstMatrix.MatrixDimensionException {
+        Hirschberg nw = new Hirschberg(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        nw.setMetrics(metrics);
+        nw.calculate();
+        return nw.getResults();
+    }
+
+    /**
+     * Finds one optimal global alignment of two sequences in memory proportional
+     * to their length, using linear gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @return  A list with one of the optimal alignments.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<String[]> needlemanWunschLinearSpace(String seq1path, String seq2path, String mxPath, double gpLinear) throws IOException, SubstMatrix.MatrixDimensionException {
+        Hirschberg nw = new Hirschberg(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        nw.setMetrics(metrics);
+        nw.calculate();
+        return nw.getResults();
+    }
+
+    /**
+     * Finds one optimal global alignment of two similar sequences within a band
+     * of diagonals that is widened as needed, using affine gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @param bandWidth  Number of diagonals on both sides of the band in the first pass.
+     * @return  A list with one of the optimal alignments.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<String[]> needlemanWunschBanded(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff, int bandWidth) throws IOException, SubstMatrix.MatrixDimensionException {
+        BandedNW nw = new BandedNW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        nw.setMetrics(metrics);
+        nw.setBandWidth(bandWidth);
+        nw.calculate();
+        return nw.getResults();
+    }
+
+    /**
+     * Finds one optimal global alignment of two similar sequences within a band
+     * of diagonals that is widened as needed, using linear gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param bandWidth  Number of diagonals on both sides of the band in the first pass.
+     * @return  A list with one of the optimal alignments.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<String[]> needlemanWunschBanded(String seq1path, String seq2path, String mxPath, double gpLinear, int bandWidth) throws IOException, SubstMatrix.MatrixDimensionException {
+        BandedNW nw = new BandedNW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        nw.setMetrics(metrics);
+        nw.setBandWidth(bandWidth);
         nw.calculate();
         return nw.getResults();
     }
@@ -190,7 +682,7 @@ public class NWSW {
      * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
      */
     public List<String[]> smithWaterman(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff) throws IOException, SubstMatrix.MatrixDimensionException {
-        SW sw = new SW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        SW sw = localAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
         sw.calculate();
         return sw.getResults();
     }
@@ -207,8 +699,282 @@ public class NWSW {
      * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
      */
     public List<String[]> smithWaterman(String seq1path, String seq2path, String mxPath, double gpLinear) throws IOException, SubstMatrix.MatrixDimensionException {
-        SW sw = new SW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        SW sw = localAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        sw.calculate();
+        return sw.getResults();
+    }
+
+    /**
+     * Finds the best local alignments of two sequences which do not intersect,
+     * by the means of the Waterman-Eggert algorithm using affine gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @param count  The largest number of alignments.
+     * @param minScore  The lowest score of an alignment.
+     * @return  The alignments ordered by their score.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<LocalAlignment> smithWatermanTop(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff, int count, double minScore) throws IOException, SubstMatrix.MatrixDimensionException {
+        SW sw = localAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        return sw.topAlignments(count, minScore);
+    }
+
+    /**
+     * Finds the best local alignments of two sequences which do not intersect,
+     * by the means of the Waterman-Eggert algorithm using linear gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param count  The largest number of alignments.
+     * @param minScore  The lowest score of an alignment.
+     * @return  The alignments ordered by their score.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<LocalAlignment> smithWatermanTop(String seq1path, String seq2path, String mxPath, double gpLinear, int count, double minScore) throws IOException, SubstMatrix.MatrixDimensionException {
+        SW sw = localAligner(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        return sw.topAlignments(count, minScore);
+    }
+
+    /**
+     * Finds one best local alignment of two similar sequences within a band
+     * of diagonals that is widened as needed, using affine gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @param bandWidth  Number of diagonals on both sides of the band in the first pass.
+     * @return  A list with one of the best local alignments.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<String[]> smithWatermanBanded(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff, int bandWidth) throws IOException, SubstMatrix.MatrixDimensionException {
+        BandedSW sw = new BandedSW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        sw.setMetrics(metrics);
+        sw.setBandWidth(bandWidth);
+        sw.calculate();
+        return sw.getResults();
+    }
+
+    /**
+     * Finds one best local alignment of two similar sequences within a band
+     * of diagonals that is widened as needed, using linear gap penalty.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param bandWidth  Number of diagonals on both sides of the band in the first pass.
+     * @return  A list with one of the best local alignments.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<String[]> smithWatermanBanded(String seq1path, String seq2path, String mxPath, double gpLinear, int bandWidth) throws IOException, SubstMatrix.MatrixDimensionException {
+        BandedSW sw = new BandedSW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        sw.setMetrics(metrics);
+        sw.setBandWidth(bandWidth);
         sw.calculate();
         return sw.getResults();
     }
+
+    /**
+     * Computes only the score of the Needleman-Wunsch algorithm using affine gap penalty,
+     * in memory proportional to the length of the shorter sequence.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @return  The score, ending at the ends of both sequences.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public AlignmentScore needlemanWunschScore(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff) throws IOException, SubstMatrix.MatrixDimensionException {
+        NW nw = new NW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        nw.setMetrics(metrics);
+        return nw.scoreOnly();
+    }
+
+    /**
+     * Computes only the score of the Needleman-Wunsch algorithm using linear gap penalty,
+     * in memory proportional to the length of the shorter sequence.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @return  The score, ending at the ends of both sequences.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public AlignmentScore needlemanWunschScore(String seq1path, String seq2path, String mxPath, double gpLinear) throws IOException, SubstMatrix.MatrixDimensionException {
+        NW nw = new NW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        nw.setMetrics(metrics);
+        return nw.scoreOnly();
+    }
+
+    /**
+     * Computes only the score of the Smith-Waterman algorithm using affine gap penalty,
+     * in memory proportional to the length of the shorter sequence.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @return  The score and the end of the best local alignment.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public AlignmentScore smithWatermanScore(String seq1path, String seq2path, String mxPath, double gpLinear, double gpAff) throws IOException, SubstMatrix.MatrixDimensionException {
+        SW sw = new SW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        sw.setMetrics(metrics);
+        return sw.scoreOnly();
+    }
+
+    /**
+     * Computes only the score of the Smith-Waterman algorithm using linear gap penalty,
+     * in memory proportional to the length of the shorter sequence.
+     *
+     * @param seq1path  Path to file with first sequence.
+     * @param seq2path  Path to file with second sequence.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @return  The score and the end of the best local alignment.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public AlignmentScore smithWatermanScore(String seq1path, String seq2path, String mxPath, double gpLinear) throws IOException, SubstMatrix.MatrixDimensionException {
+        SW sw = new SW(seq1path, seq2path, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        sw.setMetrics(metrics);
+        return sw.scoreOnly();
+    }
+
+    /**
+     * Searches the database for the sequences most similar to the query
+     * by the Smith-Waterman score, using affine gap penalty.
+     *
+     * @param queryPath  Path to file with the query sequence.
+     * @param databasePath  Path to FASTA file or to {@link SequenceDatabase} with any number of sequences.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @param count  The number of best hits to return.
+     * @return  The best hits ordered from the highest score.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<DatabaseSearch.Hit> search(String queryPath, String databasePath, String mxPath, double gpLinear, double gpAff, int count) throws IOException, SubstMatrix.MatrixDimensionException {
+        DatabaseSearch search = new DatabaseSearch(queryPath, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        return search.search(databasePath, count);
+    }
+
+    /**
+     * Searches the database for the sequences most similar to the query
+     * by the Smith-Waterman score, using linear gap penalty.
+     *
+     * @param queryPath  Path to file with the query sequence.
+     * @param databasePath  Path to FASTA file or to {@link SequenceDatabase} with any number of sequences.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param count  The number of best hits to return.
+     * @return  The best hits ordered from the highest score.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<DatabaseSearch.Hit> search(String queryPath, String databasePath, String mxPath, double gpLinear, int count) throws IOException, SubstMatrix.MatrixDimensionException {
+        DatabaseSearch search = new DatabaseSearch(queryPath, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        return search.search(databasePath, count);
+    }
+
+    /**
+     * Searches the database for the sequences most similar to the query by the heuristic
+     * {@link SeedSearch}, computing the Smith-Waterman score only around the seeds, using affine gap penalty.
+     *
+     * @param queryPath  Path to file with the query sequence.
+     * @param databasePath  Path to FASTA file or to {@link SequenceDatabase} with any number of sequences.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @param count  The number of best hits to return.
+     * @return  The best hits ordered from the highest score.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<DatabaseSearch.Hit> seedSearch(String queryPath, String databasePath, String mxPath, double gpLinear, double gpAff, int count) throws IOException, SubstMatrix.MatrixDimensionException {
+        SeedSearch search = new SeedSearch(queryPath, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff))));
+        return search.search(databasePath, count);
+    }
+
+    /**
+     * Searches the database for the sequences most similar to the query by the heuristic
+     * {@link SeedSearch}, computing the Smith-Waterman score only around the seeds, using linear gap penalty.
+     *
+     * @param queryPath  Path to file with the query sequence.
+     * @param databasePath  Path to FASTA file or to {@link SequenceDatabase} with any number of sequences.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param count  The number of best hits to return.
+     * @return  The best hits ordered from the highest score.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public List<DatabaseSearch.Hit> seedSearch(String queryPath, String databasePath, String mxPath, double gpLinear, int count) throws IOException, SubstMatrix.MatrixDimensionException {
+        SeedSearch search = new SeedSearch(queryPath, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear))));
+        return search.search(databasePath, count);
+    }
+
+    /**
+     * Computes the Needleman-Wunsch scores of all the pairs of the sequences
+     * by {@link AllPairs}, using affine gap penalty.
+     *
+     * @param sequencesPath  Path to FASTA file or to {@link SequenceDatabase} with any number of sequences.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @param gpAff  Value of the affine part of the gap penalty.
+     * @return  The scores of all the pairs.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public PairScores allPairs(String sequencesPath, String mxPath, double gpLinear, double gpAff) throws IOException, SubstMatrix.MatrixDimensionException {
+        return new AllPairs(sequencesPath, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear), Double.toString(gpAff)))).scores();
+    }
+
+    /**
+     * Computes the Needleman-Wunsch scores of all the pairs of the sequences
+     * by {@link AllPairs}, using linear gap penalty.
+     *
+     * @param sequencesPath  Path to FASTA file or to {@link SequenceDatabase} with any number of sequences.
+     * @param mxPath  Path to file with the scoring matrix.
+     * @param gpLinear  Value of the linear part of the gap penalty.
+     * @return  The scores of all the pairs.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public PairScores allPairs(String sequencesPath, String mxPath, double gpLinear) throws IOException, SubstMatrix.MatrixDimensionException {
+        return new AllPairs(sequencesPath, mxPath, new ArrayList<>(List.of(Double.toString(gpLinear)))).scores();
+    }
+
+    /**
+     * Converts a FASTA file with any number of sequences to a {@link SequenceDatabase},
+     * which is opened without parsing by the search, and whose first record
+     * can be aligned in place of a FASTA file by all the other methods.
+     *
+     * @param fastaPath  Path to the FASTA file.
+     * @param databasePath  Path to the database file to be written.
+     * @throws IOException  If some of the provided paths is not valid.
+     */
+    public static void convertDatabase(String fastaPath, String databasePath) throws IOException {
+        SequenceDatabase.convert(fastaPath, databasePath);
+    }
 }
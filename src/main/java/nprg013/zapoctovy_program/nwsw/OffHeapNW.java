@@ -0,0 +1,303 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The class that implements the Needleman-Wunsch algorithm for tables
+ * of more nodes than any Java array can hold, keeping only the traceback flags
+ * of all the nodes, outside of the heap in a {@link TracebackStore}.
+ * <p>
+ * The values of the table are swept through row by row in two rolling rows,
+ * plus one row of the gap state across the rows under the affine gap penalty,
+ * by the same rules and with the same flags as {@link NW}. The flags of each row
+ * are stored at once at the long index of its first node. One alignment is traced
+ * back from them, the first one of the {@link NW#getResults()}.
+ * <p>
+ * The flags are kept in direct buffers if they fit into the {@link #directBudget},
+ * else in a temporary file mapped into memory, so the heap only holds the rows.
+ */
+public class OffHeapNW extends NW {
+    /**
+     * The largest number of bytes of the flags kept in direct buffers.
+     * Defaults to the value of the nwsw.directBudget system property,
+     * or to the maximal heap size, which is also the default limit of the direct memory.
+     */
+    private long directBudget = Long.getLong("nwsw.directBudget", Runtime.getRuntime().maxMemory());
+    /**
+     * The directory of the temporary file of the flags, null for the default one.
+     */
+    private Path spillDirectory;
+    /**
+     * True if the flags of the last calculation were kept in a mapped file.
+     */
+    private boolean mapped;
+
+    public OffHeapNW(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        super(seq1path, seq2path, matrixPath, gapValue);
+    }
+    public OffHeapNW(String seq1, String seq2, String match, String mismatch, String gapValue) throws SubstMatrix.MatrixDimensionException {
+        super(seq1, seq2, match, mismatch, gapValue);
+    }
+    public OffHeapNW(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
+
+    /**
+     * Sets the largest number of bytes of the flags kept in direct buffers,
+     * beyond which they are kept in a mapped file.
+     *
+     * @param directBudget  The budget, zero to always map a file.
+     */
+    public void setDirectBudget(long directBudget) {
+        this.directBudget = directBudget;
+    }
+
+    /**
+     * Sets the directory of the temporary file of the flags.
+     *
+     * @param spillDirectory  The directory, or null for the default temporary directory.
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns whether the flags of the last calculation were kept in a mapped file.
+     *
+     * @return  True for the mapped file, false for the direct buffers.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Estimates the heap taken by the calculation of two sequences of the given lengths.
+     *
+     * @param length1  Length of the first sequence.
+     * @param length2  Length of the second sequence.
+     * @return  Approximate number of bytes needed for the rolling rows and the flags of one row.
+     */
+    static long estimatedHeapBytes(int length1, int length2) {
+        return (3L * Double.BYTES + Byte.BYTES) * (length2 + 1);
+    }
+
+    /**
+     * Entry point for the calculation.
+     * Fills in the flags and traces back one alignment, deleting the flags afterwards.
+     *
+     * @throws UncheckedIOException  If the temporary file of the flags cannot be created.
+     */
+    @Override
+    void calculate() {
+        long start = System.nanoTime();
+        int m = seq1.length() + 1;
+        int n = seq2.length() + 1;
+        try (TracebackStore flags = TracebackStore.allocate((long) m * n, directBudget, spillDirectory)) {
+            mapped = flags.isMapped();
+            switch (gapPenalty.getType()) {
+                case AFFINE:
+                    score = fillAffine(flags);
+                    break;
+                case LINEAR:
+                    score = fillLinear(flags);
+                    break;
+                case ERROR:
+                    throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not initialized properly");
+            }
+            reportFill(start, (long) (m - 1) * (n - 1), flags.size() + estimatedHeapBytes(m - 1, n - 1));
+            start = System.nanoTime();
+            results = new ArrayList<>();
+            results.add(traceback(flags));
+            reportTraceback(start, results);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores the flags of the first row, all leading to the left.
+     *
+     * @param flags  The store of the flags.
+     * @param row  The flags of one row.
+     */
+    private static void firstRow(TracebackStore flags, byte[] row) {
+        for (int column = 1; column < row.length; column++) {
+            row[column] = LEFT;
+        }
+        flags.put(0, row, row.length);
+        row[0] = UP;
+    }
+
+    /**
+     * Fills in the flags by the rules of {@link NW#assignLinearValueAndParent(int, int, int, int)}.
+     *
+     * @param flags  The store of the flags.
+     * @return  The value of the last node.
+     */
+    private double fillLinear(TracebackStore flags) {
+        int n = seq2.length() + 1;
+        double gap = gapPenalty.linearPart();
+        double[] best = new double[n];
+        byte[] row = new byte[n];
+        for (int column = 0; column < n; column++) {
+            best[column] = (double) column * (-1) * gap;
+        }
+        firstRow(flags, row);
+        for (int i = 1; i <= encoded1.length; i++) {
+            int base = encoded1[i - 1] * stride;
+            double northWest = best[0];
+            best[0] = (double) i * (-1) * gap;
+            double left = best[0];
+            for (int column = 1; column < n; column++) {
+                double up = best[column];
+                double northWestValue = northWest + scores[base + encoded2[column - 1]];
+                double leftValue = left - gap;
+                double upValue = up - gap;
+                double endValue = northWestValue;
+                byte flag = 0;
+                if (northWestValue >= leftValue && northWestValue >= upValue) {
+                    flag |= DIAGONAL;
+                }
+                if (leftValue >= northWestValue && leftValue >= upValue) {
+                    flag |= LEFT;
+                    endValue = leftValue;
+                }
+                if (upValue >= northWestValue && upValue >= leftValue) {
+                    flag |= UP;
+                    endValue = upValue;
+                }
+                best[column] = endValue;
+                row[column] = flag;
+                left = endValue;
+                northWest = up;
+            }
+            flags.put((long) i * n, row, n);
+        }
+        return best[n - 1];
+    }
+
+    /**
+     * Fills in the flags by the rules of {@link NW#assignAffValueAndParent(int, int)}.
+     *
+     * @param flags  The store of the flags.
+     * @return  The value of the last node.
+     */
+    private double fillAffine(TracebackStore flags) {
+        int n = seq2.length() + 1;
+        double open = gapPenalty.countAffine(1);
+        double extend = gapPenalty.linearPart();
+        double[] best = new double[n];
+        double[] deleteValues = new double[n];
+        byte[] row = new byte[n];
+        for (int column = 1; column < n; column++) {
+            best[column] = (double) (-1) * gapPenalty.countAffine(column);
+        }
+        firstRow(flags, row);
+        for (int i = 1; i <= encoded1.length; i++) {
+            int base = encoded1[i - 1] * stride;
+            double northWest = best[0];
+            best[0] = (double) (-1) * gapPenalty.countAffine(i);
+            double left = best[0];
+            double insert = Double.NEGATIVE_INFINITY;
+            for (int column = 1; column < n; column++) {
+                double up = best[column];
+                double northWestValue = northWest + scores[base + encoded2[column - 1]];
+                double endValue = northWestValue;
+                byte flag = 0;
+                double openValue = left - open;
+                double extendValue = column > 2 ? insert - extend : Double.NEGATIVE_INFINITY;
+                insert = Math.max(openValue, extendValue);
+                flag |= openValue == insert ? INSERT_OPEN : 0;
+                flag |= extendValue == insert ? INSERT_EXTEND : 0;
+                openValue = up - open;
+                extendValue = i > 2 ? deleteValues[column] - extend : Double.NEGATIVE_INFINITY;
+                double delete = Math.max(openValue, extendValue);
+                deleteValues[column] = delete;
+                flag |= openValue == delete ? DELETE_OPEN : 0;
+                flag |= extendValue == delete ? DELETE_EXTEND : 0;
+                if (northWestValue >= insert && northWestValue >= delete) {
+                    flag |= DIAGONAL;
+                }
+                if (insert >= northWestValue && insert >= delete) {
+                    flag |= LEFT;
+                    endValue = insert;
+                }
+                if (delete >= northWestValue && delete >= insert) {
+                    flag |= UP;
+                    endValue = delete;
+                }
+                best[column] = endValue;
+                row[column] = flag;
+                left = endValue;
+                northWest = up;
+            }
+            flags.put((long) i * n, row, n);
+        }
+        return best[n - 1];
+    }
+
+    /**
+     * Traces back the alignment taking the first flagged move in the order
+     * of {@link TieBreak#DIAGONAL_FIRST}, and the opening of a gap before its extension.
+     *
+     * @param flags  The store of the flags.
+     * @return  The alignment of the whole sequences.
+     */
+    private Alignment traceback(TracebackStore flags) {
+        Alignment.Builder alignment = new Alignment.Builder(seq1, seq2);
+        long n = seq2.length() + 1;
+        boolean affine = gapPenalty.getType() == GapPenalty.Type.AFFINE;
+        int i = seq1.length();
+        int j = seq2.length();
+        byte gap = 0;
+        while (i > 0 || j > 0) {
+            byte flag = flags.get(i * n + j);
+            if (gap == 0) {
+                if ((flag & DIAGONAL) != 0) {
+                    alignment.pair(i - 1, j - 1);
+                    i--;
+                    j--;
+                    continue;
+                }
+                gap = (flag & LEFT) != 0 ? LEFT : UP;
+                if (!affine || i == 0 || j == 0) {
+                    alignment.add(gap == LEFT ? Alignment.DELETE : Alignment.INSERT);
+                    i -= gap == UP ? 1 : 0;
+                    j -= gap == LEFT ? 1 : 0;
+                    gap = 0;
+                }
+                continue;
+            }
+            if (gap == LEFT) {
+                alignment.add(Alignment.DELETE);
+                j--;
+                gap = (flag & INSERT_OPEN) != 0 ? 0 : LEFT;
+            }
+            else {
+                alignment.add(Alignment.INSERT);
+                i--;
+                gap = (flag & DELETE_OPEN) != 0 ? 0 : UP;
+            }
+        }
+        return alignment.build(score, 0, 0);
+    }
+
+    /**
+     * Computes the alignment with the flags kept outside of the heap.
+     *
+     * @param maxCount  The largest number of alignments to return.
+     * @param tieBreak  Ignored, as only one alignment is found.
+     * @return  Stream of at most one alignment.
+     */
+    @Override
+    public Stream<Alignment> optimalAlignments(int maxCount, TieBreak tieBreak) {
+        calculate();
+        return results.stream().limit(Math.max(0, maxCount));
+    }
+}
@@ -2,15 +2,69 @@ package nprg013.zapoctovy_program.nwsw;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The parent class to both of the algorithm classes, holding
  * fields and methods common to both.
  */
 public abstract class PSA {
+    /**
+     * Traceback flag of a node whose value comes from the node to the up and left.
+     */
+    static final byte DIAGONAL = 1;
+    /**
+     * Traceback flag of a node whose value comes from a gap in the first sequence,
+     * that is from the node to the left.
+     */
+    static final byte LEFT = 2;
+    /**
+     * Traceback flag of a node whose value comes from a gap in the second sequence,
+     * that is from the node above.
+     */
+    static final byte UP = 4;
+    /**
+     * Traceback flag of a node whose affine gap in the first sequence
+     * has been opened at the node to the left.
+     */
+    static final byte INSERT_OPEN = 8;
+    /**
+     * Traceback flag of a node whose affine gap in the first sequence
+     * extends the gap of the node to the left.
+     */
+    static final byte INSERT_EXTEND = 16;
+    /**
+     * Traceback flag of a node whose affine gap in the second sequence
+     * has been opened at the node above.
+     */
+    static final byte DELETE_OPEN = 32;
+    /**
+     * Traceback flag of a node whose affine gap in the second sequence
+     * extends the gap of the node above.
+     */
+    static final byte DELETE_EXTEND = 64;
+    /**
+     * The largest number of nodes of a table kept in arrays indexed by ints.
+     */
+    static final long MAX_TABLE_NODES = Integer.MAX_VALUE;
+    /**
+     * Side of the tiles of the parallel fill suggested for long sequences.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+    /**
+     * Number of columns of one strip of the blocked fill, so that the part of the previous row,
+     * of its flags and of the gap states used by a strip stays in the first level cache.
+     */
+    static final int BLOCK_COLUMNS = 1024;
+    /**
+     * Value of the gap states of the integer scoring standing for minus infinity,
+     * low enough never to win and high enough not to overflow when decreased.
+     */
+    static final int MINUS_INFINITY = Integer.MIN_VALUE / 2;
     /**
      * The first sequence.
      */
@@ -19,37 +73,151 @@ public abstract class PSA {
      * The second sequence.
      */
     String seq2;
+    /**
+     * The first sequence translated to the codes of the {@link #substMatrix}.
+     */
+    byte[] encoded1;
+    /**
+     * The second sequence translated to the codes of the {@link #substMatrix}.
+     */
+    byte[] encoded2;
     SubstMatrix substMatrix;
+    /**
+     * The flat table of scores of the {@link #substMatrix}.
+     */
+    double[] scores;
+    /**
+     * Length of one row of the {@link #scores}.
+     */
+    int stride;
     GapPenalty gapPenalty;
     /**
-     * Collection of parents of each node in the table, used
+     * Combination of the traceback flags of each node in the table,
+     * indexed by the int representation of its position and used
      * for traceback over the filled in table.
      */
-    Map<Integer,Integer> parents;
+    byte[] traceback;
     /**
      * The table holding used to hold and calculate the values
      * of the algorithm computation.
      */
     double[][] table;
+    /**
+     * The table used instead of the {@link #table} by the blocked fill, see {@link #setBlockedFill(boolean)},
+     * held in one array row by row, so that a node is found by its position
+     * without any division.
+     */
+    double[] cells;
+    /**
+     * The number of columns of the {@link #cells}.
+     */
+    int cellColumns;
+    /**
+     * True if the table is filled by the blocked fill.
+     */
+    boolean blockedFill;
+    /**
+     * The table used instead of the {@link #table} by the integer scoring,
+     * holding the values multiplied by the {@link #scale}.
+     */
+    int[][] integerTable;
+    /**
+     * True if the values are computed in integers, see {@link #setIntegerScoring(boolean)}.
+     */
+    boolean integerScoring;
+    /**
+     * The power of ten by which all the scores and the gap penalties are multiplied
+     * to be whole, set along with the {@link #integerTable}.
+     */
+    int scale;
+    /**
+     * The {@link #scores} multiplied by the {@link #scale}.
+     */
+    int[] integerScores;
+    /**
+     * The linear part of the gap penalty multiplied by the {@link #scale}.
+     */
+    int integerGap;
+    /**
+     * The affine part of the gap penalty multiplied by the {@link #scale},
+     * zero for the linear gap penalty.
+     */
+    int integerGapBase;
     /**
      * Results in form of the list in case there are multiple
      * equally correct alignments.
-     * Due to the algorithm's character, stored sequences
-     * are reversed.
      */
-    List<StringBuilder[]> results;
+    List<Alignment> results;
+    /**
+     * The score of the optimal alignments, set along with the {@link #results}.
+     */
+    double score;
+    /**
+     * Side of the square tiles of the parallel fill, or zero for filling
+     * the table serially row by row.
+     */
+    int tileSize;
+    /**
+     * The pool running the tiles of the parallel fill.
+     */
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    /**
+     * The metrics the phases of the calculation are reported into.
+     */
+    Metrics metrics = Metrics.NONE;
+    /**
+     * The time of reading the inputs and of encoding the sequences by the constructor,
+     * reported once the {@link #metrics} are set.
+     */
+    private long parseNanos;
+    private long encodeNanos;
     public PSA(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        long start = System.nanoTime();
         LoadSeq seqs = new LoadSeq(seq1path, seq2path);
         this.seq1 = seqs.getFirst();
         this.seq2 = seqs.getSecond();
-        this.substMatrix = new SubstMatrix(matrixPath);
+        this.substMatrix = MatrixRegistry.get(matrixPath);
         this.gapPenalty = new GapPenalty(gapValue);
+        parseNanos = System.nanoTime() - start;
+        encode();
     }
     public PSA(String seq1, String seq2, String matchValue, String mismatchValue, String gapValue) throws SubstMatrix.MatrixDimensionException {
         this.seq1 = seq1;
         this.seq2 = seq2;
-        this.substMatrix = new SubstMatrix(matchValue, mismatchValue);
+        this.substMatrix = new SubstMatrix(matchValue, mismatchValue, seq1, seq2);
         this.gapPenalty = new GapPenalty(gapValue);
+        encode();
+    }
+    public PSA(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        this.seq1 = seq1;
+        this.seq2 = seq2;
+        this.substMatrix = substMatrix;
+        this.gapPenalty = gapPenalty;
+        encode();
+    }
+
+    /**
+     * Translates both sequences to codes once, so that the calculation
+     * looks up the scores without any searching.
+     */
+    private void encode() {
+        long start = System.nanoTime();
+        encoded1 = substMatrix.encode(seq1);
+        encoded2 = substMatrix.encode(seq2);
+        scores = substMatrix.scores();
+        stride = substMatrix.size();
+        encodeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Method for retrieving the similarity score of the symbols
+     * corresponding to a position in the table.
+     *
+     * @param position  Int representation of table position.
+     * @return  Score of the symbols of both sequences.
+     */
+    protected double similarity(int position) {
+        return scores[encoded1[seq1position(position)] * stride + encoded2[seq2position(position)]];
     }
 
     /**
@@ -58,11 +226,217 @@ public abstract class PSA {
      * @param position  Int representation of table position.
      * @return  Value held at the respective position in the table.
      */
-    protected Double tableValue(int position) {
-
+    protected double tableValue(int position) {
+        if (cells != null) {
+            return cells[position];
+        }
+        if (integerTable != null) {
+            return (double) integerTable[position / columns()][position % columns()] / scale;
+        }
         return table[position / table[0].length][position % table[0].length];
     }
 
+    /**
+     * Returns the value of a node of the {@link #integerTable}.
+     *
+     * @param position  Int representation of table position.
+     * @return  The value multiplied by the {@link #scale}.
+     */
+    int integerValue(int position) {
+        return integerTable[position / integerTable[0].length][position % integerTable[0].length];
+    }
+
+    /**
+     * Returns the number of rows of the table in use.
+     *
+     * @return  The length of the first sequence plus one.
+     */
+    int rows() {
+        if (cells != null) {
+            return cells.length / cellColumns;
+        }
+        return table != null ? table.length : integerTable.length;
+    }
+
+    /**
+     * Returns the number of columns of the table in use.
+     *
+     * @return  The length of the second sequence plus one.
+     */
+    int columns() {
+        if (cells != null) {
+            return cellColumns;
+        }
+        return table != null ? table[0].length : integerTable[0].length;
+    }
+
+    /**
+     * Returns the memory taken by the table in use and the traceback flags.
+     *
+     * @return  Approximate number of bytes, without the rows of the gap states.
+     */
+    long tableBytes() {
+        return (long) rows() * columns() * ((integerTable == null ? Double.BYTES : Integer.BYTES) + Byte.BYTES);
+    }
+
+    /**
+     * Counts the nodes of a table kept in arrays indexed by ints, failing fast
+     * if there are more of them than such an array can hold.
+     *
+     * @param rows  The number of rows.
+     * @param columns  The number of columns.
+     * @return  The number of the nodes.
+     * @throws IllegalStateException  If there are more than {@link #MAX_TABLE_NODES} nodes.
+     */
+    static int tableNodes(int rows, int columns) {
+        long nodes = (long) rows * columns;
+        if (nodes > MAX_TABLE_NODES) {
+            throw new IllegalStateException("The table of " + rows + " x " + columns + " nodes does not fit into an array");
+        }
+        return (int) nodes;
+    }
+
+    /**
+     * Allocates the table of doubles, in one array for the blocked fill.
+     *
+     * @param m  The number of rows.
+     * @param n  The number of columns.
+     */
+    void allocateTable(int m, int n) {
+        integerTable = null;
+        if (blockedFill) {
+            table = null;
+            cells = new double[tableNodes(m, n)];
+            cellColumns = n;
+        }
+        else {
+            cells = null;
+            table = new double[m][n];
+        }
+    }
+
+    /**
+     * Sets the value of a node of the table of doubles.
+     *
+     * @param row  The row of the node.
+     * @param column  The column of the node.
+     * @param value  The value.
+     */
+    void setTableValue(int row, int column, double value) {
+        if (cells != null) {
+            cells[row * cellColumns + column] = value;
+        }
+        else {
+            table[row][column] = value;
+        }
+    }
+
+    /**
+     * Prepares the integer scoring, finding the smallest power of ten which makes
+     * all the scores of the matrix and both parts of the gap penalty whole,
+     * and multiplying them by it. The values of the table then are exact sums
+     * of whole numbers, so the equal moves are always recognized as such,
+     * and divided by the scale they give the same score as the arithmetic
+     * of doubles, up to its rounding errors.
+     *
+     * @throws ArithmeticException  If some value has more than {@link SubstMatrix#MAX_DECIMALS}
+     *                              decimal places, or the values of the table could overflow.
+     */
+    void prepareIntegers() {
+        double gapBase = gapPenalty.getType() == GapPenalty.Type.AFFINE ? gapPenalty.countAffine(0) : 0.0;
+        int linearScale = SubstMatrix.decimalScale(gapPenalty.linearPart());
+        int baseScale = SubstMatrix.decimalScale(gapBase);
+        if (substMatrix.scale() == 0 || linearScale == 0 || baseScale == 0) {
+            throw new ArithmeticException("The scores cannot be scaled to integers");
+        }
+        scale = Math.max(substMatrix.scale(), Math.max(linearScale, baseScale));
+        int[] matrixScores = substMatrix.integerScores();
+        integerScores = new int[matrixScores.length];
+        long largest = 0;
+        for (int i = 0; i < matrixScores.length; i++) {
+            integerScores[i] = Math.multiplyExact(matrixScores[i], scale / substMatrix.scale());
+            largest = Math.max(largest, Math.abs((long) integerScores[i]));
+        }
+        integerGap = (int) Math.round(gapPenalty.linearPart() * scale);
+        integerGapBase = (int) Math.round(gapBase * scale);
+        long bound = (largest + Math.abs((long) integerGap) + Math.abs((long) integerGapBase)) * ((long) seq1.length() + seq2.length() + 2);
+        if (bound >= -(long) MINUS_INFINITY) {
+            throw new ArithmeticException("The scores could overflow the integers");
+        }
+    }
+
+    /**
+     * Sets whether the table is computed in integers, with the scores
+     * and the gap penalties multiplied by a power of ten, instead of doubles.
+     * This takes half of the memory, and the equal moves are recognized
+     * exactly. The traceback and the scores reported are the same.
+     *
+     * @param integerScoring  True for the integer scoring, false, the default, for doubles.
+     */
+    public void setIntegerScoring(boolean integerScoring) {
+        this.integerScoring = integerScoring;
+    }
+
+    /**
+     * Sets whether the table of doubles is filled by the blocked fill, which holds
+     * it in one array instead of an array per row, and computes it in strips
+     * of {@link #BLOCK_COLUMNS} columns by loops walking the positions of the nodes,
+     * so that no division is needed and the nodes used stay in the cache.
+     * The table and the traceback are the same. The integer scoring is not affected.
+     *
+     * @param blockedFill  True for the blocked fill, false, the default, for the fill node by node.
+     */
+    public void setBlockedFill(boolean blockedFill) {
+        this.blockedFill = blockedFill;
+    }
+
+    /**
+     * Sets the metrics the calculation reports into, by default {@link Metrics#NONE}.
+     * The reading of the inputs and the encoding of the sequences, done
+     * by the constructor, are reported to them at once.
+     *
+     * @param metrics  The metrics.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        if (parseNanos > 0) {
+            metrics.phase(Metrics.Phase.PARSE, parseNanos);
+        }
+        metrics.phase(Metrics.Phase.ENCODE, encodeNanos);
+    }
+
+    /**
+     * Reports a finished fill to the {@link #metrics}.
+     *
+     * @param start  The {@link System#nanoTime()} when the fill started.
+     * @param cells  The number of the computed nodes.
+     * @param bytes  Approximate number of bytes of the table.
+     */
+    void reportFill(long start, long cells, long bytes) {
+        metrics.phase(Metrics.Phase.FILL, System.nanoTime() - start);
+        metrics.cells(cells);
+        metrics.tableBytes(bytes);
+    }
+
+    /**
+     * Reports a finished traceback to the {@link #metrics}.
+     *
+     * @param start  The {@link System#nanoTime()} when the traceback started.
+     * @param alignments  The alignments traced back.
+     */
+    void reportTraceback(long start, List<Alignment> alignments) {
+        metrics.phase(Metrics.Phase.TRACEBACK, System.nanoTime() - start);
+        long diagonal = 0;
+        long left = 0;
+        long up = 0;
+        for (Alignment alignment : alignments) {
+            diagonal += alignment.columns(Alignment.MATCH) + alignment.columns(Alignment.MISMATCH);
+            left += alignment.columns(Alignment.DELETE);
+            up += alignment.columns(Alignment.INSERT);
+        }
+        metrics.traceback(diagonal, left, up);
+    }
+
     /**
      * Method that determines the int value
      * of a position to the up and left from
@@ -72,7 +446,7 @@ public abstract class PSA {
      * @return  The position adjacent in the up left direction.
      */
     protected int northWest(int position) {
-        return position - 1 - table[0].length;
+        return position - 1 - columns();
     }
 
     /**
@@ -94,7 +468,7 @@ public abstract class PSA {
      * @return  The position above the current one.
      */
     protected int up(int position) {
-        return position - table[0].length;
+        return position - columns();
     }
 
     /**
@@ -106,7 +480,7 @@ public abstract class PSA {
      * @return  Corresponding position of the sequence.
      */
     protected int seq1position(int current) {
-        return (current / table[0].length) - 1;
+        return (current / columns()) - 1;
     }
 
     /**
@@ -118,7 +492,7 @@ public abstract class PSA {
      * @return  Corresponding position of the sequence.
      */
     protected int seq2position(int current) {
-        return (current % table[0].length) - 1;
+        return (current % columns()) - 1;
     }
 
     /**
@@ -133,13 +507,7 @@ public abstract class PSA {
      * gap calculation.
      */
     void countAffValue() {
-        int m = table.length;
-        int n = table[0].length;
-        for (int i = 0; i < m * n; i++) {
-            if (i % n == 0) {continue;}
-            if (i / n == 0) {continue;}
-            assignAffValueAndParent(i - n - 1, i);
-        }
+        fill(true);
         backtrack();
     }
 
@@ -159,18 +527,112 @@ public abstract class PSA {
      * gap calculation.
      */
     void countLinValue() {
-        int m = table.length;
-        int n = table[0].length;
-        //div n == radek
-        //mod n == sloupec
-        for (int i = 0; i < m * n; i++) {
-            if (i % n == 0) {continue;}
-            if (i / n == 0) {continue;}
-            assignLinearValueAndParent(i - n - 1, i - 1, i - n, i);
-        }
+        fill(false);
         backtrack();
     }
 
+    /**
+     * Visits all the nodes except the padding, either row by row, or,
+     * if the {@link #tileSize} is set and the table spans more than one tile,
+     * in square tiles along the anti-diagonals of the tile grid.
+     * <p>
+     * A tile only depends on the tiles to the left and above it, so all the
+     * tiles of one anti-diagonal are filled at once on the {@link #pool},
+     * and the next anti-diagonal starts once they are all finished.
+     * Each node is computed from the same neighbours in either order,
+     * so the table and the traceback come out the same.
+     *
+     * @param affine  True for the affine gap calculation, false for the linear one.
+     */
+    void fill(boolean affine) {
+        int m = rows();
+        int n = columns();
+        long start = System.nanoTime();
+        if (tileSize <= 0 || m - 1 <= tileSize || n - 1 <= tileSize) {
+            if (cells != null) {
+                for (int leftmost = 1; leftmost < n; leftmost += BLOCK_COLUMNS) {
+                    fillCells(1, m, leftmost, Math.min(leftmost + BLOCK_COLUMNS, n), affine);
+                }
+            }
+            else {
+                fillTile(1, m, 1, n, affine);
+            }
+            reportFill(start, (long) (m - 1) * (n - 1), tableBytes());
+            return;
+        }
+        int tileRows = (m - 2) / tileSize + 1;
+        int tileColumns = (n - 2) / tileSize + 1;
+        for (int diagonal = 0; diagonal < tileRows + tileColumns - 1; diagonal++) {
+            List<ForkJoinTask<?>> tiles = new ArrayList<>();
+            for (int tileRow = Math.max(0, diagonal - tileColumns + 1); tileRow <= Math.min(diagonal, tileRows - 1); tileRow++) {
+                int top = 1 + tileRow * tileSize;
+                int leftmost = 1 + (diagonal - tileRow) * tileSize;
+                tiles.add(ForkJoinTask.adapt(() -> fillTile(top, Math.min(top + tileSize, m), leftmost, Math.min(leftmost + tileSize, n), affine)));
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tiles);
+            }));
+        }
+        reportFill(start, (long) (m - 1) * (n - 1), tableBytes());
+    }
+
+    /**
+     * Visits the nodes of a rectangular part of the table row by row.
+     *
+     * @param top  The first row.
+     * @param bottom  The row after the last one.
+     * @param leftmost  The first column.
+     * @param rightmost  The column after the last one.
+     * @param affine  True for the affine gap calculation, false for the linear one.
+     */
+    private void fillTile(int top, int bottom, int leftmost, int rightmost, boolean affine) {
+        if (cells != null) {
+            fillCells(top, bottom, leftmost, rightmost, affine);
+            return;
+        }
+        int n = columns();
+        for (int row = top; row < bottom; row++) {
+            for (int i = row * n + leftmost; i < row * n + rightmost; i++) {
+                if (integerTable != null) {
+                    if (affine) {
+                        assignIntegerAffValueAndParent(i - n - 1, i);
+                    }
+                    else {
+                        assignIntegerLinearValueAndParent(i - n - 1, i - 1, i - n, i);
+                    }
+                }
+                else if (affine) {
+                    assignAffValueAndParent(i - n - 1, i);
+                }
+                else {
+                    assignLinearValueAndParent(i - n - 1, i - 1, i - n, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the side of the square tiles in which the table is filled
+     * in parallel. Zero, the default, fills the table serially.
+     *
+     * @param tileSize  Number of rows and columns of one tile.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Computes a rectangular part of the {@link #cells} row by row, by the same rules
+     * and with the same flags as the methods assigning the nodes one by one.
+     *
+     * @param top  The first row.
+     * @param bottom  The row after the last one.
+     * @param leftmost  The first column.
+     * @param rightmost  The column after the last one.
+     * @param affine  True for the affine gap calculation, false for the linear one.
+     */
+    abstract void fillCells(int top, int bottom, int leftmost, int rightmost, boolean affine);
+
     /**
      * Method that assigns the correct value
      * and determines paternity for each node
@@ -183,35 +645,118 @@ public abstract class PSA {
      */
     abstract void assignLinearValueAndParent(int northWest, int left, int up, int current);
 
+    /**
+     * The counterpart of {@link #assignAffValueAndParent(int, int)}
+     * for the {@link #integerTable}.
+     *
+     * @param northWest  The {@link #northWest(int position)} of current position.
+     * @param current  The current position.
+     */
+    abstract void assignIntegerAffValueAndParent(int northWest, int current);
+
+    /**
+     * The counterpart of {@link #assignLinearValueAndParent(int, int, int, int)}
+     * for the {@link #integerTable}.
+     *
+     * @param northWest  The {@link #northWest(int position)} of current position.
+     * @param left  The node to the left of current position.
+     * @param up  The node above the current position.
+     * @param current  The current position.
+     */
+    abstract void assignIntegerLinearValueAndParent(int northWest, int left, int up, int current);
+
     /**
      * Method used to retrieve found alignments from the table.
      */
     abstract void backtrack();
 
+    /**
+     * Computes only the score of the optimal alignment and the position where it ends,
+     * keeping one row of the table and of each gap state along the shorter sequence
+     * instead of the table and the traceback. The score is the same as the one
+     * of {@link #calculate()}.
+     *
+     * @return  The score and the end of the alignment.
+     */
+    public abstract AlignmentScore scoreOnly();
+
+    /**
+     * The sequence along which the rows of the score only calculation are kept,
+     * that is the shorter one.
+     *
+     * @return  The shorter of the encoded sequences.
+     */
+    byte[] innerSequence() {
+        return encoded2.length <= encoded1.length ? encoded2 : encoded1;
+    }
+
+    /**
+     * The sequence across which the score only calculation proceeds row by row,
+     * that is the longer one.
+     *
+     * @return  The longer of the encoded sequences.
+     */
+    byte[] outerSequence() {
+        return encoded2.length <= encoded1.length ? encoded1 : encoded2;
+    }
+
+    /**
+     * The distance in the {@link #scores} between the rows of two consecutive
+     * codes of the {@link #outerSequence()}.
+     *
+     * @return  Step of the score index for the outer sequence.
+     */
+    int outerStride() {
+        return encoded2.length <= encoded1.length ? stride : 1;
+    }
+
     /**
      * Method used to print all the found results.
      */
     void printResults() {
         ResourceBundle bundle = ResourceBundle.getBundle("prompts");
         int counter = 1;
-        for (StringBuilder[] result: results) {
+        for (Alignment result: results) {
+            String[] alignment = result.getAlignment();
             System.out.println(bundle.getString("option") + counter);
-            System.out.println(result[0].reverse());
-            System.out.println(result[1].reverse());
+            System.out.println(alignment[0]);
+            System.out.println(alignment[1]);
             counter++;
         }
     }
 
     /**
-     * Method used to retrieve the results for further use.
+     * Method used to retrieve the score of the optimal alignments.
+     *
+     * @return  The score of the alignments, which need to be calculated
+     *          beforehand using the {@link #calculate()} method.
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the found alignments, with their coordinates and operations
+     * but without writing out the aligned sequences.
+     *
+     * @return  The optimal alignments, which need to be calculated
+     *          beforehand using the {@link #calculate()} method.
+     */
+    public List<Alignment> getAlignments() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * Method used to retrieve the results for further use. The aligned
+     * sequences are written out anew by every call.
      *
      * @return  List of pairs of sequences with the optimal alignment, which
      *          need to be calculated beforehand using the {@link #calculate()} method.
      */
     List<String[]> getResults() {
         List<String[]> output = new ArrayList<>();
-        for (StringBuilder[] result: results) {
-            output.add(new String[]{result[0].reverse().toString(), result[1].reverse().toString()});
+        for (Alignment result: results) {
+            output.add(result.getAlignment());
         }
         return output;
     }
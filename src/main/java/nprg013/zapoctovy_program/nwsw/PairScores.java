@@ -0,0 +1,209 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The scores of all the pairs of a set of sequences, kept as floats
+ * of the upper triangle of the symmetric matrix, diagonal included,
+ * row after row, so that n sequences take n(n + 1) / 2 floats.
+ * <p>
+ * The floats are kept either on the heap or in a file mapped into memory,
+ * in chunks of {@link #CHUNK} floats. The file starts with the header of
+ * {@link #HEADER_BYTES} bytes, the magic bytes and the number of sequences,
+ * followed by the floats in the little endian order.
+ */
+public class PairScores implements AutoCloseable {
+    private static final byte[] MAGIC = {'N', 'W', 'S', 'W', 'P', 'S', 0, 1};
+    private static final int HEADER_BYTES = 16;
+    private static final int CHUNK = 1 << 28;
+    private final int size;
+    private final FloatBuffer[] chunks;
+    /**
+     * The mapped file and its chunks, null for the scores on the heap.
+     */
+    private final FileChannel channel;
+    private final MappedByteBuffer[] mapped;
+
+    private PairScores(int size, FloatBuffer[] chunks) {
+        this.size = size;
+        this.chunks = chunks;
+        this.channel = null;
+        this.mapped = null;
+    }
+
+    private PairScores(int size, FileChannel channel, FileChannel.MapMode mode) throws IOException {
+        this.size = size;
+        this.channel = channel;
+        long count = count(size);
+        mapped = new MappedByteBuffer[(int) ((count + CHUNK - 1) / CHUNK)];
+        chunks = new FloatBuffer[mapped.length];
+        for (int i = 0; i < mapped.length; i++) {
+            long start = (long) i * CHUNK;
+            mapped[i] = channel.map(mode, HEADER_BYTES + Float.BYTES * start, Float.BYTES * Math.min(CHUNK, count - start));
+            chunks[i] = mapped[i].order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    /**
+     * Allocates the scores of n sequences on the heap, all zero.
+     *
+     * @param size  The number of sequences.
+     * @return  The scores.
+     */
+    static PairScores onHeap(int size) {
+        long count = count(size);
+        FloatBuffer[] chunks = new FloatBuffer[(int) ((count + CHUNK - 1) / CHUNK)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = FloatBuffer.allocate((int) Math.min(CHUNK, count - (long) i * CHUNK));
+        }
+        return new PairScores(size, chunks);
+    }
+
+    /**
+     * Creates the file of the scores of n sequences, all zero, and maps it,
+     * so that the scores are written to the disk as the system pages them out.
+     *
+     * @param path  The path to the file, overwritten if it exists.
+     * @param size  The number of sequences.
+     * @return  The scores.
+     * @throws IOException  If the path is not valid.
+     */
+    static PairScores create(String path, int size) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC).putLong(size).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            return new PairScores(size, channel, FileChannel.MapMode.READ_WRITE);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the file of the scores written by {@link AllPairs#scores(String)} by mapping it.
+     *
+     * @param path  The path to the file.
+     * @return  The scores.
+     * @throws IOException  If the path is not valid or the file does not hold the scores.
+     */
+    public static PairScores open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (header.hasRemaining() || header.get(i) != MAGIC[i]) {
+                    throw new IOException(path + " is not a file of pair scores");
+                }
+            }
+            long size = header.getLong(MAGIC.length);
+            if (size < 0 || size > Integer.MAX_VALUE || channel.size() < HEADER_BYTES + Float.BYTES * count((int) size)) {
+                throw new IOException(path + " is not a file of pair scores");
+            }
+            return new PairScores((int) size, channel, FileChannel.MapMode.READ_ONLY);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the floats of the upper triangle of n sequences.
+     *
+     * @param size  The number of sequences.
+     * @return  n(n + 1) / 2.
+     */
+    static long count(int size) {
+        return (long) size * (size + 1) / 2;
+    }
+
+    /**
+     * Finds the position of a pair in the upper triangle.
+     *
+     * @param first  The index of one sequence.
+     * @param second  The index of the other sequence.
+     * @return  The position of the float of the pair.
+     * @throws IndexOutOfBoundsException  If some of the indices is out of range.
+     */
+    private long position(int first, int second) {
+        if (first < 0 || second < 0 || first >= size || second >= size) {
+            throw new IndexOutOfBoundsException("Pair (" + first + ", " + second + ") of " + size + " sequences");
+        }
+        long row = Math.min(first, second);
+        return row * size - row * (row - 1) / 2 + Math.abs(second - first);
+    }
+
+    /**
+     * Returns the number of the sequences.
+     *
+     * @return  The number of the sequences.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the score of a pair of sequences, the same in either order.
+     *
+     * @param first  The index of one sequence.
+     * @param second  The index of the other sequence.
+     * @return  The score of the optimal alignment of the two sequences.
+     * @throws IndexOutOfBoundsException  If some of the indices is out of range.
+     */
+    public float get(int first, int second) {
+        long position = position(first, second);
+        return chunks[(int) (position / CHUNK)].get((int) (position % CHUNK));
+    }
+
+    /**
+     * Stores the score of a pair of sequences, from any of the threads
+     * as long as each pair is stored by one of them.
+     *
+     * @param first  The index of one sequence.
+     * @param second  The index of the other sequence.
+     * @param score  The score.
+     */
+    void set(int first, int second, float score) {
+        long position = position(first, second);
+        chunks[(int) (position / CHUNK)].put((int) (position % CHUNK), score);
+    }
+
+    /**
+     * Writes the mapped scores to the disk, if they are kept in a file.
+     */
+    void force() {
+        if (mapped != null) {
+            for (MappedByteBuffer chunk : mapped) {
+                chunk.force();
+            }
+        }
+    }
+
+    /**
+     * Closes the mapped file, if the scores are kept in one.
+     *
+     * @throws IOException  If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
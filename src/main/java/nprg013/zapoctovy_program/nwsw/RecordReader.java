@@ -0,0 +1,29 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of the records of a database, read one by one.
+ */
+interface RecordReader extends Closeable {
+    /**
+     * Reads the next record.
+     *
+     * @return  The record, or null if the end of the database has been reached.
+     * @throws IOException  In case of file related error.
+     */
+    FastaRecord nextRecord() throws IOException;
+
+    /**
+     * Opens a database for reading, either a {@link SequenceDatabase}
+     * or a FASTA file, as recognized by its first bytes.
+     *
+     * @param path  The path to the database.
+     * @return  The reader positioned at the first record.
+     * @throws IOException  If the path is not valid.
+     */
+    static RecordReader open(String path) throws IOException {
+        return SequenceDatabase.isDatabase(path) ? new SequenceDatabase(path) : new FastaReader(path);
+    }
+}
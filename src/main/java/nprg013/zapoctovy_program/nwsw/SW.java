@@ -1,18 +1,41 @@
 package nprg013.zapoctovy_program.nwsw;
 
 import java.io.IOException;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The class that implements the Smith-Waterman Pairwise Sequence Alignment algorithm.
  */
 public class SW extends PSA {
+    /**
+     * Gotoh gap states of the affine calculation for the gap in the first
+     * sequence, kept for the last visited node of each row.
+     */
+    private double[] insertValues;
+    /**
+     * Gotoh gap states of the affine calculation for the gap in the second
+     * sequence, kept for the last visited node of each column.
+     */
+    private double[] deleteValues;
+    /**
+     * The {@link #insertValues} of the integer scoring.
+     */
+    private int[] integerInsertValues;
+    /**
+     * The {@link #deleteValues} of the integer scoring.
+     */
+    private int[] integerDeleteValues;
     public SW(String seq1path, String seq2path, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
         super(seq1path, seq2path, matrixPath, gapValue);
     }
     public SW(String seq1, String seq2, String matchValue, String mismatchValue, String gapValue) throws SubstMatrix.MatrixDimensionException {
         super(seq1, seq2, matchValue, mismatchValue, gapValue);
     }
+    public SW(String seq1, String seq2, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(seq1, seq2, substMatrix, gapPenalty);
+    }
 
     /**
      * Entry point for the calculation.
@@ -22,15 +45,32 @@ public class SW extends PSA {
      */
     @Override
     void calculate() {
-        parents = new HashMap<>();
-        table = new double[seq1.length() + 1][seq2.length() + 1];
-        for (int i = 0; i < table.length; i++) {
-            table[i][0] = 0.0;
+        int m = seq1.length() + 1;
+        int n = seq2.length() + 1;
+        int nodes = tableNodes(m, n);
+        if (integerScoring) {
+            prepareIntegers();
+            table = null;
+            cells = null;
+            integerTable = new int[m][n];
         }
-        Arrays.fill(table[0], 0.0);
+        else {
+            allocateTable(m, n);
+        }
+        traceback = new byte[nodes];
         GapPenalty.Type gapType = gapPenalty.getType();
         switch (gapType) {
             case AFFINE:
+                if (integerTable != null) {
+                    integerInsertValues = new int[m];
+                    integerDeleteValues = new int[n];
+                    Arrays.fill(integerDeleteValues, MINUS_INFINITY);
+                }
+                else {
+                    insertValues = new double[m];
+                    deleteValues = new double[n];
+                    Arrays.fill(deleteValues, Double.NEGATIVE_INFINITY);
+                }
                 countAffValue();
                 break;
             case LINEAR:
@@ -60,29 +100,25 @@ public class SW extends PSA {
      */
     @Override
     void assignLinearValueAndParent(int northWest, int left, int up, int current) {
-        int parent = -1;
-        Character seq1Char = seq1.charAt(seq1position(current));
-        Character seq2Char = seq2.charAt(seq2position(current));
-        Double comparisonValue = substMatrix.score(seq1Char, seq2Char);
+        byte flags = 0;
+        double comparisonValue = similarity(current);
         double addComparisonValue = tableValue(northWest) + comparisonValue;
         double endValue = Math.max(addComparisonValue, 0.0);
         double valueHolder = endValue;
         if (endValue > 0.0) {
-            parent = northWest;
+            flags = DIAGONAL;
         }
         endValue = Math.max(endValue, tableValue(left) - gapPenalty.linearPart());
         if (endValue > valueHolder) {
-            parent = left;
+            flags = LEFT;
             valueHolder = endValue;
         }
         endValue = Math.max(endValue, tableValue(up) - gapPenalty.linearPart());
         if (endValue > valueHolder) {
-            parent = up;
+            flags = UP;
         }
         table[current / table[0].length][current % table[0].length] = endValue;
-        if (parent >= 0) {
-            parents.put(current, parent);
-        }
+        traceback[current] = flags;
     }
 
     /**
@@ -95,6 +131,12 @@ public class SW extends PSA {
      * maximal value  of some node above the current one minus the corresponding gap penalty,
      * or maximal value of some node to the left minus the corresponding gap penalty.
      * <p>
+     * The maximal gap values are not searched for, but kept in the
+     * Gotoh gap states instead, each gap either opening from the neighbouring
+     * node or extending the gap state of that neighbour. Along with the values,
+     * the nodes where the gaps have been opened are kept, preferring the closer
+     * one in case of equality.
+     * <p>
      * If the maximum turns out to be zero, no parents are assigned, otherwise
      * it is the node that was used to calculate this maximum.
      *
@@ -103,108 +145,399 @@ public class SW extends PSA {
      */
     @Override
     void assignAffValueAndParent(int northWest, int current) {
-        int parent = -1;
-        int n = table[0].length;
-        Character seq1Char = seq1.charAt(seq1position(current));
-        Character seq2Char = seq2.charAt(seq2position(current));
-        Double comparisonValue = substMatrix.score(seq1Char, seq2Char);
+        byte flags = 0;
+        int n = columns();
+        int row = current / n;
+        int column = current % n;
+        double comparisonValue = similarity(current);
         double addComparisonValue = tableValue(northWest) + comparisonValue;
         double endValue = Math.max(addComparisonValue, 0.0);
         double valueHolder = endValue;
         if (endValue > 0.0) {
-            parent = northWest;
-        }
-        double leftMaxValueCandidate = 0.0;
-        int leftParentCandidate = -1;
-        for (int i = 1; i < current % (n); i++) {
-            if (tableValue(current - i) - gapPenalty.countAffine(i) > leftMaxValueCandidate) {
-                leftMaxValueCandidate = tableValue(current-i) - gapPenalty.countAffine(i);
-                leftParentCandidate = current - i;
+            flags = DIAGONAL;
+        }
+        byte gapFlags = 0;
+        if (column == 1) {
+            insertValues[row] = Double.NEGATIVE_INFINITY;
+        }
+        else {
+            double openValue = tableValue(left(current)) - gapPenalty.countAffine(1);
+            if (openValue >= insertValues[row] - gapPenalty.linearPart()) {
+                insertValues[row] = openValue;
+                gapFlags |= INSERT_OPEN;
+            }
+            else {
+                insertValues[row] = insertValues[row] - gapPenalty.linearPart();
+                gapFlags |= INSERT_EXTEND;
             }
         }
-        endValue = Math.max(endValue, leftMaxValueCandidate);
+        if (row > 1) {
+            double openValue = tableValue(up(current)) - gapPenalty.countAffine(1);
+            if (openValue >= deleteValues[column] - gapPenalty.linearPart()) {
+                deleteValues[column] = openValue;
+                gapFlags |= DELETE_OPEN;
+            }
+            else {
+                deleteValues[column] = deleteValues[column] - gapPenalty.linearPart();
+                gapFlags |= DELETE_EXTEND;
+            }
+        }
+        endValue = Math.max(endValue, insertValues[row]);
         if (endValue > valueHolder) {
-            parent = leftParentCandidate;
+            flags = LEFT;
             valueHolder = endValue;
         }
-        double upMaxValueCandidate = 0.0;
-        int upParentCandidate = -1;
-        for (int i = 1; i < current / (n); i++) {
-            if (tableValue(current - (n * i)) - gapPenalty.countAffine(i) > upMaxValueCandidate) {
-                upMaxValueCandidate = tableValue(current - (n * i)) - gapPenalty.countAffine(i);
-                upParentCandidate = current - (n * i);
+        endValue = Math.max(endValue, deleteValues[column]);
+        if (endValue > valueHolder) {
+            flags = UP;
+        }
+        table[row][column] = endValue;
+        traceback[current] = (byte) (flags | gapFlags);
+    }
+
+    /**
+     * Computes a part of the {@link #cells} by the rules of {@link #assignLinearValueAndParent(int, int, int, int)}
+     * or of {@link #assignAffValueAndParent(int, int)}.
+     *
+     * @param top  The first row.
+     * @param bottom  The row after the last one.
+     * @param leftmost  The first column.
+     * @param rightmost  The column after the last one.
+     * @param affine  True for the affine gap calculation, false for the linear one.
+     */
+    @Override
+    void fillCells(int top, int bottom, int leftmost, int rightmost, boolean affine) {
+        if (affine) {
+            fillAffineCells(top, bottom, leftmost, rightmost);
+        }
+        else {
+            fillLinearCells(top, bottom, leftmost, rightmost);
+        }
+    }
+
+    private void fillLinearCells(int top, int bottom, int leftmost, int rightmost) {
+        int n = cellColumns;
+        double[] cells = this.cells;
+        byte[] traceback = this.traceback;
+        double gap = gapPenalty.linearPart();
+        for (int row = top; row < bottom; row++) {
+            int base = encoded1[row - 1] * stride;
+            int current = row * n + leftmost;
+            double left = cells[current - 1];
+            double northWest = cells[current - n - 1];
+            for (int column = leftmost; column < rightmost; column++, current++) {
+                double up = cells[current - n];
+                double endValue = Math.max(northWest + scores[base + encoded2[column - 1]], 0.0);
+                double valueHolder = endValue;
+                byte flags = endValue > 0.0 ? DIAGONAL : 0;
+                endValue = Math.max(endValue, left - gap);
+                if (endValue > valueHolder) {
+                    flags = LEFT;
+                    valueHolder = endValue;
+                }
+                endValue = Math.max(endValue, up - gap);
+                if (endValue > valueHolder) {
+                    flags = UP;
+                }
+                cells[current] = endValue;
+                traceback[current] = flags;
+                left = endValue;
+                northWest = up;
             }
         }
-        endValue = Math.max(endValue, upMaxValueCandidate);
+    }
+
+    private void fillAffineCells(int top, int bottom, int leftmost, int rightmost) {
+        int n = cellColumns;
+        double[] cells = this.cells;
+        byte[] traceback = this.traceback;
+        double[] deleteValues = this.deleteValues;
+        double open = gapPenalty.countAffine(1);
+        double extend = gapPenalty.linearPart();
+        for (int row = top; row < bottom; row++) {
+            int base = encoded1[row - 1] * stride;
+            int current = row * n + leftmost;
+            double left = cells[current - 1];
+            double northWest = cells[current - n - 1];
+            double insert = insertValues[row];
+            for (int column = leftmost; column < rightmost; column++, current++) {
+                double up = cells[current - n];
+                double endValue = Math.max(northWest + scores[base + encoded2[column - 1]], 0.0);
+                double valueHolder = endValue;
+                byte flags = endValue > 0.0 ? DIAGONAL : 0;
+                byte gapFlags = 0;
+                if (column == 1) {
+                    insert = Double.NEGATIVE_INFINITY;
+                }
+                else if (left - open >= insert - extend) {
+                    insert = left - open;
+                    gapFlags |= INSERT_OPEN;
+                }
+                else {
+                    insert = insert - extend;
+                    gapFlags |= INSERT_EXTEND;
+                }
+                double delete = deleteValues[column];
+                if (row > 1) {
+                    if (up - open >= delete - extend) {
+                        delete = up - open;
+                        gapFlags |= DELETE_OPEN;
+                    }
+                    else {
+                        delete = delete - extend;
+                        gapFlags |= DELETE_EXTEND;
+                    }
+                    deleteValues[column] = delete;
+                }
+                endValue = Math.max(endValue, insert);
+                if (endValue > valueHolder) {
+                    flags = LEFT;
+                    valueHolder = endValue;
+                }
+                endValue = Math.max(endValue, delete);
+                if (endValue > valueHolder) {
+                    flags = UP;
+                }
+                cells[current] = endValue;
+                traceback[current] = (byte) (flags | gapFlags);
+                left = endValue;
+                northWest = up;
+            }
+            insertValues[row] = insert;
+        }
+    }
+
+    /**
+     * The integer counterpart of {@link #assignLinearValueAndParent(int, int, int, int)}.
+     *
+     * @param northWest  The {@link #northWest(int position)} of current position.
+     * @param left  The node to the left of current position.
+     * @param up  The node above the current position.
+     * @param current  The current position.
+     */
+    @Override
+    void assignIntegerLinearValueAndParent(int northWest, int left, int up, int current) {
+        int n = columns();
+        int row = current / n;
+        int column = current % n;
+        byte flags = 0;
+        int endValue = Math.max(integerValue(northWest) + integerScores[encoded1[row - 1] * stride + encoded2[column - 1]], 0);
+        int valueHolder = endValue;
+        if (endValue > 0) {
+            flags = DIAGONAL;
+        }
+        endValue = Math.max(endValue, integerValue(left) - integerGap);
         if (endValue > valueHolder) {
-            parent = upParentCandidate;
+            flags = LEFT;
+            valueHolder = endValue;
+        }
+        endValue = Math.max(endValue, integerValue(up) - integerGap);
+        if (endValue > valueHolder) {
+            flags = UP;
+        }
+        integerTable[row][column] = endValue;
+        traceback[current] = flags;
+    }
+
+    /**
+     * The integer counterpart of {@link #assignAffValueAndParent(int, int)},
+     * with the same gap states and the same flags.
+     *
+     * @param northWest  The node to the up left of the current one.
+     * @param current The current node.
+     */
+    @Override
+    void assignIntegerAffValueAndParent(int northWest, int current) {
+        byte flags = 0;
+        int n = columns();
+        int row = current / n;
+        int column = current % n;
+        int endValue = Math.max(integerValue(northWest) + integerScores[encoded1[row - 1] * stride + encoded2[column - 1]], 0);
+        int valueHolder = endValue;
+        if (endValue > 0) {
+            flags = DIAGONAL;
+        }
+        int open = integerGapBase + integerGap;
+        byte gapFlags = 0;
+        if (column == 1) {
+            integerInsertValues[row] = MINUS_INFINITY;
+        }
+        else {
+            int openValue = integerValue(current - 1) - open;
+            if (openValue >= integerInsertValues[row] - integerGap) {
+                integerInsertValues[row] = openValue;
+                gapFlags |= INSERT_OPEN;
+            }
+            else {
+                integerInsertValues[row] = integerInsertValues[row] - integerGap;
+                gapFlags |= INSERT_EXTEND;
+            }
+        }
+        if (row > 1) {
+            int openValue = integerValue(current - n) - open;
+            if (openValue >= integerDeleteValues[column] - integerGap) {
+                integerDeleteValues[column] = openValue;
+                gapFlags |= DELETE_OPEN;
+            }
+            else {
+                integerDeleteValues[column] = integerDeleteValues[column] - integerGap;
+                gapFlags |= DELETE_EXTEND;
+            }
+        }
+        endValue = Math.max(endValue, integerInsertValues[row]);
+        if (endValue > valueHolder) {
+            flags = LEFT;
+            valueHolder = endValue;
+        }
+        endValue = Math.max(endValue, integerDeleteValues[column]);
+        if (endValue > valueHolder) {
+            flags = UP;
+        }
+        integerTable[row][column] = endValue;
+        traceback[current] = (byte) (flags | gapFlags);
+    }
+
+    /**
+     * Computes the score of the best local alignment from two rolling rows, plus
+     * one row of the gap state across the rows under the affine gap penalty.
+     * The gap state along the row only needs the last visited node, and no gap
+     * leaves the first row or column, so the rows can run along either sequence.
+     * <p>
+     * If the highest value is reached at more nodes, the end is the first of them
+     * in the order of {@link #backtrack()}, that is the one closest to the start
+     * of the first sequence and then of the second one.
+     *
+     * @return  The score and the end of the best local alignment.
+     */
+    @Override
+    public AlignmentScore scoreOnly() {
+        byte[] outer = outerSequence();
+        byte[] inner = innerSequence();
+        int outerStride = outerStride();
+        boolean transposed = outerStride == 1;
+        int innerStride = transposed ? stride : 1;
+        int n = inner.length;
+        double[] best = new double[n + 1];
+        double[] delete = new double[n + 1];
+        Arrays.fill(delete, Double.NEGATIVE_INFINITY);
+        boolean affine;
+        switch (gapPenalty.getType()) {
+            case AFFINE:
+                affine = true;
+                break;
+            case LINEAR:
+                affine = false;
+                break;
+            default:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not properly initialized");
         }
-        table[current / n][current % n] = endValue;
-        if (parent >= 0) {
-            parents.put(current, parent);
+        double open = affine ? gapPenalty.countAffine(1) : gapPenalty.linearPart();
+        double extend = gapPenalty.linearPart();
+        double maxValue = 0.0;
+        int maxOuter = 0;
+        int maxInner = 0;
+        for (int i = 1; i <= outer.length; i++) {
+            int base = outer[i - 1] * outerStride;
+            double diagonal = 0.0;
+            double insert = Double.NEGATIVE_INFINITY;
+            for (int j = 1; j <= n; j++) {
+                double up = best[j];
+                double value = Math.max(diagonal + scores[base + inner[j - 1] * innerStride], 0.0);
+                if (affine) {
+                    insert = j == 1 ? Double.NEGATIVE_INFINITY : Math.max(best[j - 1] - open, insert - extend);
+                    if (i > 1) {
+                        delete[j] = Math.max(up - open, delete[j] - extend);
+                    }
+                    value = Math.max(value, Math.max(insert, delete[j]));
+                }
+                else {
+                    value = Math.max(value, Math.max(best[j - 1] - open, up - open));
+                }
+                diagonal = up;
+                best[j] = value;
+                if (value > maxValue || value == maxValue && value > 0.0 && transposed && j < maxInner) {
+                    maxValue = value;
+                    maxOuter = i;
+                    maxInner = j;
+                }
+            }
         }
+        return transposed ? new AlignmentScore(maxValue, maxInner, maxOuter) : new AlignmentScore(maxValue, maxOuter, maxInner);
+    }
+
+    /**
+     * Finds the best local alignments which do not intersect, that is which
+     * share no node of the table, by the Waterman-Eggert algorithm. After each
+     * alignment, only the part of the table depending on its nodes is computed
+     * again. The first alignment is the first result of {@link #backtrack()}.
+     * <p>
+     * The table is computed in doubles and keeps both gap states of all the nodes
+     * under the affine gap penalty, taking about three times the memory of {@link #calculate()}.
+     *
+     * @param maxCount  The largest number of alignments.
+     * @param minScore  The lowest score of an alignment, any positive one if not positive.
+     * @return  The alignments ordered by their score.
+     */
+    public List<LocalAlignment> topAlignments(int maxCount, double minScore) {
+        return WatermanEggert.align(this, maxCount, minScore);
     }
 
     /**
      * Method used to retrieve the results from the completed table.
      * The process starts on the node with the highest value and follows
-     * the succession of parents until it end on a node with a value of
+     * the traceback flags until it ends on a node with a value of
      * zero, which is parentless.
      * <p>
-     * Along this way, corresponding symbols are used to form the resulting
-     * sequences from the end to the front.
+     * Inside an affine gap, the gap flags decide whether the gap
+     * has been opened at the previous node or goes on further.
+     * Along this way, the operations of the alignment are collected
+     * from the end to the front.
      */
     @Override
     void backtrack() {
-        int m = table.length;
-        int n = table[0].length;
+        long start = System.nanoTime();
+        int m = rows();
+        int n = columns();
         results = new ArrayList<>();
         List<Integer> maxValuePosition = new ArrayList<>();
-        Double currentMaxValue = 0.0;
+        double currentMaxValue = 0.0;
         for (int i = 0; i < m * n; i++) {
             if (tableValue(i) > currentMaxValue) {
                 currentMaxValue = tableValue(i);
             }
         }
+        score = currentMaxValue;
         for (int i = 0; i < m * n; i++) {
-            if (tableValue(i).equals(currentMaxValue)) {
+            if (tableValue(i) == currentMaxValue) {
                 maxValuePosition.add(i);
             }
         }
         for (int current: maxValuePosition) {
-            StringBuilder alignment1 = new StringBuilder();
-            StringBuilder alignment2 = new StringBuilder();
-            while(parents.containsKey(current)) {
-                int parent = parents.get(current);
-                if (parent == northWest(current)) {
-                    alignment1.append(seq1.charAt(seq1position(current)));
-                    alignment2.append(seq2.charAt(seq2position(current)));
-                }
-                else if (parent == left(current)) {
-                    alignment1.append('_');
-                    alignment2.append(seq2.charAt(seq2position(current)));
-                }
-                else if (parent == up(current)) {
-                    alignment1.append(seq1.charAt(seq1position(current)));
-                    alignment2.append('_');
-                }
-                else if (parent != left(current) && parent / n == current / n) {
-                    while (current != parent) {
-                        alignment1.append('_');
-                        alignment2.append(seq2.charAt(seq2position(current)));
-                        current--;
-                    }
+            Alignment.Builder alignment = new Alignment.Builder(seq1, seq2);
+            byte state = 0;
+            while (state != 0 || (traceback[current] & (DIAGONAL | LEFT | UP)) != 0) {
+                byte flags = traceback[current];
+                if (state == 0) {
+                    state = (byte) (flags & (DIAGONAL | LEFT | UP));
                 }
-                else if (parent != up(current) && parent % n == current % n) {
-                    while (current != parent) {
-                        alignment1.append(seq1.charAt(seq1position(current)));
-                        alignment2.append('_');
-                        current = current - n;
-                    }
+                if (state == DIAGONAL) {
+                    alignment.pair(seq1position(current), seq2position(current));
+                    current = northWest(current);
+                    state = 0;
+                }
+                else if (state == LEFT) {
+                    alignment.add(Alignment.DELETE);
+                    current = left(current);
+                    state = (flags & INSERT_EXTEND) != 0 ? LEFT : 0;
+                }
+                else {
+                    alignment.add(Alignment.INSERT);
+                    current = up(current);
+                    state = (flags & DELETE_EXTEND) != 0 ? UP : 0;
                 }
-                current = parent;
             }
-            results.add(new StringBuilder[]{alignment1,alignment2});
+            results.add(alignment.build(score, current / n, current % n));
         }
+        reportTraceback(start, results);
     }
 }
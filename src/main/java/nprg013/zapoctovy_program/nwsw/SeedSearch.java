@@ -0,0 +1,533 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The heuristic variant of the {@link DatabaseSearch}, which computes the Smith-Waterman
+ * score only in small windows of the records around the places promising a good alignment.
+ * <p>
+ * The words of the query, that is its parts of a fixed length, are kept in a hashed index,
+ * and each record is scanned for the words found in it. Two words found on the same diagonal,
+ * not overlapping and close to each other, form a seed, or a single word with the two hit
+ * window set to zero. A seed is extended along its diagonal in both directions until the score
+ * drops by more than the X-drop value below the best one reached. If the score of this extension
+ * reaches the trigger, the seed is extended once more from its middle in both directions, now with
+ * gaps, keeping only the nodes within the larger X-drop value of the best score. If also this score
+ * reaches the trigger, the Smith-Waterman score of the whole query and the window of the record spanned
+ * by the gapped extension, widened by a few symbols, is computed by the same {@link StripedSW} as in
+ * the exhaustive search. The score of the record is the best score of its windows, or zero if it has none.
+ * The seeds on a diagonal already extended, or inside a window already computed, are skipped.
+ * <p>
+ * The default values of the parameters follow from the matrix: the words are of
+ * {@link #DNA_WORD_LENGTH} symbols and single for a matrix of at most {@link #NUCLEOTIDE_CODES}
+ * codes, otherwise of {@link #PROTEIN_WORD_LENGTH} symbols in pairs within {@link #DEFAULT_TWO_HIT_WINDOW}.
+ * The X-drop value is the length of the word times the mean positive score of the diagonal of the matrix,
+ * the X-drop value of the gapped extension is twice as much plus the cost of opening a gap,
+ * and the trigger is twice the X-drop value.
+ * <p>
+ * The records whose best alignment has no seed are missed, and the score of a record
+ * may be lower than the exhaustive one if its best alignment leaves the window.
+ */
+public class SeedSearch extends DatabaseSearch {
+    /**
+     * The default length of the words for the nucleotides.
+     */
+    public static final int DNA_WORD_LENGTH = 11;
+    /**
+     * The default length of the words for the proteins.
+     */
+    public static final int PROTEIN_WORD_LENGTH = 3;
+    /**
+     * The largest number of codes of a matrix, including the unknown symbol,
+     * for which the sequences are treated as nucleotides.
+     */
+    public static final int NUCLEOTIDE_CODES = 16;
+    /**
+     * The default largest distance of two words of a seed for the proteins.
+     */
+    public static final int DEFAULT_TWO_HIT_WINDOW = 40;
+    /**
+     * Number of symbols by which the window is wider than the gapped extension on every side.
+     */
+    private static final int WINDOW_PADDING = 32;
+    /**
+     * The multiplier of the hash of the words.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private final byte[] encodedQuery;
+    private final SubstMatrix substMatrix;
+    private final double[] scores;
+    private final int stride;
+    private final double open;
+    private final double extend;
+    /**
+     * The mean positive score of the diagonal of the matrix.
+     */
+    private final double match;
+    private int wordLength;
+    private int twoHitWindow;
+    private double xDrop;
+    private double trigger;
+    /**
+     * The index of the words of the query: the starts of the words of the bucket b
+     * are the positions from bucketStarts[b] to bucketStarts[b + 1].
+     */
+    private int[] bucketStarts;
+    private int[] positions;
+    private int bucketBits;
+
+    /**
+     * Prepares the search for the first record of the query file.
+     *
+     * @param queryPath  Path to file with the query sequence.
+     * @param matrixPath  Path to file with the scoring matrix.
+     * @param gapValue  One or two values of the gap penalty.
+     * @throws IOException  If some of the provided paths is not valid.
+     * @throws SubstMatrix.MatrixDimensionException  If the provided matrix is not valid.
+     */
+    public SeedSearch(String queryPath, String matrixPath, List<String> gapValue) throws IOException, SubstMatrix.MatrixDimensionException {
+        this(readQuery(queryPath), MatrixRegistry.get(matrixPath), new GapPenalty(gapValue));
+    }
+
+    /**
+     * Prepares the search for the query sequence with the default parameters.
+     *
+     * @param query  The query sequence.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     */
+    public SeedSearch(String query, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        super(query, substMatrix, gapPenalty);
+        this.substMatrix = substMatrix;
+        encodedQuery = substMatrix.encode(query);
+        scores = substMatrix.scores();
+        stride = substMatrix.size();
+        switch (gapPenalty.getType()) {
+            case AFFINE:
+                open = gapPenalty.countAffine(1);
+                break;
+            case LINEAR:
+                open = gapPenalty.linearPart();
+                break;
+            default:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not properly initialized");
+        }
+        extend = gapPenalty.linearPart();
+        double positive = 0.0;
+        int count = 0;
+        for (int i = 0; i < stride; i++) {
+            if (scores[i * stride + i] > 0.0) {
+                positive += scores[i * stride + i];
+                count++;
+            }
+        }
+        match = count == 0 ? 1.0 : positive / count;
+        boolean nucleotides = stride <= NUCLEOTIDE_CODES;
+        wordLength = nucleotides ? DNA_WORD_LENGTH : PROTEIN_WORD_LENGTH;
+        twoHitWindow = nucleotides ? 0 : DEFAULT_TWO_HIT_WINDOW;
+    }
+
+    /**
+     * Returns the length of the words.
+     *
+     * @return  Number of symbols of a word.
+     */
+    public int getWordLength() {
+        return wordLength;
+    }
+
+    /**
+     * Sets the length of the words. Shorter words find more seeds,
+     * which makes the search more sensitive and slower.
+     *
+     * @param wordLength  Number of symbols of a word, at least one.
+     */
+    public void setWordLength(int wordLength) {
+        this.wordLength = Math.max(1, wordLength);
+    }
+
+    /**
+     * Returns the largest distance of two words forming a seed.
+     *
+     * @return  The distance of the starts of the words, zero if every word is a seed.
+     */
+    public int getTwoHitWindow() {
+        return twoHitWindow;
+    }
+
+    /**
+     * Sets the largest distance of the starts of two words on the same diagonal forming a seed.
+     *
+     * @param twoHitWindow  The distance, zero if every word is a seed.
+     */
+    public void setTwoHitWindow(int twoHitWindow) {
+        this.twoHitWindow = Math.max(0, twoHitWindow);
+    }
+
+    /**
+     * Returns the drop of the score below the best one ending the extension along the diagonal.
+     *
+     * @return  The X-drop value.
+     */
+    public double getXDrop() {
+        return xDrop > 0.0 ? xDrop : wordLength * match;
+    }
+
+    /**
+     * Sets the drop of the score below the best one ending the extension
+     * along the diagonal, the gapped extension allowing twice as much
+     * plus the cost of opening a gap.
+     *
+     * @param xDrop  The X-drop value, zero or less for the default one.
+     */
+    public void setXDrop(double xDrop) {
+        this.xDrop = xDrop;
+    }
+
+    /**
+     * Returns the score of an extension leading to the next step.
+     *
+     * @return  The trigger score.
+     */
+    public double getTrigger() {
+        return trigger > 0.0 ? trigger : 2 * getXDrop();
+    }
+
+    /**
+     * Sets the score the extension along the diagonal needs for the gapped extension,
+     * and the gapped extension needs for the Smith-Waterman score of the window.
+     *
+     * @param trigger  The trigger score, zero or less for the default one.
+     */
+    public void setTrigger(double trigger) {
+        this.trigger = trigger;
+    }
+
+    /**
+     * Builds the index of the words of the query for the current length of the words,
+     * and scores every record of the database against the query.
+     *
+     * @param databasePath  Path to the FASTA file or to the {@link SequenceDatabase} with any number of records.
+     * @param count  The number of best hits to return.
+     * @return  At most count hits ordered from the highest score,
+     *          the earlier record first in case of equal scores.
+     * @throws IOException  If the path is not valid or the file cannot be read.
+     */
+    @Override
+    public List<Hit> search(String databasePath, int count) throws IOException {
+        buildIndex();
+        return super.search(databasePath, count);
+    }
+
+    /**
+     * Builds the index of the words of the query, grouping their starts
+     * into buckets by the hash of the word.
+     */
+    private void buildIndex() {
+        int words = Math.max(0, encodedQuery.length - wordLength + 1);
+        bucketBits = Math.max(4, 32 - Integer.numberOfLeadingZeros(2 * words));
+        int[] buckets = new int[words];
+        bucketStarts = new int[(1 << bucketBits) + 1];
+        long power = power();
+        long key = 0;
+        for (int i = 0; i < encodedQuery.length; i++) {
+            key = key * stride + encodedQuery[i];
+            if (i >= wordLength) {
+                key -= encodedQuery[i - wordLength] * power;
+            }
+            if (i >= wordLength - 1) {
+                buckets[i - wordLength + 1] = bucket(key);
+                bucketStarts[bucket(key) + 1]++;
+            }
+        }
+        for (int b = 0; b < bucketStarts.length - 1; b++) {
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        positions = new int[words];
+        int[] filled = new int[bucketStarts.length - 1];
+        for (int start = 0; start < words; start++) {
+            positions[bucketStarts[buckets[start]] + filled[buckets[start]]++] = start;
+        }
+    }
+
+    /**
+     * The weight of the symbol leaving the rolling key of a word.
+     *
+     * @return  The stride to the power of the length of the words, modulo two to the 64.
+     */
+    private long power() {
+        long power = 1;
+        for (int i = 0; i < wordLength; i++) {
+            power *= stride;
+        }
+        return power;
+    }
+
+    private int bucket(long key) {
+        return (int) ((key * HASH_MULTIPLIER) >>> (64 - bucketBits));
+    }
+
+    /**
+     * Scores each record of a window by the seeds found in it, one by one.
+     *
+     * @param targets  The records.
+     * @return  The best Smith-Waterman score of the windows around the seeds of each record.
+     */
+    @Override
+    double[] score(List<FastaRecord> targets) {
+        double[] scores = new double[targets.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = score(targets.get(i));
+        }
+        return scores;
+    }
+
+    /**
+     * Scores one record by the seeds found in it.
+     *
+     * @param target  The record.
+     * @return  The best Smith-Waterman score of the windows around the seeds, zero if there are none.
+     */
+    @Override
+    double score(FastaRecord target) {
+        return new Scan(target).run();
+    }
+
+    /**
+     * The search of one record.
+     */
+    private class Scan {
+        private final byte[] target;
+        /**
+         * The start of the last word found on each diagonal plus one, zero if there is none.
+         * The diagonal is the start in the record minus the start in the query plus the length of the query.
+         */
+        private final int[] lastHit;
+        /**
+         * The end of the extension along each diagonal in the record, the words before it are skipped.
+         */
+        private final int[] extendedTo;
+        /**
+         * The windows computed so far, as the start and the end in the record.
+         */
+        private final List<int[]> windows = new ArrayList<>();
+        /**
+         * The values and the gap states across the rows of the gapped extension.
+         */
+        private double[] values;
+        private double[] deleteValues;
+        /**
+         * The number of symbols of the record spanned by the last gapped extension.
+         */
+        private int reachTarget;
+        private double best;
+
+        Scan(FastaRecord record) {
+            target = record.encode(substMatrix);
+            lastHit = new int[encodedQuery.length + target.length + 1];
+            extendedTo = new int[lastHit.length];
+        }
+
+        /**
+         * Scans the record for the words of the query and extends the seeds.
+         *
+         * @return  The best score of the windows.
+         */
+        double run() {
+            if (target.length < wordLength || encodedQuery.length < wordLength) {
+                return 0.0;
+            }
+            long power = power();
+            long key = 0;
+            for (int i = 0; i < target.length; i++) {
+                key = key * stride + target[i];
+                if (i >= wordLength) {
+                    key -= target[i - wordLength] * power;
+                }
+                if (i < wordLength - 1) {
+                    continue;
+                }
+                int targetStart = i - wordLength + 1;
+                int bucket = bucket(key);
+                for (int p = bucketStarts[bucket]; p < bucketStarts[bucket + 1]; p++) {
+                    int queryStart = positions[p];
+                    if (!sameWord(queryStart, targetStart)) {
+                        continue;
+                    }
+                    int diagonal = targetStart - queryStart + encodedQuery.length;
+                    if (targetStart < extendedTo[diagonal]) {
+                        continue;
+                    }
+                    if (twoHitWindow > 0) {
+                        int last = lastHit[diagonal] - 1;
+                        if (last < 0 || targetStart - last > twoHitWindow) {
+                            lastHit[diagonal] = targetStart + 1;
+                            continue;
+                        }
+                        if (targetStart - last < wordLength) {
+                            continue;
+                        }
+                        lastHit[diagonal] = 0;
+                    }
+                    extend(queryStart, targetStart, diagonal);
+                }
+            }
+            return best;
+        }
+
+        private boolean sameWord(int queryStart, int targetStart) {
+            for (int i = 0; i < wordLength; i++) {
+                if (encodedQuery[queryStart + i] != target[targetStart + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Extends a seed, first along the diagonal and then with gaps,
+         * and computes the score of the window around it if both
+         * extensions reach the trigger.
+         *
+         * @param queryStart  The start of the word in the query.
+         * @param targetStart  The start of the word in the record.
+         * @param diagonal  The diagonal of the word.
+         */
+        private void extend(int queryStart, int targetStart, int diagonal) {
+            double limit = getXDrop();
+            double score = 0.0;
+            double forward = 0.0;
+            int forwardLength = 0;
+            for (int i = 0; queryStart + i < encodedQuery.length && targetStart + i < target.length; i++) {
+                score += scores[encodedQuery[queryStart + i] * stride + target[targetStart + i]];
+                if (score > forward) {
+                    forward = score;
+                    forwardLength = i + 1;
+                }
+                else if (forward - score > limit) {
+                    break;
+                }
+            }
+            score = 0.0;
+            double backward = 0.0;
+            for (int i = 1; queryStart - i >= 0 && targetStart - i >= 0; i++) {
+                score += scores[encodedQuery[queryStart - i] * stride + target[targetStart - i]];
+                if (score > backward) {
+                    backward = score;
+                }
+                else if (backward - score > limit) {
+                    break;
+                }
+            }
+            extendedTo[diagonal] = targetStart + Math.max(forwardLength, wordLength);
+            double threshold = getTrigger();
+            if (forward + backward < threshold) {
+                return;
+            }
+            int queryMiddle = queryStart + wordLength / 2;
+            int targetMiddle = targetStart + wordLength / 2;
+            for (int[] window : windows) {
+                if (window[0] <= targetMiddle && targetMiddle < window[1]) {
+                    return;
+                }
+            }
+            double gappedLimit = 2 * limit + open;
+            double gapped = gappedExtension(queryMiddle, targetMiddle, 1, gappedLimit);
+            int targetEnd = targetMiddle + reachTarget;
+            gapped += gappedExtension(queryMiddle - 1, targetMiddle - 1, -1, gappedLimit);
+            int targetBegin = targetMiddle - reachTarget;
+            if (gapped < threshold) {
+                return;
+            }
+            int[] window = {Math.max(0, targetBegin - WINDOW_PADDING), Math.min(target.length, targetEnd + WINDOW_PADDING)};
+            windows.add(window);
+            best = Math.max(best, query.score(Arrays.copyOfRange(target, window[0], window[1])));
+        }
+
+        /**
+         * Extends an alignment with gaps from a node in one direction, computing only the nodes
+         * whose value is within the X-drop value of the best one. The rows follow the query.
+         *
+         * @param queryFirst  The first symbol of the query in the direction.
+         * @param targetFirst  The first symbol of the record in the direction.
+         * @param direction  One for the extension to the ends of the sequences, minus one for the one to their starts.
+         * @param limit  The X-drop value.
+         * @return  The best score, also setting the {@link #reachTarget}.
+         */
+        private double gappedExtension(int queryFirst, int targetFirst, int direction, double limit) {
+            int rows = direction > 0 ? encodedQuery.length - queryFirst : queryFirst + 1;
+            int columns = direction > 0 ? target.length - targetFirst : targetFirst + 1;
+            reachTarget = 0;
+            if (rows <= 0 || columns <= 0) {
+                return 0.0;
+            }
+            if (values == null) {
+                values = new double[target.length + 1];
+                deleteValues = new double[target.length + 1];
+            }
+            double bestScore = 0.0;
+            values[0] = 0.0;
+            deleteValues[0] = Double.NEGATIVE_INFINITY;
+            int lowest = 0;
+            int highest = 0;
+            double insert = Double.NEGATIVE_INFINITY;
+            for (int j = 1; j <= columns; j++) {
+                insert = j == 1 ? -open : insert - extend;
+                if (insert < -limit) {
+                    break;
+                }
+                values[j] = insert;
+                deleteValues[j] = Double.NEGATIVE_INFINITY;
+                highest = j;
+            }
+            for (int i = 1; i <= rows; i++) {
+                int base = encodedQuery[queryFirst + direction * (i - 1)] * stride;
+                double diagonal = Double.NEGATIVE_INFINITY;
+                double left = Double.NEGATIVE_INFINITY;
+                insert = Double.NEGATIVE_INFINITY;
+                int newLowest = -1;
+                int newHighest = -1;
+                for (int j = lowest; j <= columns; j++) {
+                    boolean above = j <= highest;
+                    double up = above ? values[j] : Double.NEGATIVE_INFINITY;
+                    double delete = above ? Math.max(up - open, deleteValues[j] - extend) : Double.NEGATIVE_INFINITY;
+                    double value = j > 0 ? diagonal + scores[base + target[targetFirst + direction * (j - 1)]] : Double.NEGATIVE_INFINITY;
+                    if (j > lowest) {
+                        insert = Math.max(left - open, insert - extend);
+                    }
+                    value = Math.max(value, Math.max(insert, delete));
+                    if (value < bestScore - limit) {
+                        value = Double.NEGATIVE_INFINITY;
+                        delete = Double.NEGATIVE_INFINITY;
+                    }
+                    else {
+                        if (newLowest < 0) {
+                            newLowest = j;
+                        }
+                        newHighest = j;
+                        if (value > bestScore) {
+                            bestScore = value;
+                            reachTarget = j;
+                        }
+                    }
+                    diagonal = up;
+                    left = value;
+                    values[j] = value;
+                    deleteValues[j] = delete;
+                    if (j > highest && value == Double.NEGATIVE_INFINITY) {
+                        break;
+                    }
+                }
+                if (newLowest < 0) {
+                    break;
+                }
+                lowest = newLowest;
+                highest = newHighest;
+            }
+            return bestScore;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A database of sequences in a binary file, converted once from FASTA by
+ * {@link #convert(String, String)} and then opened by memory mapping, without
+ * reading anything but the fixed header, however many records it has.
+ * <p>
+ * The file starts with the header of {@link #HEADER_BYTES} bytes: the magic bytes,
+ * the number of bits per residue, the number of records, the offsets of the three
+ * sections and the alphabet. The index follows, with an entry of {@link #ENTRY_BYTES}
+ * bytes per record holding the offsets and the lengths of its header line and of
+ * its residues, so any record is found in constant time. Then come the header
+ * lines and the residues of all the records. The residues are stored as bytes
+ * of the symbols, or, if there are at most four symbols in the whole database,
+ * packed by two bits per residue as their positions in the alphabet, four residues
+ * per byte from the lowest bits, each record starting at a whole byte.
+ * <p>
+ * The file is mapped in chunks of {@link #CHUNK} bytes. The entries of the index
+ * never cross a chunk, and the residues of the records that do not cross it either
+ * are handed out as parts of the mapped file.
+ */
+public class SequenceDatabase implements RecordReader {
+    private static final byte[] MAGIC = {'N', 'W', 'S', 'W', 'D', 'B', 0, 1};
+    private static final int HEADER_BYTES = 320;
+    private static final int ENTRY_BYTES = 32;
+    private static final int ALPHABET_OFFSET = 48;
+    private static final int CHUNK = 1 << 30;
+    /**
+     * Size of the buffers of the sections written by the converter.
+     */
+    private static final int WRITE_BUFFER = 1 << 16;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int bits;
+    private final long size;
+    private final long indexOffset;
+    /**
+     * The symbols of the packed residues, in the order of their codes.
+     */
+    private final byte[] alphabet;
+    /**
+     * The record returned next by {@link #nextRecord()}.
+     */
+    private long next;
+
+    /**
+     * Opens the database by mapping the file.
+     *
+     * @param path  The path to the database file.
+     * @throws IOException  If the path is not valid or the file is not a database.
+     */
+    public SequenceDatabase(String path) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        long fileSize = channel.size();
+        try {
+            chunks = new MappedByteBuffer[(int) ((fileSize + CHUNK - 1) / CHUNK)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * CHUNK;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK, fileSize - start));
+            }
+            if (fileSize < HEADER_BYTES || !hasMagic(chunks[0])) {
+                throw new IOException(path + " is not a sequence database");
+            }
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        ByteBuffer header = chunks[0];
+        bits = header.getInt(8);
+        int alphabetSize = header.getInt(12);
+        size = header.getLong(16);
+        indexOffset = header.getLong(24);
+        alphabet = new byte[alphabetSize];
+        header.get(ALPHABET_OFFSET, alphabet);
+    }
+
+    /**
+     * Determines whether a file is a sequence database by its magic bytes.
+     *
+     * @param path  The path to the file.
+     * @return  True for a database, false for any other file.
+     * @throws IOException  If the path is not valid.
+     */
+    public static boolean isDatabase(String path) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(MAGIC.length);
+            while (start.hasRemaining() && file.read(start) >= 0) {
+                continue;
+            }
+            return !start.hasRemaining() && hasMagic(start.flip());
+        }
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a FASTA file to a database, reading it twice, first to find
+     * the alphabet and the sizes of the sections, then to write them.
+     *
+     * @param fastaPath  The path to the FASTA file.
+     * @param databasePath  The path to the database file to be written.
+     * @throws IOException  If some of the paths is not valid.
+     */
+    public static void convert(String fastaPath, String databasePath) throws IOException {
+        boolean[] seen = new boolean[256];
+        long count = 0;
+        long headerBytes = 0;
+        try (FastaReader reader = new FastaReader(fastaPath)) {
+            FastaRecord record;
+            while ((record = reader.nextRecord()) != null) {
+                count++;
+                headerBytes += headerBytes(record).length;
+                ByteBuffer residues = record.getResidues();
+                while (residues.hasRemaining()) {
+                    seen[residues.get() & 0xFF] = true;
+                }
+            }
+        }
+        byte[] alphabet = new byte[256];
+        int alphabetSize = 0;
+        for (int symbol = 0; symbol < seen.length; symbol++) {
+            if (seen[symbol]) {
+                alphabet[alphabetSize++] = (byte) symbol;
+            }
+        }
+        int bits = alphabetSize <= 4 ? 2 : 8;
+        byte[] codes = new byte[256];
+        for (int i = 0; i < alphabetSize; i++) {
+            codes[alphabet[i] & 0xFF] = (byte) i;
+        }
+        long indexOffset = HEADER_BYTES;
+        long headersOffset = indexOffset + count * ENTRY_BYTES;
+        long residuesOffset = headersOffset + headerBytes;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.put(MAGIC).putInt(bits).putInt(alphabetSize).putLong(count)
+                .putLong(indexOffset).putLong(headersOffset).putLong(residuesOffset)
+                .put(ALPHABET_OFFSET, alphabet, 0, alphabetSize);
+        try (FileChannel output = FileChannel.open(Paths.get(databasePath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FastaReader reader = new FastaReader(fastaPath)) {
+            output.write(header.clear(), 0);
+            Section index = new Section(output, indexOffset);
+            Section headers = new Section(output, headersOffset);
+            Section residues = new Section(output, residuesOffset);
+            FastaRecord record;
+            while ((record = reader.nextRecord()) != null) {
+                byte[] line = headerBytes(record);
+                ByteBuffer symbols = record.getResidues();
+                long residueStart = residues.position;
+                if (bits == 2) {
+                    while (symbols.hasRemaining()) {
+                        int packed = 0;
+                        for (int i = 0; i < 4 && symbols.hasRemaining(); i++) {
+                            packed |= codes[symbols.get() & 0xFF] << (2 * i);
+                        }
+                        residues.put((byte) packed);
+                    }
+                }
+                else {
+                    residues.put(symbols);
+                }
+                ByteBuffer entry = ByteBuffer.allocate(ENTRY_BYTES);
+                entry.putLong(residueStart).putLong(headers.position).putInt(record.length()).putInt(line.length);
+                index.put(entry.clear());
+                headers.put(ByteBuffer.wrap(line));
+            }
+            index.flush();
+            headers.flush();
+            residues.flush();
+        }
+    }
+
+    /**
+     * The header line of a record as stored in the database.
+     *
+     * @param record  The record.
+     * @return  The bytes of the header line, empty if the record has none.
+     */
+    private static byte[] headerBytes(FastaRecord record) {
+        return record.getHeader() == null ? new byte[0] : record.getHeader().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return  The number of records in the database.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads one record, in constant time however large the database is.
+     *
+     * @param index  Zero based index of the record.
+     * @return  The record, with the residues as bytes of the symbols.
+     */
+    FastaRecord record(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Record " + index + " out of " + size);
+        }
+        long entry = indexOffset + index * ENTRY_BYTES;
+        ByteBuffer chunk = chunks[(int) (entry / CHUNK)];
+        int at = (int) (entry % CHUNK);
+        long residueStart = chunk.getLong(at);
+        long headerStart = chunk.getLong(at + 8);
+        int length = chunk.getInt(at + 16);
+        int headerLength = chunk.getInt(at + 20);
+        String header = headerLength == 0 ? null : new String(read(headerStart, headerLength), StandardCharsets.UTF_8);
+        ByteBuffer residues;
+        if (bits == 2) {
+            byte[] packed = read(residueStart, (length + 3) / 4);
+            byte[] symbols = new byte[length];
+            for (int i = 0; i < length; i++) {
+                symbols[i] = alphabet[(packed[i >> 2] >> ((i & 3) * 2)) & 3];
+            }
+            residues = ByteBuffer.wrap(symbols).asReadOnlyBuffer();
+        }
+        else if (residueStart / CHUNK == (residueStart + length - 1) / CHUNK) {
+            residues = chunks[(int) (residueStart / CHUNK)].slice((int) (residueStart % CHUNK), length).asReadOnlyBuffer();
+        }
+        else {
+            residues = ByteBuffer.wrap(read(residueStart, length)).asReadOnlyBuffer();
+        }
+        return new FastaRecord(header, residues);
+    }
+
+    /**
+     * Copies bytes of the file, possibly from more chunks.
+     *
+     * @param offset  Position of the first byte in the file.
+     * @param length  Number of the bytes.
+     * @return  The bytes.
+     */
+    private byte[] read(long offset, int length) {
+        byte[] bytes = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long at = offset + done;
+            ByteBuffer chunk = chunks[(int) (at / CHUNK)];
+            int from = (int) (at % CHUNK);
+            int part = Math.min(length - done, chunk.limit() - from);
+            chunk.get(from, bytes, done, part);
+            done += part;
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the records in the order of the index, starting with the first one.
+     *
+     * @return  The next record, or null after the last one.
+     */
+    @Override
+    public FastaRecord nextRecord() {
+        return next < size ? record(next++) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * One section of the file being written, buffered
+     * and written at its own position.
+     */
+    private static class Section {
+        private final FileChannel output;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+        /**
+         * Position in the file following the bytes put so far.
+         */
+        private long position;
+        /**
+         * Position in the file where the buffer is written.
+         */
+        private long flushed;
+
+        Section(FileChannel output, long start) {
+            this.output = output;
+            position = start;
+            flushed = start;
+        }
+
+        void put(byte value) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put(value);
+            position++;
+        }
+
+        void put(ByteBuffer values) throws IOException {
+            while (values.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int part = Math.min(values.remaining(), buffer.remaining());
+                buffer.put(buffer.position(), values, values.position(), part);
+                buffer.position(buffer.position() + part);
+                values.position(values.position() + part);
+                position += part;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += output.write(buffer, flushed);
+            }
+            buffer.clear();
+        }
+    }
+}
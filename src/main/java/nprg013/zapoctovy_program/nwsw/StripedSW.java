@@ -0,0 +1,238 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The class that computes the score of the Smith-Waterman algorithm
+ * without the traceback, comparing one query sequence to any number
+ * of target sequences.
+ * <p>
+ * If the Vector API module is present in the running virtual machine
+ * and all the scores and gap penalties are whole numbers, the calculation is
+ * vectorized by the striped approach of Farrar, otherwise a plain loop
+ * over the table rows is used. Either way the score is the same as the
+ * one of {@link SW#calculate()}.
+ * <p>
+ * Many short targets are better scored together by {@link #score(List)}, which
+ * under the same conditions aligns a batch of them at once, one in each lane.
+ */
+public class StripedSW {
+    /**
+     * Whether the jdk.incubator.vector module has been added to the running virtual machine.
+     */
+    static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    /**
+     * The query sequence translated to the codes of the substitution matrix.
+     */
+    private final byte[] query;
+    private final SubstMatrix substMatrix;
+    /**
+     * The flat table of scores of the {@link #substMatrix}.
+     */
+    private final double[] scores;
+    /**
+     * Length of one row of the {@link #scores}.
+     */
+    private final int stride;
+    /**
+     * Penalty for the first symbol of a gap.
+     */
+    private final double openPenalty;
+    /**
+     * Penalty for every other symbol of a gap.
+     */
+    private final double extendPenalty;
+    /**
+     * The vectorized calculation, or null if it cannot be used.
+     */
+    private final VectorStripedSW kernel;
+    /**
+     * The vectorized calculation of a batch of targets, or null if it cannot be used.
+     */
+    private final VectorBatchSW batchKernel;
+
+    /**
+     * Prepares the calculation for the query sequence.
+     *
+     * @param query  The query sequence.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     * @throws GapPenalty.GapPenaltyNumericalError  If the gap penalty is not initialized properly.
+     */
+    public StripedSW(String query, SubstMatrix substMatrix, GapPenalty gapPenalty) {
+        this(query, substMatrix, gapPenalty, VECTOR_API);
+    }
+
+    /**
+     * Prepares the calculation for the query sequence, possibly forbidding the vectorization.
+     *
+     * @param query  The query sequence.
+     * @param substMatrix  The substitution matrix.
+     * @param gapPenalty  The linear or affine gap penalty.
+     * @param vectorize  False to always use the plain loop.
+     */
+    StripedSW(String query, SubstMatrix substMatrix, GapPenalty gapPenalty, boolean vectorize) {
+        this.query = substMatrix.encode(query);
+        this.substMatrix = substMatrix;
+        this.scores = substMatrix.scores();
+        this.stride = substMatrix.size();
+        switch (gapPenalty.getType()) {
+            case AFFINE:
+                openPenalty = gapPenalty.countAffine(1);
+                break;
+            case LINEAR:
+                openPenalty = gapPenalty.linearPart();
+                break;
+            default:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not initialized properly");
+        }
+        extendPenalty = gapPenalty.linearPart();
+        boolean vectorized = vectorize && isWhole(scores) && isWhole(openPenalty) && isWhole(extendPenalty)
+                && openPenalty >= extendPenalty && extendPenalty >= 0;
+        kernel = vectorized ? new VectorStripedSW(this.query, scores, stride, (int) openPenalty, (int) extendPenalty) : null;
+        batchKernel = vectorized ? new VectorBatchSW(this.query, scores, stride, (int) openPenalty, (int) extendPenalty) : null;
+    }
+
+    /**
+     * Returns the number of the targets scored at once by {@link #score(byte[][])}.
+     *
+     * @return  Number of lanes of the batch calculation, one if it is not vectorized.
+     */
+    int lanes() {
+        return batchKernel != null ? VectorBatchSW.lanes() : 1;
+    }
+
+    /**
+     * Determines whether the vectorized calculation is used.
+     *
+     * @return  True if the Vector API is used.
+     */
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    /**
+     * Computes the score of the best local alignment of the query and the target.
+     *
+     * @param target  The target sequence.
+     * @return  The score of the best local alignment.
+     */
+    public double score(String target) {
+        return score(substMatrix.encode(target));
+    }
+
+    /**
+     * Computes the score of the best local alignment of the query and the target.
+     *
+     * @param target  The target sequence translated to the codes of the substitution matrix.
+     * @return  The score of the best local alignment.
+     */
+    double score(byte[] target) {
+        if (kernel != null) {
+            int result = kernel.score(target);
+            if (result != VectorStripedSW.OVERFLOW) {
+                return result;
+            }
+        }
+        return scoreScalar(target);
+    }
+
+    /**
+     * Computes the scores of the best local alignments of the query and each of the targets.
+     *
+     * @param targets  The target sequences.
+     * @return  The score of each target, in the order of the targets.
+     */
+    public double[] score(List<String> targets) {
+        List<byte[]> encoded = new ArrayList<>(targets.size());
+        for (String target : targets) {
+            encoded.add(substMatrix.encode(target));
+        }
+        return score(encoded.toArray(new byte[0][]));
+    }
+
+    /**
+     * Computes the scores of the best local alignments of the query and each of the targets.
+     * If vectorized, the targets are sorted by their length and aligned in batches
+     * of {@link #lanes()} targets, so that the targets of a batch are of similar lengths,
+     * and the targets whose batch values overflow are scored again one by one.
+     *
+     * @param targets  The target sequences translated to the codes of the substitution matrix.
+     * @return  The score of each target, in the order of the targets.
+     */
+    double[] score(byte[][] targets) {
+        double[] results = new double[targets.length];
+        if (batchKernel == null) {
+            for (int i = 0; i < targets.length; i++) {
+                results[i] = score(targets[i]);
+            }
+            return results;
+        }
+        Integer[] order = new Integer[targets.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> targets[i].length));
+        int lanes = VectorBatchSW.lanes();
+        for (int start = 0; start < order.length; start += lanes) {
+            byte[][] batch = new byte[Math.min(lanes, order.length - start)][];
+            for (int k = 0; k < batch.length; k++) {
+                batch[k] = targets[order[start + k]];
+            }
+            int[] scores = batchKernel.score(batch);
+            for (int k = 0; k < batch.length; k++) {
+                results[order[start + k]] = scores[k] != VectorBatchSW.OVERFLOW ? scores[k] : score(batch[k]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The plain calculation keeping one column of the table and of the gap
+     * state along the target, while the gap state along the query only
+     * needs the last visited node.
+     *
+     * @param target  The target sequence translated to the codes of the substitution matrix.
+     * @return  The score of the best local alignment.
+     */
+    private double scoreScalar(byte[] target) {
+        int m = query.length;
+        double[] best = new double[m + 1];
+        double[] insert = new double[m + 1];
+        Arrays.fill(insert, Double.NEGATIVE_INFINITY);
+        double result = 0.0;
+        for (byte symbol : target) {
+            double diagonal = 0.0;
+            double delete = Double.NEGATIVE_INFINITY;
+            for (int i = 1; i <= m; i++) {
+                double left = best[i];
+                insert[i] = Math.max(left - openPenalty, insert[i] - extendPenalty);
+                delete = Math.max(best[i - 1] - openPenalty, delete - extendPenalty);
+                double value = Math.max(diagonal + scores[query[i - 1] * stride + symbol], 0.0);
+                value = Math.max(value, Math.max(insert[i], delete));
+                diagonal = left;
+                best[i] = value;
+                result = Math.max(result, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines whether all the values are whole numbers.
+     *
+     * @param values  The values to check.
+     * @return  True if no value has a fractional part.
+     */
+    private static boolean isWhole(double... values) {
+        for (double value : values) {
+            if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
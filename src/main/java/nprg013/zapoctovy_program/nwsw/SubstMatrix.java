@@ -1,6 +1,7 @@
 package nprg013.zapoctovy_program.nwsw;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -9,19 +10,47 @@ import java.util.*;
  * sequences considered.
  */
 public class SubstMatrix {
+    /**
+     * Number of symbols the codes are kept for, other symbols are always unknown.
+     */
+    private static final int ASCII = 128;
+    /**
+     * The largest number of decimal places of the values kept by the integer scoring.
+     */
+    static final int MAX_DECIMALS = 6;
     /**
      * List of all symbols ordered by their position in the source matrix.
      */
     private List<Character> keys;
     /**
-     * The numerical values of the source matrix represented by a 2D table
-     * of doubles.
+     * Code of each ASCII symbol, that is its position in the source matrix,
+     * or the code of an unknown symbol, which follows all the known ones.
+     * In the interactive mode, the codes follow the symbols of the sequences.
      */
-    private final double[][] values;
+    private final byte[] codes = new byte[ASCII];
     /**
-     * Determines, whether the matrix was constructed under the interactive mode.
+     * Code of each symbol beyond ASCII which has one, that is only in the interactive mode.
      */
-    private final boolean interactive;
+    private final Map<Character, Byte> wideCodes;
+    /**
+     * Number of codes including the one of an unknown symbol.
+     */
+    private final int size;
+    /**
+     * The numerical values of the source matrix represented by a flat table
+     * of doubles, indexed by the code of the first symbol times {@link #size}
+     * plus the code of the second symbol.
+     */
+    private final double[] scores;
+    /**
+     * The smallest power of ten which makes all the {@link #scores} whole,
+     * or zero if they have more than {@link #MAX_DECIMALS} decimal places.
+     */
+    private final int scale;
+    /**
+     * The {@link #scores} multiplied by the {@link #scale}, or null if it is zero.
+     */
+    private final int[] integerScores;
 
     /**
      * Reads a matrix from an input file and parses it to the respective
@@ -36,10 +65,22 @@ public class SubstMatrix {
      *                                   or the values cannot be parsed.
      */
     public SubstMatrix(String path) throws IOException, MatrixDimensionException {
-        this.interactive = false;
-        File f = new File(path);
+        this(new FileReader(path));
+    }
+
+    /**
+     * Reads a matrix in the same format as {@link #SubstMatrix(String)}
+     * from a reader, which is closed afterwards.
+     *
+     * @param reader  The reader of the scoring matrix.
+     * @throws IOException  In case of reading error.
+     * @throws MatrixDimensionException  This is thrown in case the matrix is not symmetrical
+     *                                   or the values cannot be parsed.
+     */
+    SubstMatrix(Reader reader) throws IOException, MatrixDimensionException {
+        wideCodes = Map.of();
         List<String[]> vstupniTabulka = new ArrayList<>();
-        try (BufferedReader bReader = new BufferedReader(new FileReader(f));) {
+        try (BufferedReader bReader = new BufferedReader(reader)) {
             String line;
             while ((line = bReader.readLine()) != null) {
                 String[] elements = line.trim().split("\\s+");
@@ -60,20 +101,40 @@ public class SubstMatrix {
                     }
                     keys.add(oneCharCode(key));
                 }
-                values = new double[keys.size()][keys.size()];
+                double[][] values = new double[keys.size()][keys.size()];
                 for (int i = 1; i < vstupniTabulka.size(); i++) {
                     for (int j = 1; j < vstupniTabulka.get(i).length; j++) {
                         values[i - 1][j - 1] = Double.parseDouble(vstupniTabulka.get(i)[j]);
                     }
                 }
+                size = keys.size() + 1;
+                if (size > Byte.MAX_VALUE) {
+                    throw new MatrixDimensionException("Too many symbols in the matrix!");
+                }
+                Arrays.fill(codes, (byte) keys.size());
+                for (int i = keys.size() - 1; i >= 0; i--) {
+                    if (keys.get(i) < ASCII) {
+                        codes[keys.get(i)] = (byte) i;
+                    }
+                }
+                double unknownValue = Arrays.stream(values).flatMapToDouble(Arrays::stream).min().orElse(0.0);
+                scores = new double[size * size];
+                Arrays.fill(scores, unknownValue);
+                for (int i = 0; i < keys.size(); i++) {
+                    System.arraycopy(values[i], 0, scores, i * size, keys.size());
+                }
             } catch (Exception e) {
                 throw new MatrixDimensionException("Wrong matrix format!");
             }
         }
+        scale = scale(scores);
+        integerScores = scale == 0 ? null : scaled(scores, scale);
     }
 
     /**
      * The matrix constructor adapted for the interactive mode.
+     * Every ASCII symbol except the last one has its own code,
+     * the others are unknown and score the mismatch even against themselves.
      *
      * @param match  The value used for matches
      * @param mismatch  The value used if the two characters under consideration are different.
@@ -81,40 +142,219 @@ public class SubstMatrix {
      *                                   to double.
      */
     public SubstMatrix(String match, String mismatch) throws MatrixDimensionException {
-        this.interactive = true;
+        this(match, mismatch, asciiSymbols());
+    }
+
+    /**
+     * The matrix constructor adapted for the interactive mode, with a code for
+     * every symbol of the given sequences, so that any two equal symbols score
+     * the match, whether they are ASCII or not.
+     *
+     * @param match  The value used for matches
+     * @param mismatch  The value used if the two characters under consideration are different.
+     * @param sequences  The sequences whose symbols get their own codes.
+     * @throws MatrixDimensionException  This is thrown in case the parameters cannot be parsed
+     *                                   to double, or the sequences have too many different symbols.
+     */
+    public SubstMatrix(String match, String mismatch, String... sequences) throws MatrixDimensionException {
+        double matchValue;
+        double mismatchValue;
         try {
-            values = new double[1][2];
-            values[0][0] = Double.parseDouble(match);
-            values[0][1] = Double.parseDouble(mismatch);
+            matchValue = Double.parseDouble(match);
+            mismatchValue = Double.parseDouble(mismatch);
         }
         catch (Exception e) {
             throw new MatrixDimensionException("Wrong match/mismatch values");
         }
+        Set<Character> symbols = new LinkedHashSet<>();
+        for (String sequence : sequences) {
+            for (int i = 0; i < sequence.length(); i++) {
+                symbols.add(sequence.charAt(i));
+            }
+        }
+        size = symbols.size() + 1;
+        if (size > ASCII) {
+            throw new MatrixDimensionException("Too many different symbols in the sequences!");
+        }
+        scores = new double[size * size];
+        Arrays.fill(scores, mismatchValue);
+        Arrays.fill(codes, (byte) (size - 1));
+        Map<Character, Byte> wide = new HashMap<>();
+        int code = 0;
+        for (char symbol : symbols) {
+            if (symbol < ASCII) {
+                codes[symbol] = (byte) code;
+            }
+            else {
+                wide.put(symbol, (byte) code);
+            }
+            scores[code * size + code] = matchValue;
+            code++;
+        }
+        wideCodes = Map.copyOf(wide);
+        scale = scale(scores);
+        integerScores = scale == 0 ? null : scaled(scores, scale);
+    }
+
+    /**
+     * Lists the ASCII symbols which have their own codes in the interactive mode.
+     *
+     * @return  All the ASCII symbols except the last one.
+     */
+    private static String asciiSymbols() {
+        StringBuilder symbols = new StringBuilder(ASCII - 1);
+        for (char symbol = 0; symbol < ASCII - 1; symbol++) {
+            symbols.append(symbol);
+        }
+        return symbols.toString();
+    }
+
+    /**
+     * Finds the smallest power of ten which makes a value whole.
+     *
+     * @param value  The value.
+     * @return  The power of ten, or zero if the value has more than {@link #MAX_DECIMALS} decimal places.
+     */
+    static int decimalScale(double value) {
+        int power = 1;
+        for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+            double scaled = value * power;
+            if (Math.abs(scaled - Math.rint(scaled)) <= 1e-9 * Math.max(1.0, Math.abs(scaled)) && Math.abs(scaled) < Integer.MAX_VALUE) {
+                return power;
+            }
+            power *= 10;
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the smallest power of ten which makes all the values whole.
+     *
+     * @param values  The values.
+     * @return  The power of ten, or zero if there is none up to {@link #MAX_DECIMALS} decimal places.
+     */
+    private static int scale(double[] values) {
+        int scale = 1;
+        for (double value : values) {
+            int valueScale = decimalScale(value);
+            if (valueScale == 0) {
+                return 0;
+            }
+            scale = Math.max(scale, valueScale);
+        }
+        return scale;
+    }
+
+    /**
+     * Multiplies the values by the scale and rounds them to integers.
+     *
+     * @param values  The values.
+     * @param scale  The power of ten making them whole.
+     * @return  The integer values.
+     */
+    private static int[] scaled(double[] values, int scale) {
+        int[] scaledValues = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            scaledValues[i] = (int) Math.round(values[i] * scale);
+        }
+        return scaledValues;
     }
 
     /**
      * This method returns the similarity score of two symbols.
      * In the case of interactive mode just determines whether
      * they are identical or not and assigns score accordingly.
+     * Symbols missing from the matrix score as its lowest value,
+     * or as a mismatch in the interactive mode.
      *
      * @param a  First character for comparison
      * @param b  Second character for comparison
      * @return  The table value of similarity of the two parameters.
      */
-    public Double score(Character a, Character b) {
-        if (interactive) {
-            if (a.equals(b)) {
-                return values[0][0];
-            }
-            else {
-                return values[0][1];
-            }
+    public double score(char a, char b) {
+        return scores[encode(a) * size + encode(b)];
+    }
+
+    /**
+     * Translates a symbol to its code, that is a small number
+     * determining its row and column in the {@link #scores}.
+     *
+     * @param symbol  The symbol of a sequence.
+     * @return  Its code, or the code of an unknown symbol.
+     */
+    public byte encode(char symbol) {
+        return symbol < ASCII ? codes[symbol] : wideCodes.getOrDefault(symbol, (byte) (size - 1));
+    }
+
+    /**
+     * Translates the whole sequence to codes, so that the calculations
+     * can look the scores up directly.
+     *
+     * @param sequence  The sequence of symbols.
+     * @return  The codes of the symbols.
+     */
+    public byte[] encode(String sequence) {
+        byte[] encoded = new byte[sequence.length()];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = encode(sequence.charAt(i));
         }
-        else {
-            int keyA = keys.indexOf(a);
-            int keyB = keys.indexOf(b);
-            return values[keyA][keyB];
+        return encoded;
+    }
+
+    /**
+     * Translates the remaining bytes of the buffer to codes, each byte
+     * being one symbol, without turning them into a string first.
+     *
+     * @param symbols  The buffer of the symbols, read from its position to its limit.
+     * @return  The codes of the symbols.
+     */
+    public byte[] encode(ByteBuffer symbols) {
+        byte[] encoded = new byte[symbols.remaining()];
+        symbols.get(encoded);
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = encoded[i] >= 0 ? codes[encoded[i]] : (byte) (size - 1);
         }
+        return encoded;
+    }
+
+    /**
+     * Returns the number of codes, which is also the length of one row of the {@link #scores}.
+     *
+     * @return  The number of codes including the one of an unknown symbol.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the flat table of scores indexed by the code of the first symbol times
+     * {@link #size()} plus the code of the second one. The array is shared and
+     * must not be modified.
+     *
+     * @return  The table of scores.
+     */
+    double[] scores() {
+        return scores;
+    }
+
+    /**
+     * Returns the smallest power of ten which makes all the scores whole,
+     * chosen when the matrix is loaded.
+     *
+     * @return  The scale of the scores, or zero if they have more than {@link #MAX_DECIMALS} decimal places.
+     */
+    int scale() {
+        return scale;
+    }
+
+    /**
+     * Returns the table of scores in the layout of {@link #scores()}, multiplied
+     * by the {@link #scale()}. The array is shared and must not be modified.
+     *
+     * @return  The integer table of scores, or null if the scale is zero.
+     */
+    int[] integerScores() {
+        return integerScores;
     }
 
     /**
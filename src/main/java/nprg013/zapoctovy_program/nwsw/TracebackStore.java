@@ -0,0 +1,156 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The traceback flags of a table of any number of nodes, indexed by longs
+ * and kept outside of the heap, in chunks of {@link #CHUNK} bytes.
+ * <p>
+ * The flags are kept either in direct buffers, or in a temporary file mapped
+ * into memory, which the system writes to the disk as it runs short of memory
+ * and which is deleted when the store is closed.
+ */
+final class TracebackStore implements AutoCloseable {
+    private static final int CHUNK = 1 << 30;
+    private final long size;
+    private final ByteBuffer[] chunks;
+    /**
+     * The mapped temporary file, null for the direct buffers.
+     */
+    private final FileChannel channel;
+
+    private TracebackStore(long size, ByteBuffer[] chunks, FileChannel channel) {
+        this.size = size;
+        this.chunks = chunks;
+        this.channel = channel;
+    }
+
+    /**
+     * Allocates the flags of the given number of nodes in direct buffers if they fit
+     * into the budget and the direct memory, else in a mapped temporary file.
+     *
+     * @param size  The number of the nodes.
+     * @param directBudget  The largest number of bytes kept in direct buffers.
+     * @param directory  The directory of the temporary file, or null for the default one.
+     * @return  The store, all flags zero.
+     * @throws IOException  If the temporary file cannot be created.
+     */
+    static TracebackStore allocate(long size, long directBudget, Path directory) throws IOException {
+        if (size <= directBudget) {
+            try {
+                return direct(size);
+            }
+            catch (OutOfMemoryError e) {
+                // the direct memory is short, so the flags go to the disk instead
+            }
+        }
+        return mapped(size, directory);
+    }
+
+    /**
+     * Allocates the flags of the given number of nodes in direct buffers.
+     *
+     * @param size  The number of the nodes.
+     * @return  The store, all flags zero.
+     * @throws OutOfMemoryError  If the direct memory is exhausted.
+     */
+    static TracebackStore direct(long size) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect((int) Math.min(CHUNK, size - (long) i * CHUNK));
+        }
+        return new TracebackStore(size, chunks, null);
+    }
+
+    /**
+     * Creates a temporary file for the flags of the given number of nodes and maps it.
+     *
+     * @param size  The number of the nodes.
+     * @param directory  The directory of the temporary file, or null for the default one.
+     * @return  The store, all flags zero.
+     * @throws IOException  If the temporary file cannot be created or mapped.
+     */
+    static TracebackStore mapped(long size, Path directory) throws IOException {
+        Path path = directory == null ? Files.createTempFile("nwsw", ".traceback") : Files.createTempFile(directory, "nwsw", ".traceback");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount(size)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * CHUNK;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(CHUNK, size - start));
+            }
+            return new TracebackStore(size, chunks, channel);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static int chunkCount(long size) {
+        return (int) ((size + CHUNK - 1) / CHUNK);
+    }
+
+    /**
+     * Returns the number of the nodes.
+     *
+     * @return  The number of the flags kept.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the flags are kept in a mapped file.
+     *
+     * @return  True for the mapped file, false for the direct buffers.
+     */
+    boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * Returns the flags of a node.
+     *
+     * @param position  The index of the node.
+     * @return  The flags.
+     */
+    byte get(long position) {
+        return chunks[(int) (position / CHUNK)].get((int) (position % CHUNK));
+    }
+
+    /**
+     * Stores the flags of consecutive nodes, such as those of a row of the table.
+     *
+     * @param position  The index of the first node.
+     * @param flags  The flags.
+     * @param length  The number of the nodes.
+     */
+    void put(long position, byte[] flags, int length) {
+        int offset = 0;
+        while (offset < length) {
+            int index = (int) (position % CHUNK);
+            int count = Math.min(length - offset, CHUNK - index);
+            chunks[(int) (position / CHUNK)].put(index, flags, offset, count);
+            position += count;
+            offset += count;
+        }
+    }
+
+    /**
+     * Closes and deletes the mapped file, if the flags are kept in one.
+     *
+     * @throws IOException  If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * The vectorized Smith-Waterman score calculation across the sequences,
+ * used by {@link StripedSW#score(java.util.List)} only if the Vector API module is present.
+ * <p>
+ * Each lane of a vector holds a different target, so a batch of as many targets
+ * as there are lanes is aligned to the query in lockstep, column by column
+ * of the targets and row by row of the query, with no dependency between
+ * the lanes at all. For every column, the scores of the current symbols
+ * of the targets against each code are picked from the rows of the substitution
+ * matrix by rearranging the lanes of the row, or one by one if the row does not
+ * fit into a vector.
+ * <p>
+ * The targets shorter than the longest one of the batch are padded by columns
+ * scoring zero against everything, which cannot raise the best value of their
+ * lanes, so they are best batched with targets of similar lengths.
+ * <p>
+ * The values are kept in 8-bit lanes, and the targets whose values could overflow
+ * them are aligned again in 16-bit lanes. The lanes are clamped at zero after
+ * each step, zero being where every local alignment starts, so no value below
+ * zero is ever kept, and the overflow of one lane does not affect the others.
+ */
+final class VectorBatchSW {
+    /**
+     * Returned for the targets whose values could overflow even the 16-bit lanes.
+     */
+    static final int OVERFLOW = -1;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    /**
+     * The query sequence translated to the codes of the substitution matrix.
+     */
+    private final byte[] query;
+    /**
+     * The number of codes of the substitution matrix, which is also the code
+     * of the padding of the targets.
+     */
+    private final int stride;
+    /**
+     * Penalty for the first symbol of a gap.
+     */
+    private final int openPenalty;
+    /**
+     * Penalty for every other symbol of a gap.
+     */
+    private final int extendPenalty;
+    /**
+     * The highest value of the substitution matrix.
+     */
+    private final int maxScore;
+    /**
+     * The rows of the substitution matrix in 8-bit lanes, each {@link #byteRow} long
+     * and ending by the zero score of the padding, or null if they do not fit.
+     */
+    private final byte[] byteScores;
+    private final int byteRow;
+    /**
+     * The rows of the substitution matrix in 16-bit lanes, each {@link #shortRow} long
+     * and ending by the zero score of the padding, or null if they do not fit.
+     */
+    private final short[] shortScores;
+    private final int shortRow;
+
+    VectorBatchSW(byte[] query, double[] scores, int stride, int openPenalty, int extendPenalty) {
+        this.query = query;
+        this.stride = stride;
+        this.openPenalty = openPenalty;
+        this.extendPenalty = extendPenalty;
+        int max = Integer.MIN_VALUE;
+        int min = Integer.MAX_VALUE;
+        for (double score : scores) {
+            max = Math.max(max, (int) score);
+            min = Math.min(min, (int) score);
+        }
+        maxScore = max;
+        byteRow = Math.max(BYTES.length(), stride + 1);
+        shortRow = Math.max(SHORTS.length(), stride + 1);
+        if (fits(min, Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+            byteScores = new byte[stride * byteRow];
+            for (int code = 0; code < stride; code++) {
+                for (int symbol = 0; symbol < stride; symbol++) {
+                    byteScores[code * byteRow + symbol] = (byte) scores[code * stride + symbol];
+                }
+            }
+        }
+        else {
+            byteScores = null;
+        }
+        if (fits(min, Short.MIN_VALUE, Short.MAX_VALUE)) {
+            shortScores = new short[stride * shortRow];
+            for (int code = 0; code < stride; code++) {
+                for (int symbol = 0; symbol < stride; symbol++) {
+                    shortScores[code * shortRow + symbol] = (short) scores[code * stride + symbol];
+                }
+            }
+        }
+        else {
+            shortScores = null;
+        }
+    }
+
+    /**
+     * Returns the number of the targets aligned at once.
+     *
+     * @return  Number of 8-bit lanes in a vector.
+     */
+    static int lanes() {
+        return BYTES.length();
+    }
+
+    /**
+     * Computes the scores of the best local alignments of the query and a batch of targets.
+     *
+     * @param targets  At most {@link #lanes()} target sequences translated to the codes of the substitution matrix.
+     * @return  The score of each target, or {@link #OVERFLOW} if it does not fit into 16 bits.
+     */
+    int[] score(byte[][] targets) {
+        int[] results = new int[targets.length];
+        Arrays.fill(results, OVERFLOW);
+        if (byteScores != null) {
+            scoreBytes(targets, results);
+        }
+        if (shortScores == null) {
+            return results;
+        }
+        int lanes = SHORTS.length();
+        int[] pending = new int[targets.length];
+        int count = 0;
+        for (int k = 0; k < targets.length; k++) {
+            if (results[k] == OVERFLOW) {
+                pending[count++] = k;
+            }
+        }
+        for (int start = 0; start < count; start += lanes) {
+            byte[][] batch = new byte[Math.min(lanes, count - start)][];
+            for (int k = 0; k < batch.length; k++) {
+                batch[k] = targets[pending[start + k]];
+            }
+            int[] batchResults = new int[batch.length];
+            Arrays.fill(batchResults, OVERFLOW);
+            scoreShorts(batch, batchResults);
+            for (int k = 0; k < batch.length; k++) {
+                results[pending[start + k]] = batchResults[k];
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The calculation in 8-bit lanes.
+     *
+     * @param targets  The encoded targets, at most one per lane.
+     * @param results  The scores of the targets, set only for those whose values do not exceed the lanes.
+     */
+    private void scoreBytes(byte[][] targets, int[] results) {
+        int lanes = BYTES.length();
+        int m = query.length;
+        int length = longest(targets);
+        byte[] best = new byte[(m + 1) * lanes];
+        byte[] insert = new byte[(m + 1) * lanes];
+        byte[] profile = new byte[stride * lanes];
+        int[] codes = new int[lanes];
+        ByteVector zero = ByteVector.zero(BYTES);
+        ByteVector open = ByteVector.broadcast(BYTES, (byte) openPenalty);
+        ByteVector extend = ByteVector.broadcast(BYTES, (byte) extendPenalty);
+        ByteVector limit = ByteVector.broadcast(BYTES, (byte) (Byte.MAX_VALUE - maxScore));
+        ByteVector max = zero;
+        VectorMask<Byte> overflow = BYTES.maskAll(false);
+        for (int j = 0; j < length; j++) {
+            columnCodes(targets, j, codes);
+            if (byteRow == lanes) {
+                VectorShuffle<Byte> shuffle = VectorShuffle.fromArray(BYTES, codes, 0);
+                for (int code = 0; code < stride; code++) {
+                    ByteVector.fromArray(BYTES, byteScores, code * byteRow).rearrange(shuffle).intoArray(profile, code * lanes);
+                }
+            }
+            else {
+                for (int code = 0; code < stride; code++) {
+                    for (int lane = 0; lane < lanes; lane++) {
+                        profile[code * lanes + lane] = byteScores[code * byteRow + codes[lane]];
+                    }
+                }
+            }
+            ByteVector diagonal = zero;
+            ByteVector up = zero;
+            ByteVector delete = zero;
+            for (int i = 1; i <= m; i++) {
+                int offset = i * lanes;
+                ByteVector left = ByteVector.fromArray(BYTES, best, offset);
+                ByteVector gap = ByteVector.fromArray(BYTES, insert, offset).sub(extend).max(left.sub(open)).max(zero);
+                gap.intoArray(insert, offset);
+                delete = delete.sub(extend).max(up.sub(open)).max(zero);
+                ByteVector value = diagonal.add(ByteVector.fromArray(BYTES, profile, query[i - 1] * lanes)).max(zero);
+                value = value.max(gap).max(delete);
+                value.intoArray(best, offset);
+                max = max.max(value);
+                diagonal = left;
+                up = value;
+            }
+            overflow = overflow.or(max.compare(VectorOperators.GT, limit));
+        }
+        for (int lane = 0; lane < targets.length; lane++) {
+            if (!overflow.laneIsSet(lane)) {
+                results[lane] = max.lane(lane);
+            }
+        }
+    }
+
+    /**
+     * The calculation in 16-bit lanes.
+     *
+     * @param targets  The encoded targets, at most one per lane.
+     * @param results  The scores of the targets, set only for those whose values do not exceed the lanes.
+     */
+    private void scoreShorts(byte[][] targets, int[] results) {
+        int lanes = SHORTS.length();
+        int m = query.length;
+        int length = longest(targets);
+        short[] best = new short[(m + 1) * lanes];
+        short[] insert = new short[(m + 1) * lanes];
+        short[] profile = new short[stride * lanes];
+        int[] codes = new int[lanes];
+        ShortVector zero = ShortVector.zero(SHORTS);
+        ShortVector open = ShortVector.broadcast(SHORTS, (short) openPenalty);
+        ShortVector extend = ShortVector.broadcast(SHORTS, (short) extendPenalty);
+        ShortVector limit = ShortVector.broadcast(SHORTS, (short) (Short.MAX_VALUE - maxScore));
+        ShortVector max = zero;
+        VectorMask<Short> overflow = SHORTS.maskAll(false);
+        for (int j = 0; j < length; j++) {
+            columnCodes(targets, j, codes);
+            if (shortRow == lanes) {
+                VectorShuffle<Short> shuffle = VectorShuffle.fromArray(SHORTS, codes, 0);
+                for (int code = 0; code < stride; code++) {
+                    ShortVector.fromArray(SHORTS, shortScores, code * shortRow).rearrange(shuffle).intoArray(profile, code * lanes);
+                }
+            }
+            else {
+                for (int code = 0; code < stride; code++) {
+                    for (int lane = 0; lane < lanes; lane++) {
+                        profile[code * lanes + lane] = shortScores[code * shortRow + codes[lane]];
+                    }
+                }
+            }
+            ShortVector diagonal = zero;
+            ShortVector up = zero;
+            ShortVector delete = zero;
+            for (int i = 1; i <= m; i++) {
+                int offset = i * lanes;
+                ShortVector left = ShortVector.fromArray(SHORTS, best, offset);
+                ShortVector gap = ShortVector.fromArray(SHORTS, insert, offset).sub(extend).max(left.sub(open)).max(zero);
+                gap.intoArray(insert, offset);
+                delete = delete.sub(extend).max(up.sub(open)).max(zero);
+                ShortVector value = diagonal.add(ShortVector.fromArray(SHORTS, profile, query[i - 1] * lanes)).max(zero);
+                value = value.max(gap).max(delete);
+                value.intoArray(best, offset);
+                max = max.max(value);
+                diagonal = left;
+                up = value;
+            }
+            overflow = overflow.or(max.compare(VectorOperators.GT, limit));
+        }
+        for (int lane = 0; lane < targets.length; lane++) {
+            if (!overflow.laneIsSet(lane)) {
+                results[lane] = max.lane(lane);
+            }
+        }
+    }
+
+    /**
+     * Collects the symbols of one column of the batch, the padding code
+     * standing for the targets already ended and for the unused lanes.
+     *
+     * @param targets  The encoded targets.
+     * @param column  The column.
+     * @param codes  The code of each lane.
+     */
+    private void columnCodes(byte[][] targets, int column, int[] codes) {
+        for (int lane = 0; lane < codes.length; lane++) {
+            codes[lane] = lane < targets.length && column < targets[lane].length ? targets[lane][column] : stride;
+        }
+    }
+
+    /**
+     * Determines whether the scores and penalties fit into lanes of the given range.
+     *
+     * @param minScore  The lowest value of the substitution matrix.
+     * @param min  The lowest value of a lane.
+     * @param max  The highest value of a lane.
+     * @return  True if no calculation step can leave the range while the result stays below the limit.
+     */
+    private boolean fits(int minScore, int min, int max) {
+        return minScore >= min && maxScore < max && openPenalty <= max && extendPenalty <= max;
+    }
+
+    private static int longest(byte[][] targets) {
+        int length = 0;
+        for (byte[] target : targets) {
+            length = Math.max(length, target.length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,278 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vectorized Smith-Waterman score calculation after Farrar, used by
+ * {@link StripedSW} only if the Vector API module is present.
+ * <p>
+ * The query is split into as many segments as there are lanes in a vector,
+ * lane k holding the k-th segment, so that the nodes of one vector never
+ * depend on each other. The gap along the query is first carried between
+ * the vectors only, and then corrected by the lazy loop, which usually
+ * stops after a few vectors.
+ * <p>
+ * The values are kept in 8-bit lanes and recomputed in 16-bit lanes
+ * once they could overflow. The lanes are clamped at zero after each step,
+ * zero being where every local alignment starts, so no value below zero is ever kept.
+ * Both profiles are built up front, so that one instance can score
+ * any number of targets on any number of threads.
+ */
+final class VectorStripedSW {
+    /**
+     * Returned if even the 16-bit lanes could overflow.
+     */
+    static final int OVERFLOW = -1;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    /**
+     * The query sequence translated to the codes of the substitution matrix.
+     */
+    private final byte[] query;
+    /**
+     * Penalty for the first symbol of a gap.
+     */
+    private final int openPenalty;
+    /**
+     * Penalty for every other symbol of a gap.
+     */
+    private final int extendPenalty;
+    /**
+     * The highest and the lowest value of the substitution matrix.
+     */
+    private final int maxScore;
+    private final int minScore;
+    /**
+     * Scores of every code against the striped query in 8-bit lanes,
+     * or null if they do not fit.
+     */
+    private final byte[] byteProfile;
+    private final int byteSegments;
+    /**
+     * Scores of every code against the striped query in 16-bit lanes,
+     * or null if they do not fit.
+     */
+    private final short[] shortProfile;
+    private final int shortSegments;
+
+    VectorStripedSW(byte[] query, double[] scores, int stride, int openPenalty, int extendPenalty) {
+        this.query = query;
+        this.openPenalty = openPenalty;
+        this.extendPenalty = extendPenalty;
+        int max = Integer.MIN_VALUE;
+        int min = Integer.MAX_VALUE;
+        for (double score : scores) {
+            max = Math.max(max, (int) score);
+            min = Math.min(min, (int) score);
+        }
+        maxScore = max;
+        minScore = min;
+        byteSegments = segments(BYTES.length());
+        shortSegments = segments(SHORTS.length());
+        if (fits(Byte.MIN_VALUE, Byte.MAX_VALUE)) {
+            byteProfile = new byte[stride * byteSegments * BYTES.length()];
+            for (int code = 0; code < stride; code++) {
+                int offset = code * byteSegments * BYTES.length();
+                for (int j = 0; j < byteSegments * BYTES.length(); j++) {
+                    int position = profilePosition(j, byteSegments, BYTES.length());
+                    byteProfile[offset + j] = position < query.length
+                            ? (byte) scores[query[position] * stride + code] : Byte.MIN_VALUE;
+                }
+            }
+        }
+        else {
+            byteProfile = null;
+        }
+        if (fits(Short.MIN_VALUE, Short.MAX_VALUE)) {
+            shortProfile = new short[stride * shortSegments * SHORTS.length()];
+            for (int code = 0; code < stride; code++) {
+                int offset = code * shortSegments * SHORTS.length();
+                for (int j = 0; j < shortSegments * SHORTS.length(); j++) {
+                    int position = profilePosition(j, shortSegments, SHORTS.length());
+                    shortProfile[offset + j] = position < query.length
+                            ? (short) scores[query[position] * stride + code] : Short.MIN_VALUE;
+                }
+            }
+        }
+        else {
+            shortProfile = null;
+        }
+    }
+
+    /**
+     * Computes the score of the best local alignment of the query and the target.
+     *
+     * @param target  The target sequence translated to the codes of the substitution matrix.
+     * @return  The score, or {@link #OVERFLOW} if it does not fit into 16 bits.
+     */
+    int score(byte[] target) {
+        if (byteProfile != null) {
+            int result = scoreBytes(target);
+            if (result != OVERFLOW) {
+                return result;
+            }
+        }
+        if (shortProfile == null) {
+            return OVERFLOW;
+        }
+        return scoreShorts(target);
+    }
+
+    /**
+     * The calculation in 8-bit lanes.
+     *
+     * @param target  The encoded target sequence.
+     * @return  The score, or {@link #OVERFLOW} if the values could exceed the lanes.
+     */
+    private int scoreBytes(byte[] target) {
+        int lanes = BYTES.length();
+        int segments = byteSegments;
+        byte[] bestStore = new byte[segments * lanes];
+        byte[] bestLoad = new byte[segments * lanes];
+        byte[] insert = new byte[segments * lanes];
+        ByteVector zero = ByteVector.zero(BYTES);
+        ByteVector open = ByteVector.broadcast(BYTES, (byte) openPenalty);
+        ByteVector extend = ByteVector.broadcast(BYTES, (byte) extendPenalty);
+        ByteVector max = zero;
+        int limit = Byte.MAX_VALUE - maxScore;
+        for (byte symbol : target) {
+            int profileOffset = symbol * segments * lanes;
+            ByteVector delete = zero;
+            ByteVector best = ByteVector.fromArray(BYTES, bestStore, (segments - 1) * lanes).unslice(1);
+            byte[] swap = bestLoad;
+            bestLoad = bestStore;
+            bestStore = swap;
+            for (int j = 0; j < segments; j++) {
+                int offset = j * lanes;
+                best = best.add(ByteVector.fromArray(BYTES, byteProfile, profileOffset + offset)).max(zero);
+                ByteVector gap = ByteVector.fromArray(BYTES, insert, offset);
+                best = best.max(gap).max(delete);
+                max = max.max(best);
+                best.intoArray(bestStore, offset);
+                best = best.sub(open).max(zero);
+                gap.sub(extend).max(best).intoArray(insert, offset);
+                delete = delete.sub(extend).max(best);
+                best = ByteVector.fromArray(BYTES, bestLoad, offset);
+            }
+            delete = delete.unslice(1);
+            lazy:
+            for (int k = 0; k < lanes; k++) {
+                for (int j = 0; j < segments; j++) {
+                    int offset = j * lanes;
+                    best = ByteVector.fromArray(BYTES, bestStore, offset);
+                    if (!delete.compare(VectorOperators.GT, best.sub(open).max(zero)).anyTrue()) {
+                        break lazy;
+                    }
+                    best = best.max(delete);
+                    best.intoArray(bestStore, offset);
+                    max = max.max(best);
+                    best = best.sub(open).max(zero);
+                    ByteVector.fromArray(BYTES, insert, offset).max(best).intoArray(insert, offset);
+                    delete = delete.sub(extend).max(zero);
+                }
+                delete = delete.unslice(1);
+            }
+            if (max.reduceLanes(VectorOperators.MAX) > limit) {
+                return OVERFLOW;
+            }
+        }
+        return max.reduceLanes(VectorOperators.MAX);
+    }
+
+    /**
+     * The calculation in 16-bit lanes.
+     *
+     * @param target  The encoded target sequence.
+     * @return  The score, or {@link #OVERFLOW} if the values could exceed the lanes.
+     */
+    private int scoreShorts(byte[] target) {
+        int lanes = SHORTS.length();
+        int segments = shortSegments;
+        short[] bestStore = new short[segments * lanes];
+        short[] bestLoad = new short[segments * lanes];
+        short[] insert = new short[segments * lanes];
+        ShortVector zero = ShortVector.zero(SHORTS);
+        ShortVector open = ShortVector.broadcast(SHORTS, (short) openPenalty);
+        ShortVector extend = ShortVector.broadcast(SHORTS, (short) extendPenalty);
+        ShortVector max = zero;
+        int limit = Short.MAX_VALUE - maxScore;
+        for (byte symbol : target) {
+            int profileOffset = symbol * segments * lanes;
+            ShortVector delete = zero;
+            ShortVector best = ShortVector.fromArray(SHORTS, bestStore, (segments - 1) * lanes).unslice(1);
+            short[] swap = bestLoad;
+            bestLoad = bestStore;
+            bestStore = swap;
+            for (int j = 0; j < segments; j++) {
+                int offset = j * lanes;
+                best = best.add(ShortVector.fromArray(SHORTS, shortProfile, profileOffset + offset)).max(zero);
+                ShortVector gap = ShortVector.fromArray(SHORTS, insert, offset);
+                best = best.max(gap).max(delete);
+                max = max.max(best);
+                best.intoArray(bestStore, offset);
+                best = best.sub(open).max(zero);
+                gap.sub(extend).max(best).intoArray(insert, offset);
+                delete = delete.sub(extend).max(best);
+                best = ShortVector.fromArray(SHORTS, bestLoad, offset);
+            }
+            delete = delete.unslice(1);
+            lazy:
+            for (int k = 0; k < lanes; k++) {
+                for (int j = 0; j < segments; j++) {
+                    int offset = j * lanes;
+                    best = ShortVector.fromArray(SHORTS, bestStore, offset);
+                    if (!delete.compare(VectorOperators.GT, best.sub(open).max(zero)).anyTrue()) {
+                        break lazy;
+                    }
+                    best = best.max(delete);
+                    best.intoArray(bestStore, offset);
+                    max = max.max(best);
+                    best = best.sub(open).max(zero);
+                    ShortVector.fromArray(SHORTS, insert, offset).max(best).intoArray(insert, offset);
+                    delete = delete.sub(extend).max(zero);
+                }
+                delete = delete.unslice(1);
+            }
+            if (max.reduceLanes(VectorOperators.MAX) > limit) {
+                return OVERFLOW;
+            }
+        }
+        return max.reduceLanes(VectorOperators.MAX);
+    }
+
+    /**
+     * Determines whether the scores and penalties fit into lanes of the given range.
+     *
+     * @param min  The lowest value of a lane.
+     * @param max  The highest value of a lane.
+     * @return  True if no calculation step can leave the range while the result stays below the limit.
+     */
+    private boolean fits(int min, int max) {
+        return minScore >= min && maxScore < max && openPenalty <= max && extendPenalty <= max;
+    }
+
+    /**
+     * Number of segments the query is split into.
+     *
+     * @param lanes  Number of lanes in a vector.
+     * @return  Length of one segment.
+     */
+    private int segments(int lanes) {
+        return Math.max(1, (query.length + lanes - 1) / lanes);
+    }
+
+    /**
+     * Translates the position in the striped profile to the position in the query.
+     *
+     * @param j  Position in the profile of one code.
+     * @param segments  Length of one segment.
+     * @param lanes  Number of lanes in a vector.
+     * @return  Position in the query, possibly past its end.
+     */
+    private static int profilePosition(int j, int segments, int lanes) {
+        return (j % lanes) * segments + j / lanes;
+    }
+}
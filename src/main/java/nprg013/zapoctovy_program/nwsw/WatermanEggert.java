@@ -0,0 +1,282 @@
+package nprg013.zapoctovy_program.nwsw;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Waterman-Eggert search for the best local alignments which do not intersect,
+ * that is which share no node of the table.
+ * <p>
+ * The table is filled once by the rules of {@link SW}, keeping the values and both
+ * gap states of all the nodes. After each alignment is traced back, its nodes are
+ * declared used, their values set to zero and the gap states to minus infinity,
+ * so no later alignment passes through them. Only the nodes whose values may depend
+ * on the used ones are then computed again: each row from the first node which has
+ * changed in the row above or which has been used, and on to the right until
+ * both the nodes above are past the changes and the node itself has not changed.
+ * The values never grow by this, so the best node of each row is searched for
+ * again only if the previous best one has changed.
+ */
+final class WatermanEggert {
+    private final PSA psa;
+    private final boolean affine;
+    private final double open;
+    private final double extend;
+    private final int m;
+    private final int n;
+    private final double[] values;
+    /**
+     * Gotoh gap states of all the nodes, null for the linear gap penalty.
+     */
+    private final double[] insertValues;
+    private final double[] deleteValues;
+    private final byte[] flags;
+    private final boolean[] used;
+    /**
+     * The highest value of each row, and the first column where it is reached.
+     */
+    private final double[] rowMax;
+    private final int[] rowBest;
+
+    /**
+     * Fills the table.
+     *
+     * @param psa  The calculation whose sequences, matrix and gap penalty are used.
+     */
+    WatermanEggert(PSA psa) {
+        this.psa = psa;
+        switch (psa.gapPenalty.getType()) {
+            case AFFINE:
+                affine = true;
+                open = psa.gapPenalty.countAffine(1);
+                break;
+            case LINEAR:
+                affine = false;
+                open = psa.gapPenalty.linearPart();
+                break;
+            default:
+                throw new GapPenalty.GapPenaltyNumericalError("Gap penalty not properly initialized");
+        }
+        extend = psa.gapPenalty.linearPart();
+        m = psa.seq1.length() + 1;
+        n = psa.seq2.length() + 1;
+        int nodes = PSA.tableNodes(m, n);
+        values = new double[nodes];
+        insertValues = affine ? new double[nodes] : null;
+        deleteValues = affine ? new double[nodes] : null;
+        if (affine) {
+            Arrays.fill(insertValues, Double.NEGATIVE_INFINITY);
+            Arrays.fill(deleteValues, Double.NEGATIVE_INFINITY);
+        }
+        flags = new byte[nodes];
+        used = new boolean[nodes];
+        rowMax = new double[m];
+        rowBest = new int[m];
+        for (int i = 1; i < m; i++) {
+            for (int j = 1; j < n; j++) {
+                compute(i, j);
+            }
+            findRowMax(i);
+        }
+    }
+
+    /**
+     * Finds the best alignments one after another.
+     *
+     * @param psa  The calculation whose sequences, matrix and gap penalty are used.
+     * @param maxCount  The largest number of alignments.
+     * @param minScore  The lowest score of an alignment, any positive one if not positive.
+     * @return  The alignments ordered by their score.
+     */
+    static List<LocalAlignment> align(PSA psa, int maxCount, double minScore) {
+        List<LocalAlignment> alignments = new ArrayList<>();
+        if (maxCount <= 0) {
+            return alignments;
+        }
+        WatermanEggert table = new WatermanEggert(psa);
+        while (alignments.size() < maxCount) {
+            int best = table.best();
+            if (best < 0 || table.values[best] < minScore) {
+                break;
+            }
+            alignments.add(table.extract(best));
+        }
+        return alignments;
+    }
+
+    /**
+     * Finds the node of the highest value, the first one
+     * in the order of {@link SW#backtrack()} if there are more.
+     *
+     * @return  The node, or -1 if no node has a positive value.
+     */
+    private int best() {
+        int bestRow = -1;
+        for (int i = 1; i < m; i++) {
+            if (rowMax[i] > 0.0 && (bestRow < 0 || rowMax[i] > rowMax[bestRow])) {
+                bestRow = i;
+            }
+        }
+        return bestRow < 0 ? -1 : bestRow * n + rowBest[bestRow];
+    }
+
+    /**
+     * Traces back the alignment ending at a node, declares its nodes used
+     * and computes again the nodes depending on them.
+     *
+     * @param end  The node where the alignment ends.
+     * @return  The alignment.
+     */
+    private LocalAlignment extract(int end) {
+        Alignment.Builder alignment = new Alignment.Builder(psa.seq1, psa.seq2);
+        int[] firstUsed = new int[m];
+        int[] lastUsed = new int[m];
+        Arrays.fill(firstUsed, n);
+        Arrays.fill(lastUsed, -1);
+        int current = end;
+        int top = end / n;
+        byte state = 0;
+        while (state != 0 || (flags[current] & (PSA.DIAGONAL | PSA.LEFT | PSA.UP)) != 0) {
+            byte nodeFlags = flags[current];
+            int row = current / n;
+            int column = current % n;
+            used[current] = true;
+            top = row;
+            firstUsed[row] = Math.min(firstUsed[row], column);
+            lastUsed[row] = Math.max(lastUsed[row], column);
+            if (state == 0) {
+                state = (byte) (nodeFlags & (PSA.DIAGONAL | PSA.LEFT | PSA.UP));
+            }
+            if (state == PSA.DIAGONAL) {
+                alignment.pair(row - 1, column - 1);
+                current -= n + 1;
+                state = 0;
+            }
+            else if (state == PSA.LEFT) {
+                alignment.add(Alignment.DELETE);
+                current -= 1;
+                state = (nodeFlags & PSA.INSERT_EXTEND) != 0 ? PSA.LEFT : 0;
+            }
+            else {
+                alignment.add(Alignment.INSERT);
+                current -= n;
+                state = (nodeFlags & PSA.DELETE_EXTEND) != 0 ? PSA.UP : 0;
+            }
+        }
+        LocalAlignment local = new LocalAlignment(alignment.build(values[end], current / n, current % n));
+        recompute(top, firstUsed, lastUsed);
+        return local;
+    }
+
+    /**
+     * Computes again the nodes which may have changed by the nodes declared used.
+     *
+     * @param top  The first row with a used node.
+     * @param firstUsed  The first used column of each row, n if there is none.
+     * @param lastUsed  The last used column of each row, -1 if there is none.
+     */
+    private void recompute(int top, int[] firstUsed, int[] lastUsed) {
+        int changedFrom = n;
+        int changedTo = -1;
+        for (int i = top; i < m; i++) {
+            int from = Math.min(changedFrom, firstUsed[i]);
+            int to = Math.max(changedTo + 1, lastUsed[i]);
+            if (from > to) {
+                break;
+            }
+            changedFrom = n;
+            changedTo = -1;
+            for (int j = Math.max(from, 1); j < n; j++) {
+                boolean changed = compute(i, j);
+                if (changed) {
+                    changedFrom = Math.min(changedFrom, j);
+                    changedTo = j;
+                }
+                else if (j >= to) {
+                    break;
+                }
+            }
+            if (changedFrom <= rowBest[i] && rowBest[i] <= changedTo) {
+                findRowMax(i);
+            }
+        }
+    }
+
+    /**
+     * Computes the value, the gap states and the flags of a node
+     * by the rules of {@link SW}.
+     *
+     * @param row  The row of the node.
+     * @param column  The column of the node.
+     * @return  True if the value or some of the gap states have changed.
+     */
+    private boolean compute(int row, int column) {
+        int current = row * n + column;
+        double value = 0.0;
+        double insertValue = Double.NEGATIVE_INFINITY;
+        double deleteValue = Double.NEGATIVE_INFINITY;
+        byte nodeFlags = 0;
+        if (!used[current]) {
+            value = Math.max(values[current - n - 1] + psa.scores[psa.encoded1[row - 1] * psa.stride + psa.encoded2[column - 1]], 0.0);
+            double valueHolder = value;
+            if (value > 0.0) {
+                nodeFlags = PSA.DIAGONAL;
+            }
+            byte gapFlags = 0;
+            if (affine) {
+                if (column > 1) {
+                    double openValue = values[current - 1] - open;
+                    double extendValue = insertValues[current - 1] - extend;
+                    insertValue = Math.max(openValue, extendValue);
+                    gapFlags |= openValue >= extendValue ? PSA.INSERT_OPEN : PSA.INSERT_EXTEND;
+                }
+                if (row > 1) {
+                    double openValue = values[current - n] - open;
+                    double extendValue = deleteValues[current - n] - extend;
+                    deleteValue = Math.max(openValue, extendValue);
+                    gapFlags |= openValue >= extendValue ? PSA.DELETE_OPEN : PSA.DELETE_EXTEND;
+                }
+            }
+            else {
+                insertValue = values[current - 1] - open;
+                deleteValue = values[current - n] - open;
+            }
+            value = Math.max(value, insertValue);
+            if (value > valueHolder) {
+                nodeFlags = PSA.LEFT;
+                valueHolder = value;
+            }
+            value = Math.max(value, deleteValue);
+            if (value > valueHolder) {
+                nodeFlags = PSA.UP;
+            }
+            nodeFlags |= gapFlags;
+        }
+        flags[current] = nodeFlags;
+        boolean changed = value != values[current];
+        values[current] = value;
+        if (affine) {
+            changed |= insertValue != insertValues[current] || deleteValue != deleteValues[current];
+            insertValues[current] = insertValue;
+            deleteValues[current] = deleteValue;
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the highest value of a row and the first column where it is reached.
+     *
+     * @param row  The row.
+     */
+    private void findRowMax(int row) {
+        rowMax[row] = 0.0;
+        rowBest[row] = 0;
+        for (int j = 1; j < n; j++) {
+            if (values[row * n + j] > rowMax[row]) {
+                rowMax[row] = values[row * n + j];
+                rowBest[row] = j;
+            }
+        }
+    }
+}
@@ -2,10 +2,27 @@ package nprg013.zapoctovy_program.nwsw;
 
 import org.junit.Assert;
 import org.junit.Test;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class NWSWTest {
     @Test
@@ -98,4 +115,832 @@ public class NWSWTest {
         Assert.assertTrue((result.get(0)[0].equals(result.get(1)[0]) && result.get(1)[0].equals(result.get(2)[0])) ||
                 (result.get(0)[1].equals(result.get(1)[1]) && result.get(1)[1].equals(result.get(2)[1])));
     }
+    @Test
+    public void nwAffineTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seq1path = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/test2a.txt")).getPath();
+        String seq2path = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/test2b.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/DNAfull.txt")).getPath();
+        NWSW nwTest = new NWSW();
+        List<String[]> result = nwTest.needlemanWunsch(seq1path, seq2path, mxPath, 1, 5);
+        Assert.assertEquals(4, result.size());
+        Assert.assertEquals("TACGGGCCCGCTA_____C_", result.get(0)[0]);
+        Assert.assertEquals("TA___GCC__CTATCGGTCA", result.get(0)[1]);
+        Assert.assertEquals("TACGGGCCCGCTA_C_____", result.get(3)[0]);
+        Assert.assertEquals("TA___GCCC__TATCGGTCA", result.get(3)[1]);
+    }
+    @Test(timeout = 30000)
+    public void affineLongSequenceTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seqPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        NWSW test = new NWSW();
+        List<String[]> nwResult = test.needlemanWunsch(seqPath, seqPath, mxPath, 1, 10);
+        List<String[]> swResult = test.smithWaterman(seqPath, seqPath, mxPath, 1, 10);
+        Assert.assertEquals(1, nwResult.size());
+        Assert.assertEquals(1255, nwResult.get(0)[0].length());
+        Assert.assertEquals(nwResult.get(0)[0], swResult.get(0)[1]);
+    }
+    @Test
+    public void nwLinearSpaceTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seq1path = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/test2a.txt")).getPath();
+        String seq2path = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/test2b.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/DNAfull.txt")).getPath();
+        NWSW nwTest = new NWSW();
+        List<String[]> all = nwTest.needlemanWunsch(seq1path, seq2path, mxPath, 1, 5);
+        List<String[]> single = nwTest.needlemanWunschLinearSpace(seq1path, seq2path, mxPath, 1, 5);
+        Assert.assertEquals(1, single.size());
+        Assert.assertTrue(all.stream().anyMatch(r -> r[0].equals(single.get(0)[0]) && r[1].equals(single.get(0)[1])));
+        List<String[]> linear = nwTest.needlemanWunsch(seq1path, seq2path, mxPath, 1);
+        nwTest.setHeapBudget(0);
+        List<String[]> automatic = nwTest.needlemanWunsch(seq1path, seq2path, mxPath, 1);
+        Assert.assertEquals(1, automatic.size());
+        Assert.assertTrue(linear.stream().anyMatch(r -> r[0].equals(automatic.get(0)[0]) && r[1].equals(automatic.get(0)[1])));
+    }
+    @Test(timeout = 30000)
+    public void nwLinearSpaceLongTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seqPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        NWSW test = new NWSW();
+        List<String[]> result = test.needlemanWunschLinearSpace(seqPath, seqPath, mxPath, 1, 10);
+        Assert.assertEquals(1255, result.get(0)[0].length());
+        Assert.assertEquals(result.get(0)[0], result.get(0)[1]);
+    }
+    @Test
+    public void unknownResidueTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/testMX.txt")).getPath();
+        SubstMatrix matrix = new SubstMatrix(mxPath);
+        Assert.assertEquals(-3.0, matrix.score('A', 'X'), 0.0);
+        Assert.assertEquals(-3.0, matrix.score('\u00e9', 'A'), 0.0);
+        Assert.assertEquals(matrix.encode('X'), matrix.encode('Z'));
+        SubstMatrix interactive = new SubstMatrix("2", "-1");
+        Assert.assertEquals(2.0, interactive.score('x', 'x'), 0.0);
+        Assert.assertEquals(-1.0, interactive.score('x', 'X'), 0.0);
+        NW nw = new NW("GATXACA", "GATTACA", "1", "-1", "1");
+        nw.calculate();
+        Assert.assertEquals("GATXACA", nw.getResults().get(0)[0]);
+    }
+    @Test
+    public void stripedSWTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(5);
+        for (String matrixName : new String[]{"DNAfull.txt", "nwMCsimple.txt", "PAM250.txt"}) {
+            String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/" + matrixName)).getPath();
+            SubstMatrix matrix = new SubstMatrix(mxPath);
+            String alphabet = matrixName.equals("PAM250.txt") ? "ARNDCQEGHILKMFPSTWYV" : "ACGT";
+            for (List<String> gapValue : List.of(List.of("4"), List.of("1", "6"))) {
+                GapPenalty gapPenalty = new GapPenalty(gapValue);
+                for (int test = 0; test < 50; test++) {
+                    String query = randomSequence(random, alphabet, 1 + random.nextInt(70));
+                    String target = randomSequence(random, alphabet, 1 + random.nextInt(70));
+                    SW sw = new SW(query, target, matrix, gapPenalty);
+                    sw.calculate();
+                    Assert.assertEquals(sw.getScore(), new StripedSW(query, matrix, gapPenalty).score(target), 1e-9);
+                    Assert.assertEquals(sw.getScore(), new StripedSW(query, matrix, gapPenalty, false).score(target), 1e-9);
+                }
+            }
+        }
+    }
+    @Test(timeout = 30000)
+    public void stripedSWOverflowTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seqPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String sequence = new LoadSeq(seqPath, seqPath).getFirst();
+        SubstMatrix matrix = new SubstMatrix("5", "-4");
+        GapPenalty gapPenalty = new GapPenalty(List.of("1", "10"));
+        SW sw = new SW(sequence, sequence.substring(200, 900), matrix, gapPenalty);
+        sw.calculate();
+        StripedSW striped = new StripedSW(sequence, matrix, gapPenalty);
+        Assert.assertEquals(3500.0, sw.getScore(), 0.0);
+        Assert.assertEquals(sw.getScore(), striped.score(sequence.substring(200, 900)), 0.0);
+        Assert.assertEquals(StripedSW.VECTOR_API, striped.isVectorized());
+        Assert.assertEquals(5.0 * sequence.length(), striped.score(sequence + sequence.substring(0, 10)), 0.0);
+        String repeated = sequence.repeat(6);
+        Assert.assertEquals(5.0 * repeated.length(), new StripedSW(repeated, matrix, gapPenalty).score(repeated), 0.0);
+    }
+    @Test
+    public void parallelFillTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        SubstMatrix matrix = new SubstMatrix(mxPath);
+        Random random = new Random(6);
+        String seq1 = randomSequence(random, "ARNDCQEGHILKMFPSTWYV", 300);
+        String seq2 = randomSequence(random, "ARNDCQEGHILKMFPSTWYV", 250);
+        for (List<String> gapValue : List.of(List.of("2"), List.of("1", "8"))) {
+            GapPenalty gapPenalty = new GapPenalty(gapValue);
+            PSA[][] pairs = {{new NW(seq1, seq2, matrix, gapPenalty), new NW(seq1, seq2, matrix, gapPenalty)},
+                    {new SW(seq1, seq2, matrix, gapPenalty), new SW(seq1, seq2, matrix, gapPenalty)}};
+            for (PSA[] pair : pairs) {
+                pair[1].setTileSize(17);
+                pair[0].calculate();
+                pair[1].calculate();
+                Assert.assertTrue(Arrays.deepEquals(pair[0].table, pair[1].table));
+                Assert.assertArrayEquals(pair[0].traceback, pair[1].traceback);
+                Assert.assertEquals(pair[0].getScore(), pair[1].getScore(), 0.0);
+                Assert.assertEquals(pair[0].results.size(), pair[1].results.size());
+            }
+        }
+    }
+    @Test
+    public void databaseSearchTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String queryPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String dbPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/database.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        NWSW test = new NWSW();
+        List<DatabaseSearch.Hit> hits = test.search(queryPath, dbPath, mxPath, 1, 10, 3);
+        Assert.assertEquals(3, hits.size());
+        Assert.assertEquals(">spike_fragment_300_420", hits.get(0).getInfo().get(0));
+        Assert.assertEquals(">spike_fragment_900_960", hits.get(1).getInfo().get(0));
+        Assert.assertEquals(120, hits.get(0).getSequence().length());
+        String query = new LoadSeq(queryPath, queryPath).getFirst();
+        for (DatabaseSearch.Hit hit : hits) {
+            SW sw = new SW(query, hit.getSequence(), new SubstMatrix(mxPath), new GapPenalty(List.of("1", "10")));
+            sw.calculate();
+            Assert.assertEquals(sw.getScore(), hit.getScore(), 1e-9);
+        }
+        DatabaseSearch search = new DatabaseSearch(queryPath, mxPath, List.of("2"));
+        search.setThreads(1);
+        List<DatabaseSearch.Hit> all = search.search(dbPath, 100);
+        Assert.assertEquals(14, all.size());
+        search.setThreads(3);
+        List<DatabaseSearch.Hit> parallel = search.search(dbPath, 100);
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertEquals(all.get(i).getIndex(), parallel.get(i).getIndex());
+        }
+        Assert.assertTrue(search.search(dbPath, 0).isEmpty());
+    }
+    @Test
+    public void sequenceDatabaseTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String queryPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String fastaPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/database.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        Path dbPath = Files.createTempFile("database", ".db");
+        dbPath.toFile().deleteOnExit();
+        NWSW.convertDatabase(fastaPath, dbPath.toString());
+        Assert.assertTrue(SequenceDatabase.isDatabase(dbPath.toString()));
+        Assert.assertFalse(SequenceDatabase.isDatabase(fastaPath));
+        try (SequenceDatabase database = new SequenceDatabase(dbPath.toString());
+             FastaReader reader = new FastaReader(fastaPath)) {
+            Assert.assertEquals(14, database.size());
+            for (long i = 0; i < database.size(); i++) {
+                FastaRecord expected = reader.nextRecord();
+                Assert.assertEquals(expected.getHeader(), database.record(i).getHeader());
+                Assert.assertEquals(expected.getSequence(), database.record(i).getSequence());
+            }
+        }
+        NWSW test = new NWSW();
+        List<DatabaseSearch.Hit> fromFasta = test.search(queryPath, fastaPath, mxPath, 1, 10, 5);
+        List<DatabaseSearch.Hit> fromDatabase = test.search(queryPath, dbPath.toString(), mxPath, 1, 10, 5);
+        for (int i = 0; i < fromFasta.size(); i++) {
+            Assert.assertEquals(fromFasta.get(i).getIndex(), fromDatabase.get(i).getIndex());
+            Assert.assertEquals(fromFasta.get(i).getScore(), fromDatabase.get(i).getScore(), 0.0);
+            Assert.assertEquals(fromFasta.get(i).getInfo(), fromDatabase.get(i).getInfo());
+        }
+        Path dnaPath = Files.createTempFile("dna", ".fasta");
+        dnaPath.toFile().deleteOnExit();
+        Random random = new Random(12);
+        StringBuilder fasta = new StringBuilder();
+        List<String> sequences = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sequences.add(randomSequence(random, "ACGT", random.nextInt(200)));
+            fasta.append(">dna").append(i).append('\n').append(sequences.get(i)).append('\n');
+        }
+        Files.writeString(dnaPath, fasta);
+        NWSW.convertDatabase(dnaPath.toString(), dbPath.toString());
+        Assert.assertTrue(Files.size(dbPath) < Files.size(dnaPath));
+        try (SequenceDatabase database = new SequenceDatabase(dbPath.toString())) {
+            for (int i = 0; i < sequences.size(); i++) {
+                Assert.assertEquals(sequences.get(i), database.record(i).getSequence());
+            }
+        }
+        Assert.assertEquals(sequences.get(0), new LoadSeq(dbPath.toString(), dnaPath.toString()).getFirst());
+    }
+    @Test
+    public void matrixRegistryTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        SubstMatrix matrix = MatrixRegistry.get(mxPath);
+        Assert.assertSame(matrix, MatrixRegistry.get(mxPath));
+        Assert.assertTrue(List.of(1, 2, 3, 4).parallelStream().allMatch(i -> {
+            try {
+                return MatrixRegistry.get(mxPath) == matrix;
+            }
+            catch (IOException | SubstMatrix.MatrixDimensionException e) {
+                return false;
+            }
+        }));
+        SubstMatrix bundled = MatrixRegistry.get("PAM250");
+        Assert.assertNotSame(matrix, bundled);
+        Assert.assertArrayEquals(matrix.scores(), bundled.scores(), 0.0);
+        Assert.assertEquals(11.0, MatrixRegistry.builtIn("BLOSUM62").score('W', 'W'), 0.0);
+        Assert.assertEquals(-4.0, MatrixRegistry.builtIn("BLOSUM62").score('*', 'A'), 0.0);
+        Assert.assertEquals(5.0, MatrixRegistry.builtIn("DNAfull").score('A', 'A'), 0.0);
+        Path copy = Files.createTempFile("matrix", ".txt");
+        copy.toFile().deleteOnExit();
+        Files.writeString(copy, "  A B\nA 1 -1\nB -1 1\n");
+        Assert.assertEquals(1.0, MatrixRegistry.get(copy.toString()).score('A', 'A'), 0.0);
+        Files.writeString(copy, "  A B\nA 2 -1\nB -1 2\n");
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 10000));
+        Assert.assertEquals(2.0, MatrixRegistry.get(copy.toString()).score('A', 'A'), 0.0);
+        Files.writeString(copy, "  A B\nA x -1\nB -1 2\n");
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(Files.getLastModifiedTime(copy).toMillis() + 20000));
+        Assert.assertThrows(SubstMatrix.MatrixDimensionException.class, () -> MatrixRegistry.get(copy.toString()));
+        Assert.assertThrows(IOException.class, () -> MatrixRegistry.get(copy + ".missing"));
+    }
+    @Test
+    public void nwLazyAlignmentsTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seq1path = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/test2a.txt")).getPath();
+        String seq2path = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/test2b.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/DNAfull.txt")).getPath();
+        NWSW nwTest = new NWSW();
+        List<String[]> all = nwTest.needlemanWunsch(seq1path, seq2path, mxPath, 1, 5);
+        List<String[]> lazy = nwTest.needlemanWunschAlignments(seq1path, seq2path, mxPath, 1, 5, 100).collect(Collectors.toList());
+        Assert.assertEquals(all.size(), lazy.size());
+        for (int i = 0; i < all.size(); i++) {
+            Assert.assertArrayEquals(all.get(i), lazy.get(i));
+        }
+        Assert.assertEquals(2, nwTest.needlemanWunschAlignments(seq1path, seq2path, mxPath, 1, 5, 2).count());
+    }
+    @Test(timeout = 30000)
+    public void nwLazyRepetitiveTest() throws SubstMatrix.MatrixDimensionException {
+        NW nw = new NW("A".repeat(3000), "A".repeat(1500), "1", "-1", "1");
+        List<String[]> first = nw.alignments(3, NW.TieBreak.DIAGONAL_FIRST).collect(Collectors.toList());
+        Assert.assertEquals(3, first.size());
+        Assert.assertTrue(first.get(0)[1].equals("_".repeat(1500) + "A".repeat(1500)));
+        Assert.assertEquals(3000, first.get(1)[1].length());
+        Assert.assertFalse(first.get(0)[1].equals(first.get(1)[1]));
+        String[] gapsFirst = nw.alignments(1, NW.TieBreak.GAPS_FIRST).findFirst().orElseThrow();
+        Assert.assertTrue(gapsFirst[1].equals("A".repeat(1500) + "_".repeat(1500)));
+    }
+    @Test
+    public void scoreOnlyTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(10);
+        for (String matrixName : new String[]{"nwMCsimple.txt", "PAM250.txt"}) {
+            String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/" + matrixName)).getPath();
+            SubstMatrix matrix = new SubstMatrix(mxPath);
+            String alphabet = matrixName.equals("PAM250.txt") ? "ARNDCQEGHILKMFPSTWYV" : "ACGT";
+            for (List<String> gapValue : List.of(List.of("1"), List.of("1", "3"))) {
+                GapPenalty gapPenalty = new GapPenalty(gapValue);
+                for (int test = 0; test < 40; test++) {
+                    String seq1 = randomSequence(random, alphabet, 1 + random.nextInt(30));
+                    String seq2 = randomSequence(random, alphabet, 1 + random.nextInt(30));
+                    NW nw = new NW(seq1, seq2, matrix, gapPenalty);
+                    nw.calculate();
+                    AlignmentScore nwScore = new NW(seq1, seq2, matrix, gapPenalty).scoreOnly();
+                    Assert.assertEquals(nw.getScore(), nwScore.getScore(), 0.0);
+                    Assert.assertEquals(seq1.length(), nwScore.getEnd1());
+                    SW sw = new SW(seq1, seq2, matrix, gapPenalty);
+                    sw.calculate();
+                    AlignmentScore swScore = new SW(seq1, seq2, matrix, gapPenalty).scoreOnly();
+                    Assert.assertEquals(sw.getScore(), swScore.getScore(), 0.0);
+                    if (sw.getScore() > 0.0) {
+                        int end = swScore.getEnd1() * (seq2.length() + 1) + swScore.getEnd2();
+                        Assert.assertEquals(sw.getScore(), sw.tableValue(end), 0.0);
+                        for (int position = 0; position < end; position++) {
+                            Assert.assertTrue(sw.tableValue(position) < sw.getScore());
+                        }
+                    }
+                }
+            }
+        }
+    }
+    @Test(timeout = 30000)
+    public void scoreOnlyLongTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seqPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        NWSW test = new NWSW();
+        AlignmentScore nwScore = test.needlemanWunschScore(seqPath, seqPath, mxPath, 1, 10);
+        AlignmentScore swScore = test.smithWatermanScore(seqPath, seqPath, mxPath, 1, 10);
+        Assert.assertEquals(nwScore.getScore(), swScore.getScore(), 1e-9);
+        Assert.assertEquals(1255, swScore.getEnd1());
+        Assert.assertEquals(1255, swScore.getEnd2());
+    }
+    @Test
+    public void bandedTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(11);
+        for (String matrixName : new String[]{"nwMCsimple.txt", "PAM250.txt"}) {
+            String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/" + matrixName)).getPath();
+            SubstMatrix matrix = new SubstMatrix(mxPath);
+            String alphabet = matrixName.equals("PAM250.txt") ? "ARNDCQEGHILKMFPSTWYV" : "ACGT";
+            for (List<String> gapValue : List.of(List.of("1"), List.of("1", "3"))) {
+                GapPenalty gapPenalty = new GapPenalty(gapValue);
+                for (int test = 0; test < 40; test++) {
+                    String seq1 = randomSequence(random, alphabet, 1 + random.nextInt(30));
+                    String seq2 = randomSequence(random, alphabet, 1 + random.nextInt(30));
+                    NW nw = new NW(seq1, seq2, matrix, gapPenalty);
+                    nw.calculate();
+                    BandedNW bandedNW = new BandedNW(seq1, seq2, matrix, gapPenalty);
+                    bandedNW.setBandWidth(1);
+                    bandedNW.calculate();
+                    Assert.assertEquals(nw.getScore(), bandedNW.getScore(), 0.0);
+                    String[] alignment = bandedNW.getResults().get(0);
+                    Assert.assertTrue(nw.getResults().stream().anyMatch(result -> Arrays.equals(result, alignment)));
+                    SW sw = new SW(seq1, seq2, matrix, gapPenalty);
+                    sw.calculate();
+                    BandedSW bandedSW = new BandedSW(seq1, seq2, matrix, gapPenalty);
+                    bandedSW.setBandWidth(1);
+                    bandedSW.calculate();
+                    Assert.assertEquals(sw.getScore(), bandedSW.getScore(), 0.0);
+                    String[] local = bandedSW.getResults().get(0);
+                    Assert.assertTrue(seq1.contains(local[0].replace("_", "")));
+                    Assert.assertTrue(seq2.contains(local[1].replace("_", "")));
+                }
+            }
+        }
+    }
+    @Test(timeout = 30000)
+    public void bandedLongTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String seqPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        String seq1 = new LoadSeq(seqPath, seqPath).getFirst();
+        String seq2 = seq1.substring(0, 400) + seq1.substring(500, 900) + "WWWW" + seq1.substring(900);
+        SubstMatrix matrix = new SubstMatrix(mxPath);
+        for (List<String> gapValue : List.of(List.of("1"), List.of("1", "10"))) {
+            GapPenalty gapPenalty = new GapPenalty(gapValue);
+            BandedNW nw = new BandedNW(seq1, seq2, matrix, gapPenalty);
+            nw.setBandWidth(4);
+            nw.calculate();
+            Assert.assertEquals(new NW(seq1, seq2, matrix, gapPenalty).scoreOnly().getScore(), nw.getScore(), 1e-9);
+            String[] alignment = nw.getResults().get(0);
+            Assert.assertEquals(seq1, alignment[0].replace("_", ""));
+            Assert.assertEquals(seq2, alignment[1].replace("_", ""));
+            BandedSW sw = new BandedSW(seq1, seq2, matrix, gapPenalty);
+            sw.setBandWidth(4);
+            sw.calculate();
+            Assert.assertEquals(new SW(seq1, seq2, matrix, gapPenalty).scoreOnly().getScore(), sw.getScore(), 1e-9);
+        }
+    }
+    @Test
+    public void fastaReaderTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Path fasta = Files.createTempFile("records", ".fasta");
+        fasta.toFile().deleteOnExit();
+        Files.writeString(fasta, "\n>first record\r\nACGTACGTAC\r\n\n>second\nACG\nTT  A\n\n  \nCC\n>empty\n>last\nGGGGGGGGGGGGGGGGGGGGGGGG");
+        SubstMatrix matrix = new SubstMatrix("1", "-1");
+        try (FastaReader reader = new FastaReader(fasta.toString(), 32)) {
+            FastaRecord record = reader.nextRecord();
+            Assert.assertEquals(">first record", record.getHeader());
+            Assert.assertEquals("ACGTACGTAC", record.getSequence());
+            Assert.assertTrue(record.getResidues().isDirect());
+            Assert.assertArrayEquals(matrix.encode("ACGTACGTAC"), record.encode(matrix));
+            record = reader.nextRecord();
+            Assert.assertEquals(">second", record.getHeader());
+            Assert.assertEquals("ACGTTACC", record.getSequence());
+            LoadSeq.SequenceData data = reader.next();
+            Assert.assertEquals(List.of(">empty"), data.getInfo());
+            Assert.assertEquals("", data.getValue());
+            record = reader.nextRecord();
+            Assert.assertEquals(">last", record.getHeader());
+            Assert.assertEquals(24, record.length());
+            Assert.assertNull(reader.nextRecord());
+        }
+        try (FastaReader reader = new FastaReader(fasta.toString(), 16)) {
+            Assert.assertThrows(IOException.class, () -> {
+                while (reader.nextRecord() != null) {
+                    continue;
+                }
+            });
+        }
+        LoadSeq sequence = new LoadSeq(fasta.toString(), fasta.toString());
+        Assert.assertEquals("ACGTACGTAC", sequence.getFirst());
+        Assert.assertEquals(List.of(">first record"), sequence.firstInfo());
+    }
+    @Test
+    public void integerScoringTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(12);
+        for (String matrixName : new String[]{"nwMCsimple.txt", "PAM250.txt"}) {
+            String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/" + matrixName)).getPath();
+            SubstMatrix matrix = new SubstMatrix(mxPath);
+            String alphabet = matrixName.equals("PAM250.txt") ? "ARNDCQEGHILKMFPSTWYV" : "ACGT";
+            for (List<String> gapValue : List.of(List.of("1"), List.of("1", "3"), List.of("0.5", "2.25"))) {
+                GapPenalty gapPenalty = new GapPenalty(gapValue);
+                for (int test = 0; test < 30; test++) {
+                    String seq1 = randomSequence(random, alphabet, 1 + random.nextInt(30));
+                    String seq2 = randomSequence(random, alphabet, 1 + random.nextInt(30));
+                    NW nw = new NW(seq1, seq2, matrix, gapPenalty);
+                    nw.calculate();
+                    NW integerNW = new NW(seq1, seq2, matrix, gapPenalty);
+                    integerNW.setIntegerScoring(true);
+                    integerNW.calculate();
+                    Assert.assertEquals(nw.getScore(), integerNW.getScore(), 1e-9);
+                    if (matrix.scale() == 1) {
+                        Assert.assertTrue(Arrays.deepEquals(nw.getResults().toArray(), integerNW.getResults().toArray()));
+                    }
+                    SW sw = new SW(seq1, seq2, matrix, gapPenalty);
+                    sw.calculate();
+                    SW integerSW = new SW(seq1, seq2, matrix, gapPenalty);
+                    integerSW.setIntegerScoring(true);
+                    integerSW.calculate();
+                    Assert.assertEquals(sw.getScore(), integerSW.getScore(), 1e-9);
+                    if (matrix.scale() == 1) {
+                        Assert.assertTrue(Arrays.deepEquals(sw.getResults().toArray(), integerSW.getResults().toArray()));
+                    }
+                }
+            }
+        }
+        NW nw = new NW("ACGT", "AGT", "1", "-1", "0.1234567");
+        nw.setIntegerScoring(true);
+        Assert.assertThrows(ArithmeticException.class, nw::calculate);
+    }
+    @Test
+    public void topAlignmentsTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/nwMCsimple.txt")).getPath();
+        SubstMatrix matrix = new SubstMatrix(mxPath);
+        SW repeats = new SW("GATTACA", "CCGATTACACCTTGATTACAGG", matrix, new GapPenalty(List.of("2")));
+        List<LocalAlignment> found = repeats.topAlignments(5, 4.0);
+        Assert.assertEquals(7.0, found.get(0).getScore(), 0.0);
+        Assert.assertEquals(2, found.get(0).getStart2());
+        Assert.assertEquals(7.0, found.get(1).getScore(), 0.0);
+        Assert.assertEquals(13, found.get(1).getStart2());
+        Assert.assertArrayEquals(new String[]{"GATTACA", "GATTACA"}, found.get(1).getAlignment());
+        Random random = new Random(13);
+        for (List<String> gapValue : List.of(List.of("1"), List.of("1", "3"))) {
+            GapPenalty gapPenalty = new GapPenalty(gapValue);
+            for (int test = 0; test < 40; test++) {
+                String seq1 = randomSequence(random, "ACGT", 1 + random.nextInt(60));
+                String seq2 = randomSequence(random, "ACGT", 1 + random.nextInt(60));
+                SW sw = new SW(seq1, seq2, matrix, gapPenalty);
+                sw.calculate();
+                List<LocalAlignment> alignments = new SW(seq1, seq2, matrix, gapPenalty).topAlignments(10, 2.0);
+                if (sw.getScore() < 2.0) {
+                    Assert.assertTrue(alignments.isEmpty());
+                    continue;
+                }
+                Assert.assertEquals(sw.getScore(), alignments.get(0).getScore(), 0.0);
+                Assert.assertArrayEquals(sw.getResults().get(0), alignments.get(0).getAlignment());
+                Set<Integer> nodes = new HashSet<>();
+                for (int k = 0; k < alignments.size(); k++) {
+                    LocalAlignment alignment = alignments.get(k);
+                    Assert.assertTrue(alignment.getScore() >= 2.0);
+                    Assert.assertTrue(k == 0 || alignment.getScore() <= alignments.get(k - 1).getScore());
+                    String[] pair = alignment.getAlignment();
+                    int i = alignment.getStart1();
+                    int j = alignment.getStart2();
+                    for (int position = 0; position < pair[0].length(); position++) {
+                        i += pair[0].charAt(position) == '_' ? 0 : 1;
+                        j += pair[1].charAt(position) == '_' ? 0 : 1;
+                        Assert.assertTrue(nodes.add(i * (seq2.length() + 1) + j));
+                    }
+                    Assert.assertEquals(alignment.getEnd1(), i);
+                    Assert.assertEquals(alignment.getEnd2(), j);
+                }
+            }
+        }
+    }
+    @Test
+    public void seedSearchTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(14);
+        String alphabet = "ARNDCQEGHILKMFPSTWYV";
+        String query = randomSequence(random, alphabet, 200);
+        Path fasta = Files.createTempFile("homologs", ".fasta");
+        fasta.toFile().deleteOnExit();
+        StringBuilder records = new StringBuilder();
+        for (int record = 0; record < 400; record++) {
+            StringBuilder sequence = new StringBuilder(randomSequence(random, alphabet, 100));
+            if (record % 40 == 0) {
+                for (int i = random.nextInt(50); i < 200; i++) {
+                    sequence.append(random.nextDouble() < 0.3 ? alphabet.charAt(random.nextInt(alphabet.length())) : query.charAt(i));
+                }
+            }
+            records.append(">record").append(record).append('\n').append(sequence).append(randomSequence(random, alphabet, 100)).append('\n');
+        }
+        Files.writeString(fasta, records);
+        SubstMatrix matrix = MatrixRegistry.builtIn("BLOSUM62");
+        GapPenalty gapPenalty = new GapPenalty(List.of("1", "10"));
+        List<DatabaseSearch.Hit> exhaustive = new DatabaseSearch(query, matrix, gapPenalty).search(fasta.toString(), 10);
+        List<DatabaseSearch.Hit> seeded = new SeedSearch(query, matrix, gapPenalty).search(fasta.toString(), 10);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, exhaustive.get(i).getIndex() % 40);
+            Assert.assertEquals(exhaustive.get(i).getIndex(), seeded.get(i).getIndex());
+            Assert.assertEquals(exhaustive.get(i).getScore(), seeded.get(i).getScore(), 0.0);
+        }
+    }
+    @Test
+    public void myersTest() throws SubstMatrix.MatrixDimensionException {
+        Random random = new Random(15);
+        for (String[] params : new String[][]{{"0", "-1", "1"}, {"2", "-1", "2"}}) {
+            for (int test = 0; test < 100; test++) {
+                String seq1 = randomSequence(random, "ACGT", random.nextInt(150));
+                String seq2 = randomSequence(random, "ACGT", random.nextInt(150));
+                MyersNW myers = new MyersNW(seq1, seq2, params[0], params[1], params[2]);
+                Assert.assertTrue(MyersNW.reducesToEditDistance(myers));
+                myers.calculate();
+                Assert.assertEquals(new NW(seq1, seq2, params[0], params[1], params[2]).scoreOnly().getScore(), myers.getScore(), 1e-9);
+                String[] alignment = myers.getResults().get(0);
+                double score = 0.0;
+                for (int k = 0; k < alignment[0].length(); k++) {
+                    char symbol1 = alignment[0].charAt(k);
+                    char symbol2 = alignment[1].charAt(k);
+                    score += symbol1 == '_' || symbol2 == '_' ? -Double.parseDouble(params[2])
+                            : Double.parseDouble(params[symbol1 == symbol2 ? 0 : 1]);
+                }
+                Assert.assertEquals(myers.getScore(), score, 1e-9);
+                Assert.assertEquals(seq1, alignment[0].replace("_", ""));
+                Assert.assertEquals(seq2, alignment[1].replace("_", ""));
+            }
+        }
+        Assert.assertFalse(MyersNW.reducesToEditDistance(new NW("ACGT", "AGT", "1", "-1", "1")));
+        NWSW test = new NWSW();
+        SubstMatrix matrix = new SubstMatrix("0", "-1");
+        GapPenalty gapPenalty = new GapPenalty(List.of("1"));
+        Assert.assertTrue(test.globalAligner("AAA", "AA", matrix, gapPenalty, true) instanceof MyersNW);
+        NW all = test.globalAligner("AAA", "AA", matrix, gapPenalty, false);
+        Assert.assertFalse(all instanceof MyersNW);
+        all.calculate();
+        Assert.assertEquals(3, all.getResults().size());
+        test.setHeapBudget(NW.estimatedTableBytes(3, 2, false) - 1);
+        Assert.assertTrue(test.globalAligner("AAA", "AA", matrix, gapPenalty, false) instanceof MyersNW);
+    }
+    @Test
+    public void allPairsTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(16);
+        SubstMatrix matrix = MatrixRegistry.builtIn("BLOSUM62");
+        GapPenalty gapPenalty = new GapPenalty(List.of("1", "10"));
+        List<String> sequences = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            sequences.add(randomSequence(random, "ARNDCQEGHILKMFPSTWYV", random.nextInt(120)));
+        }
+        AllPairs allPairs = new AllPairs(sequences, matrix, gapPenalty);
+        allPairs.setThreads(3);
+        PairScores scores = allPairs.scores();
+        Path file = Files.createTempFile("pairs", ".bin");
+        file.toFile().deleteOnExit();
+        allPairs.scores(file.toString()).close();
+        try (PairScores stored = PairScores.open(file.toString())) {
+            Assert.assertEquals(30, stored.size());
+            for (int i = 0; i < 30; i++) {
+                for (int j = 0; j < 30; j++) {
+                    double expected = new NW(sequences.get(Math.min(i, j)), sequences.get(Math.max(i, j)), matrix, gapPenalty).scoreOnly().getScore();
+                    Assert.assertEquals((float) expected, scores.get(i, j), 0.0f);
+                    Assert.assertEquals((float) expected, stored.get(i, j), 0.0f);
+                }
+            }
+        }
+    }
+    @Test
+    public void metricsTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        MetricsSummary summary = new MetricsSummary();
+        NW nw = new NW("GATTACA", "GCATGCT", "1", "-1", "1");
+        Path recorded = Files.createTempFile("metrics", ".jfr");
+        recorded.toFile().deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("nprg013.nwsw.Cells");
+            recording.start();
+            nw.setMetrics(new JfrMetrics(summary));
+            nw.calculate();
+            recording.stop();
+            recording.dump(recorded);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recorded).stream()
+                .filter(event -> event.getEventType().getName().equals("nprg013.nwsw.Cells")).collect(Collectors.toList());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(49L, events.get(0).getLong("cells"));
+        Assert.assertEquals(49L, summary.getCells());
+        Assert.assertEquals(64L * (Double.BYTES + Byte.BYTES), summary.getPeakTableBytes());
+        long moves = nw.getResults().stream().mapToLong(result -> result[0].length()).sum();
+        Assert.assertEquals(moves, summary.getDiagonalMoves() + summary.getLeftMoves() + summary.getUpMoves());
+        Assert.assertTrue(summary.getNanos(Metrics.Phase.FILL) > 0);
+        Assert.assertTrue(summary.toJson().startsWith("{\"phaseNanos\":{\"parse\":0,\"encode\":"));
+        Assert.assertTrue(summary.toJson().endsWith(",\"peakTableBytes\":576}"));
+    }
+    @Test
+    public void batchTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Path query = Files.createTempFile("query", ".fasta");
+        Path target = Files.createTempFile("target", ".fasta");
+        query.toFile().deleteOnExit();
+        target.toFile().deleteOnExit();
+        Files.writeString(query, ">query\nCCGATTACAGATTACACC\n");
+        Files.writeString(target, ">target\nGATCACAGTTACA\n");
+        String manifest = query + "\t" + target + "\tDNAfull\t1\t4\n"
+                + "# skipped\n"
+                + "{\"query\": \"" + target + "\", \"target\": \"" + query + "\", \"matrix\": \"DNAfull\", \"gap\": [1, 4]}\n"
+                + query + "\tmissing.fasta\tDNAfull\t1\n";
+        StringWriter global = new StringWriter();
+        BatchAligner batch = new BatchAligner(new NWSW(), false, BatchAligner.Format.TSV);
+        batch.setThreads(2);
+        Assert.assertEquals(3, batch.run(new BufferedReader(new StringReader(manifest)), global));
+        List<String> lines = global.toString().lines().collect(Collectors.toList());
+        Assert.assertEquals(BatchAligner.TSV_HEADER, lines.get(0));
+        String[] first = lines.stream().filter(line -> line.startsWith("0\t")).findFirst().orElseThrow().split("\t", -1);
+        NW nw = new NW("CCGATTACAGATTACACC", "GATCACAGTTACA", MatrixRegistry.builtIn("DNAfull"), new GapPenalty(List.of("1", "4")));
+        Assert.assertEquals(nw.scoreOnly().getScore(), Double.parseDouble(first[3]), 0.0);
+        Assert.assertEquals(List.of("0", "18", "0", "13"), List.of(first).subList(4, 8));
+        Assert.assertEquals(nw.optimalAlignments(1, NW.TieBreak.DIAGONAL_FIRST).findFirst().orElseThrow().getCigar(), first[8]);
+        Assert.assertTrue(lines.stream().anyMatch(line -> line.startsWith("1\t" + target + "\t" + query + "\t")));
+        Assert.assertTrue(lines.stream().anyMatch(line -> line.startsWith("2\t") && line.endsWith("NoSuchFileException: missing.fasta")));
+        StringWriter local = new StringWriter();
+        new BatchAligner(new NWSW(), true, BatchAligner.Format.JSONL).run(new BufferedReader(new StringReader(manifest)), local);
+        Assert.assertTrue(local.toString().contains("{\"index\":0,\"query\":\"" + query + "\",\"target\":\"" + target
+                + "\",\"score\":51.0,\"queryStart\":2,\"queryEnd\":16,\"targetStart\":0,\"targetEnd\":13,\"cigar\":\"3M1X4M1I5M\"}"));
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                if (buffer[offset] != '#' && buffer[offset] != '\n') {
+                    throw new IOException("disk full");
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            batch.run(new BufferedReader(new StringReader(manifest)), failing);
+            Assert.fail();
+        }
+        catch (IOException e) {
+            Assert.assertEquals("disk full", e.getMessage());
+        }
+    }
+    @Test
+    public void alignmentTest() throws SubstMatrix.MatrixDimensionException {
+        NW nw = new NW("GATTACA", "GCATGCA", "1", "-1", "1");
+        nw.calculate();
+        List<String[]> first = nw.getResults();
+        List<String[]> second = nw.getResults();
+        Assert.assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            Assert.assertArrayEquals(first.get(i), second.get(i));
+            Alignment alignment = nw.getAlignments().get(i);
+            Assert.assertArrayEquals(first.get(i), alignment.getAlignment());
+            Assert.assertEquals(first.get(i)[0].length(), alignment.length());
+            Assert.assertEquals(nw.getScore(), alignment.getScore(), 0.0);
+        }
+        Random random = new Random(22);
+        for (int k = 0; k < 50; k++) {
+            SW sw = new SW(randomSequence(random, "ACGT", 1 + random.nextInt(40)), randomSequence(random, "ACGT", 1 + random.nextInt(40)), "2", "-1", "2");
+            sw.calculate();
+            for (Alignment alignment : sw.getAlignments()) {
+                String[] rows = alignment.getAlignment();
+                Assert.assertEquals(sw.seq1.substring(alignment.getStart1(), alignment.getEnd1()), rows[0].replace("_", ""));
+                Assert.assertEquals(sw.seq2.substring(alignment.getStart2(), alignment.getEnd2()), rows[1].replace("_", ""));
+                StringBuilder cigar = new StringBuilder();
+                for (int run : alignment.getRuns()) {
+                    cigar.append(run >>> 2).append("MXID".charAt(run & 3));
+                }
+                Assert.assertEquals(cigar.toString(), alignment.getCigar());
+            }
+        }
+        Hirschberg hirschberg = new Hirschberg("GATTACAGATTACA", "GATCACAGTTACA", "1", "-1", "1");
+        hirschberg.calculate();
+        Assert.assertEquals("3M1X4M1I5M", hirschberg.getAlignments().get(0).getCigar());
+        Assert.assertEquals("GATTACAGATTACA", hirschberg.getResults().get(0)[0]);
+        Assert.assertEquals("GATCACAG_TTACA", hirschberg.getResults().get(0)[1]);
+    }
+    @Test
+    public void interSequenceSWTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        Random random = new Random(23);
+        for (String matrixName : new String[]{"DNAfull.txt", "PAM250.txt"}) {
+            String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/" + matrixName)).getPath();
+            SubstMatrix matrix = new SubstMatrix(mxPath);
+            String alphabet = matrixName.equals("PAM250.txt") ? "ARNDCQEGHILKMFPSTWYV" : "ACGT";
+            for (List<String> gapValue : List.of(List.of("4"), List.of("1", "6"))) {
+                GapPenalty gapPenalty = new GapPenalty(gapValue);
+                String query = randomSequence(random, alphabet, 1 + random.nextInt(60));
+                List<String> targets = new ArrayList<>();
+                for (int i = 0; i < 70; i++) {
+                    targets.add(randomSequence(random, alphabet, random.nextInt(80)));
+                }
+                double[] scores = new StripedSW(query, matrix, gapPenalty).score(targets);
+                for (int i = 0; i < targets.size(); i++) {
+                    SW sw = new SW(query, targets.get(i), matrix, gapPenalty);
+                    sw.calculate();
+                    Assert.assertEquals(sw.getScore(), scores[i], 1e-9);
+                }
+            }
+        }
+        String repeated = "ACGT".repeat(1700);
+        double[] overflowing = new StripedSW(repeated, new SubstMatrix("5", "-4"), new GapPenalty(List.of("1", "10"))).score(List.of(repeated, "ACGT", "ACGT".repeat(10)));
+        Assert.assertArrayEquals(new double[]{5.0 * repeated.length(), 20.0, 200.0}, overflowing, 0.0);
+        String queryPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/P59594.fasta.txt")).getPath();
+        String dbPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/database.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        DatabaseSearch search = new DatabaseSearch(queryPath, mxPath, List.of("1", "10"));
+        List<DatabaseSearch.Hit> single = search.search(dbPath, 100);
+        search.setInterSequence(true);
+        List<DatabaseSearch.Hit> batched = search.search(dbPath, 100);
+        Assert.assertEquals(single.size(), batched.size());
+        for (int i = 0; i < single.size(); i++) {
+            Assert.assertEquals(single.get(i).getIndex(), batched.get(i).getIndex());
+            Assert.assertEquals(single.get(i).getScore(), batched.get(i).getScore(), 0.0);
+        }
+    }
+    @Test
+    public void blockedFillTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        SubstMatrix matrix = new SubstMatrix(mxPath);
+        Random random = new Random(24);
+        String seq2 = randomSequence(random, "ARNDCQEGHILKMFPSTWYV", PSA.BLOCK_COLUMNS + 150);
+        String seq1 = seq2.substring(0, 400) + "WW" + seq2.substring(400, 700).replace('A', 'C') + seq2.substring(730);
+        for (List<String> gapValue : List.of(List.of("2"), List.of("1", "8"))) {
+            GapPenalty gapPenalty = new GapPenalty(gapValue);
+            PSA[][] triples = {{new NW(seq1, seq2, matrix, gapPenalty), new NW(seq1, seq2, matrix, gapPenalty), new NW(seq1, seq2, matrix, gapPenalty)},
+                    {new SW(seq1, seq2, matrix, gapPenalty), new SW(seq1, seq2, matrix, gapPenalty), new SW(seq1, seq2, matrix, gapPenalty)}};
+            for (PSA[] triple : triples) {
+                triple[1].setBlockedFill(true);
+                triple[2].setBlockedFill(true);
+                triple[2].setTileSize(37);
+                for (PSA psa : triple) {
+                    psa.calculate();
+                }
+                double[] flat = Arrays.stream(triple[0].table).flatMapToDouble(Arrays::stream).toArray();
+                for (int k = 1; k < 3; k++) {
+                    Assert.assertNull(triple[k].table);
+                    Assert.assertArrayEquals(flat, triple[k].cells, 0.0);
+                    Assert.assertArrayEquals(triple[0].traceback, triple[k].traceback);
+                    Assert.assertEquals(triple[0].getScore(), triple[k].getScore(), 0.0);
+                    Assert.assertEquals(triple[0].getResults().size(), triple[k].getResults().size());
+                    Assert.assertArrayEquals(triple[0].getResults().get(0), triple[k].getResults().get(0));
+                }
+            }
+        }
+    }
+    @Test
+    public void offHeapTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        SubstMatrix matrix = new SubstMatrix(mxPath);
+        Random random = new Random(25);
+        String seq1 = randomSequence(random, "ARNDCQEGHILKMFPSTWYV", 300);
+        String seq2 = randomSequence(random, "ARNDCQEGHILKMFPSTWYV", 250);
+        Path directory = Files.createTempDirectory("nwsw");
+        for (List<String> gapValue : List.of(List.of("2"), List.of("1", "8"))) {
+            GapPenalty gapPenalty = new GapPenalty(gapValue);
+            NW nw = new NW(seq1, seq2, matrix, gapPenalty);
+            nw.calculate();
+            for (long budget : new long[]{Long.MAX_VALUE, 0}) {
+                OffHeapNW offHeap = new OffHeapNW(seq1, seq2, matrix, gapPenalty);
+                offHeap.setDirectBudget(budget);
+                offHeap.setSpillDirectory(directory);
+                offHeap.calculate();
+                Assert.assertEquals(budget == 0, offHeap.isMapped());
+                Assert.assertEquals(nw.getScore(), offHeap.getScore(), 0.0);
+                Assert.assertEquals(1, offHeap.getResults().size());
+                Assert.assertArrayEquals(nw.getResults().get(0), offHeap.getResults().get(0));
+                try (Stream<Path> files = Files.list(directory)) {
+                    Assert.assertEquals(0, files.count());
+                }
+            }
+        }
+        Files.delete(directory);
+        NWSW test = new NWSW();
+        test.setHeapBudget(0);
+        test.setOffHeap(true);
+        Assert.assertTrue(test.globalAligner(seq1, seq2, matrix, new GapPenalty(List.of("2")), false) instanceof OffHeapNW);
+        String long1 = "A".repeat(50000);
+        String long2 = "C".repeat(50000);
+        test.setHeapBudget(Long.MAX_VALUE);
+        Assert.assertTrue(test.globalAligner(long1, long2, matrix, new GapPenalty(List.of("2")), false) instanceof OffHeapNW);
+        test.setOffHeap(false);
+        Assert.assertTrue(test.globalAligner(long1, long2, matrix, new GapPenalty(List.of("2")), false) instanceof Hirschberg);
+        Assert.assertTrue(test.globalAligner(long1, long2, new SubstMatrix("0", "-1"), new GapPenalty(List.of("1")), false) instanceof MyersNW);
+        Assert.assertFalse(MyersNW.fitsArrays(Integer.MAX_VALUE - Long.SIZE, 100000));
+        for (PSA psa : new PSA[]{new NW(long1, long2, matrix, new GapPenalty(List.of("2"))), new SW(long1, long2, matrix, new GapPenalty(List.of("2")))}) {
+            try {
+                psa.calculate();
+                Assert.fail();
+            }
+            catch (IllegalStateException e) {
+                Assert.assertEquals("The table of 50001 x 50001 nodes does not fit into an array", e.getMessage());
+            }
+        }
+    }
+    @Test
+    public void databaseSearchFailureTest() throws IOException, SubstMatrix.MatrixDimensionException {
+        String dbPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("sequences/database.fasta.txt")).getPath();
+        String mxPath = Objects.requireNonNull(NWSWTest.class.getClassLoader().getResource("matrices/PAM250.txt")).getPath();
+        for (int threads : new int[]{1, 4}) {
+            DatabaseSearch search = new DatabaseSearch("ARNDCQEGHILK", new SubstMatrix(mxPath), new GapPenalty(List.of("1", "10"))) {
+                @Override
+                double[] score(List<FastaRecord> targets) {
+                    throw new IllegalStateException("window of " + targets.size());
+                }
+            };
+            search.setThreads(threads);
+            try {
+                search.search(dbPath, 3);
+                Assert.fail();
+            }
+            catch (IllegalStateException e) {
+                Assert.assertEquals("window of 1", e.getMessage());
+            }
+        }
+    }
+    @Test
+    public void interactiveWideSymbolTest() throws SubstMatrix.MatrixDimensionException {
+        NW nw = new NW("\u00e9A\u00fc", "\u00e9A\u00fc", "2", "-1", "1");
+        nw.calculate();
+        Assert.assertEquals(6.0, nw.getScore(), 0.0);
+        Assert.assertArrayEquals(new String[]{"\u00e9A\u00fc", "\u00e9A\u00fc"}, nw.getResults().get(0));
+        SubstMatrix matrix = new SubstMatrix("2", "-1", "\u00e9\u00fc", "A");
+        Assert.assertEquals(2.0, matrix.score('\u00e9', '\u00e9'), 0.0);
+        Assert.assertEquals(-1.0, matrix.score('\u00e9', '\u00fc'), 0.0);
+        Assert.assertEquals(-1.0, matrix.score('\u00f6', '\u00f6'), 0.0);
+        SW sw = new SW("xx\u00e9\u00e9\u00e9xx", "yy\u00e9\u00e9\u00e9yy", "2", "-1", "1");
+        sw.calculate();
+        Assert.assertEquals(6.0, sw.getScore(), 0.0);
+    }
+    private static String randomSequence(Random random, String alphabet, int length) {
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sequence.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sequence.toString();
+    }
 }